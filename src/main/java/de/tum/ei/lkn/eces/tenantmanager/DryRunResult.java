@@ -0,0 +1,91 @@
+package de.tum.ei.lkn.eces.tenantmanager;
+
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.ReroutingStats;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Outcome of the dry run of the creation of one flow: whether it would be accepted, the path it would get and the
+ * reroutings that would be needed. Nothing of this is registered in the network.
+ *
+ * @author Amaury Van Bemten
+ */
+public class DryRunResult {
+    private final FlowSpec spec;
+    private final boolean accepted;
+    private final Path path;
+    private final ReroutingStats reroutingStats;
+    private final Map<Flow, Path> reroutedPaths;
+    private final String failureReason;
+
+    private DryRunResult(FlowSpec spec, boolean accepted, Path path, ReroutingStats reroutingStats, Map<Flow, Path> reroutedPaths, String failureReason) {
+        this.spec = spec;
+        this.accepted = accepted;
+        this.path = path;
+        this.reroutingStats = reroutingStats;
+        this.reroutedPaths = Collections.unmodifiableMap(reroutedPaths);
+        this.failureReason = failureReason;
+    }
+
+    /**
+     * @param spec Specification of the flow.
+     * @param path path the flow would get (null if both VMs are on the same host).
+     * @param reroutingStats reroutings tried (null if no rerouting was tried).
+     * @param reroutedPaths new path of each rerouted flow.
+     * @return the outcome of a flow that would be accepted.
+     */
+    static DryRunResult accepted(FlowSpec spec, Path path, ReroutingStats reroutingStats, Map<Flow, Path> reroutedPaths) {
+        return new DryRunResult(spec, true, path, reroutingStats, reroutedPaths, null);
+    }
+
+    /**
+     * @param spec Specification of the flow.
+     * @param reroutingStats reroutings tried (null if no rerouting was tried).
+     * @param reroutedPaths new path of each rerouted flow.
+     * @param failureReason why the flow would be rejected.
+     * @return the outcome of a flow that would be rejected.
+     */
+    static DryRunResult rejected(FlowSpec spec, ReroutingStats reroutingStats, Map<Flow, Path> reroutedPaths, String failureReason) {
+        return new DryRunResult(spec, false, null, reroutingStats, reroutedPaths, failureReason);
+    }
+
+    public FlowSpec getSpec() {
+        return spec;
+    }
+
+    public boolean isAccepted() {
+        return accepted;
+    }
+
+    /**
+     * @return the path the flow would get or null if the flow would be rejected or would not have to be routed (both
+     * VMs on the same host).
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return the reroutings that would be tried (null if no rerouting would be tried).
+     */
+    public ReroutingStats getReroutingStats() {
+        return reroutingStats;
+    }
+
+    /**
+     * @return the new path each rerouted flow would get (rerouted flows stay rerouted, even if the flow is rejected
+     * in the end, as with createFlow()).
+     */
+    public Map<Flow, Path> getReroutedPaths() {
+        return reroutedPaths;
+    }
+
+    /**
+     * @return why the flow would be rejected or null if it would be accepted.
+     */
+    public String getFailureReason() {
+        return failureReason;
+    }
+}
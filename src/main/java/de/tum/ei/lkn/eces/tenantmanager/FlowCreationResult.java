@@ -0,0 +1,60 @@
+package de.tum.ei.lkn.eces.tenantmanager;
+
+import de.tum.ei.lkn.eces.routing.responses.Path;
+
+/**
+ * Outcome of the creation of one flow of a batch: either the created flow (and its path, if it had to be routed) or
+ * the reason why it was rejected.
+ *
+ * @author Amaury Van Bemten
+ */
+public class FlowCreationResult {
+    private final FlowSpec spec;
+    private final Flow flow;
+    private final Path path;
+    private final String failureReason;
+
+    FlowCreationResult(FlowSpec spec, Flow flow, Path path) {
+        this.spec = spec;
+        this.flow = flow;
+        this.path = path;
+        this.failureReason = null;
+    }
+
+    FlowCreationResult(FlowSpec spec, String failureReason) {
+        this.spec = spec;
+        this.flow = null;
+        this.path = null;
+        this.failureReason = failureReason;
+    }
+
+    public FlowSpec getSpec() {
+        return spec;
+    }
+
+    public boolean isAccepted() {
+        return flow != null;
+    }
+
+    /**
+     * @return the created flow or null if the flow was rejected.
+     */
+    public Flow getFlow() {
+        return flow;
+    }
+
+    /**
+     * @return the path of the created flow or null if the flow was rejected or did not have to be routed (both VMs
+     * on the same host).
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return why the flow was rejected or null if it was accepted.
+     */
+    public String getFailureReason() {
+        return failureReason;
+    }
+}
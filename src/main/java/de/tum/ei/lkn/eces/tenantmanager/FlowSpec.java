@@ -0,0 +1,85 @@
+package de.tum.ei.lkn.eces.tenantmanager;
+
+import java.net.InetAddress;
+
+/**
+ * Specification of a flow to create, as used for batch flow creation.
+ *
+ * @author Amaury Van Bemten
+ */
+public class FlowSpec {
+    private final String name;
+    private final VirtualMachine source;
+    private final VirtualMachine destination;
+    private final InetAddress sourceIP;
+    private final InetAddress destinationIP;
+    private final int sourcePort;
+    private final int destinationPort;
+    private final int protocol;
+    private final long rate; // bps
+    private final long burst; // bytes
+    private final double latency; // ms
+
+    public FlowSpec(String name, VirtualMachine sourceVm, VirtualMachine destinationVm, InetAddress srcIP, InetAddress dstIP, int srcPort, int dstPort, int protocol, long rate, long burst, double latency) {
+        this.name = name;
+        this.source = sourceVm;
+        this.destination = destinationVm;
+        this.sourceIP = srcIP;
+        this.destinationIP = dstIP;
+        this.sourcePort = srcPort;
+        this.destinationPort = dstPort;
+        this.protocol = protocol;
+        this.rate = rate;
+        this.burst = burst;
+        this.latency = latency;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public VirtualMachine getSource() {
+        return source;
+    }
+
+    public VirtualMachine getDestination() {
+        return destination;
+    }
+
+    public InetAddress getSourceIP() {
+        return sourceIP;
+    }
+
+    public InetAddress getDestinationIP() {
+        return destinationIP;
+    }
+
+    public int getSourcePort() {
+        return sourcePort;
+    }
+
+    public int getDestinationPort() {
+        return destinationPort;
+    }
+
+    public int getProtocol() {
+        return protocol;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    public long getBurst() {
+        return burst;
+    }
+
+    public double getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return source + "->" + destination + "(" + sourceIP + ">" + destinationIP + ":" + sourcePort + ">" + destinationPort + ":" + protocol + ") " + rate + " bps " + burst + " bytes " + latency + " ms";
+    }
+}
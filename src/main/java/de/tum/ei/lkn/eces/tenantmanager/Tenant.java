@@ -2,9 +2,8 @@ package de.tum.ei.lkn.eces.tenantmanager;
 
 import de.tum.ei.lkn.eces.core.Component;
 import de.tum.ei.lkn.eces.core.annotations.ComponentBelongsTo;
+import de.tum.ei.lkn.eces.tenantmanager.util.InsertionOrderedSet;
 
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -15,11 +14,11 @@ import java.util.List;
 @ComponentBelongsTo(system = TenantManagerSystem.class)
 public class Tenant extends Component {
     private String name;
-    private List<VirtualMachine> vms;
+    private InsertionOrderedSet<VirtualMachine> vms;
 
     Tenant(String name) {
         this.name = name;
-        this.vms = new LinkedList<>();
+        this.vms = new InsertionOrderedSet<>();
     }
 
     void addVM(VirtualMachine vm) {
@@ -35,7 +34,7 @@ public class Tenant extends Component {
     }
 
     public List<VirtualMachine> getVirtualMachines() {
-        return Collections.unmodifiableList(vms);
+        return vms.asUnmodifiableList();
     }
 
     @Override
@@ -6,7 +6,6 @@ import de.tum.ei.lkn.eces.core.MapperSpace;
 import de.tum.ei.lkn.eces.core.RootSystem;
 import de.tum.ei.lkn.eces.dnm.NCRequestData;
 import de.tum.ei.lkn.eces.dnm.mappers.NCRequestDataMapper;
-import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.graph.Node;
 import de.tum.ei.lkn.eces.network.Host;
@@ -23,26 +22,48 @@ import de.tum.ei.lkn.eces.routing.mappers.PathMapper;
 import de.tum.ei.lkn.eces.routing.mappers.SelectedRoutingAlgorithmMapper;
 import de.tum.ei.lkn.eces.routing.mappers.UnicastRequestMapper;
 import de.tum.ei.lkn.eces.routing.proxies.PathProxy;
+import de.tum.ei.lkn.eces.routing.requests.Request;
 import de.tum.ei.lkn.eces.routing.requests.UnicastRequest;
 import de.tum.ei.lkn.eces.routing.responses.Path;
+import de.tum.ei.lkn.eces.routing.responses.Response;
+import de.tum.ei.lkn.eces.tenantmanager.admission.AdmissionEventLog;
+import de.tum.ei.lkn.eces.tenantmanager.admission.AdmissionEngine;
+import de.tum.ei.lkn.eces.tenantmanager.admission.StripedLocks;
 import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+import de.tum.ei.lkn.eces.tenantmanager.kspsystem.KSPConfiguration;
 import de.tum.ei.lkn.eces.tenantmanager.kspsystem.KSPSystem;
+import de.tum.ei.lkn.eces.tenantmanager.kspsystem.mappers.KSPConfigurationMapper;
 import de.tum.ei.lkn.eces.tenantmanager.kspsystem.mappers.KShortestPathsMapper;
 import de.tum.ei.lkn.eces.tenantmanager.mappers.FlowMapper;
 import de.tum.ei.lkn.eces.tenantmanager.mappers.TenantMapper;
 import de.tum.ei.lkn.eces.tenantmanager.mappers.VirtualMachineMapper;
+import de.tum.ei.lkn.eces.tenantmanager.metrics.AdmissionPhase;
+import de.tum.ei.lkn.eces.tenantmanager.metrics.TenantManagerMetrics;
 import de.tum.ei.lkn.eces.tenantmanager.matching.FiveTupleMatching;
 import de.tum.ei.lkn.eces.tenantmanager.matching.Matching;
+import de.tum.ei.lkn.eces.tenantmanager.placement.HostCatalog;
+import de.tum.ei.lkn.eces.tenantmanager.placement.PlacementStrategy;
+import de.tum.ei.lkn.eces.tenantmanager.placement.RandomPlacement;
+import de.tum.ei.lkn.eces.tenantmanager.placement.TrafficMatrix;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.AvoidQueuesProxy;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.CostIncreaseTypes;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.FlowLinkIndex;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.FlowRanking;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.FlowSelectionTypes;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.LinkTable;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.PinnedPathProxy;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.RequestScopedProxy;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.ReservationUndoLog;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.ShortestPathQueueSets;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.SortFlowTypes;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.RerouteFrom;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.ReroutingConfiguration;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.ReroutingStats;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.SpeculativeRerouting;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.mappers.RerouteFromMapper;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.mappers.ReroutingConfigurationMapper;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.mappers.ReroutingStatsMapper;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.mappers.SpeculativeReroutingMapper;
 import de.tum.ei.lkn.eces.tenantmanager.traffic.TokenBucketTrafficContract;
 import de.tum.ei.lkn.eces.tenantmanager.traffic.TrafficContract;
 import de.tum.ei.lkn.eces.topologies.networktopologies.FatTree;
@@ -51,12 +72,22 @@ import de.uni_kl.cs.discodnc.numbers.Num;
 
 import java.net.InetAddress;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * The tenant manager system.
  *
  * The system allows to create tenants, add VMs (which are then placed in the network) and embed flows between VMs.
  *
+ * All the public methods can be called concurrently: operations on different tenants/VMs run in parallel, only the
+ * reservation of network resources (routing, rerouting, release of paths) is serialized.
+ *
  * @author Amaury Van Bemten
  */
 public class TenantManagerSystem extends RootSystem {
@@ -74,15 +105,43 @@ public class TenantManagerSystem extends RootSystem {
     private final NetworkNodeMapper networkNodeMapper;
     private final ToNetworkMapper toNetworkMapper;
     private final KShortestPathsMapper kShortestPathsMapper;
+    private final KSPConfigurationMapper kspConfigurationMapper;
     private final LinkMapper linkMapper;
     private final PathListMapper pathListMapper;
     private final RerouteFromMapper rerouteFromMapper;
+    private final SpeculativeReroutingMapper speculativeReroutingMapper;
 
     private final RoutingAlgorithm routingAlgorithm;
+    private final RequestScopedProxy requestScopedProxy; // proxy of the routing algorithm (null without algorithm)
     private final Network network;
     private final boolean isFatTree;
     private final FatTree networkTopology; // null if above is false
-    private final Set<Tenant> tenants;
+    private final ConcurrentMap<String, Tenant> tenants; // name -> tenant
+    private KSPSystem kspSystem; // null if kSPs are not used
+    private boolean usesFatTreeShortestPaths;
+    private final LinkTable linkTable;
+    private final ShortestPathQueueSets shortestPathQueueSets; // queues increased by the SP part of the cost increase
+    private final FlowLinkIndex flowLinkIndex; // links -> routed flows
+    private final List<RoutingAlgorithm> speculativeRoutingAlgorithms; // used for speculative rerouting
+    private final List<RequestScopedProxy> speculativeRequestScopedProxies; // proxy of each speculative routing algorithm
+    private final List<AvoidQueuesProxy> speculativeCostIncreaseProxies; // one per speculative routing algorithm
+    private final HostCatalog hostCatalog;
+    private volatile PlacementStrategy placementStrategy;
+    private final TenantManagerMetrics metrics; // disabled by default
+    private final AdmissionEventLog admissionEventLog;
+
+    /* Concurrency: the VMs of a tenant are protected by the lock of the tenant, the flows of a VM by the lock of the
+     * VM and the resources of the network by the network lock. Locks are always taken in that order.
+     */
+    private static final int LOCK_STRIPES = 64;
+    private final StripedLocks tenantLocks;
+    private final StripedLocks vmLocks;
+    private final ReentrantLock networkLock;
+
+    private static final int DEFAULT_MAX_OUTSTANDING_ASYNC_REQUESTS = 16384;
+    private int maxOutstandingAsyncRequests;
+    private AdmissionEngine asyncAdmissionEngine; // created at the first asynchronous request
+    private boolean asyncAdmissionShutDown;
 
     public TenantManagerSystem(FatTree network, RoutingAlgorithm routingAlgorithm, Controller controller) {
         this(network, network.getNetwork(), routingAlgorithm, controller, true);
@@ -97,6 +156,7 @@ public class TenantManagerSystem extends RootSystem {
         this.controller = controller;
         this.network = network;
         this.routingAlgorithm = routingAlgorithm;
+        this.requestScopedProxy = routingAlgorithm == null ? null : installRequestScopedProxy(routingAlgorithm);
         this.tenantMapper = new TenantMapper(controller);
         this.virtualMachineMapper = new VirtualMachineMapper(controller);
         this.flowMapper = new FlowMapper(controller);
@@ -109,30 +169,51 @@ public class TenantManagerSystem extends RootSystem {
         this.pathMapper = new PathMapper(controller);
         this.toNetworkMapper = new ToNetworkMapper(controller);
         this.kShortestPathsMapper = new KShortestPathsMapper(controller);
+        this.kspConfigurationMapper = new KSPConfigurationMapper(controller);
         this.linkMapper = new LinkMapper(controller);
         this.networkNodeMapper = new NetworkNodeMapper(controller);
         this.pathListMapper = new PathListMapper(controller);
         this.rerouteFromMapper = new RerouteFromMapper(controller);
+        this.speculativeReroutingMapper = new SpeculativeReroutingMapper(controller);
         this.networkTopology = topology;
         this.isFatTree = isFatTree;
 
-        this.tenants = new HashSet<>();
+        this.tenants = new ConcurrentHashMap<>();
+        this.linkTable = new LinkTable(linkMapper, toNetworkMapper);
+        this.shortestPathQueueSets = new ShortestPathQueueSets();
+        this.flowLinkIndex = new FlowLinkIndex();
+        this.speculativeRoutingAlgorithms = new ArrayList<>();
+        this.speculativeRequestScopedProxies = new ArrayList<>();
+        this.speculativeCostIncreaseProxies = new ArrayList<>();
+        this.hostCatalog = new HostCatalog(network);
+        this.placementStrategy = new RandomPlacement();
+        this.metrics = new TenantManagerMetrics();
+        this.admissionEventLog = new AdmissionEventLog();
+        this.tenantLocks = new StripedLocks(LOCK_STRIPES);
+        this.vmLocks = new StripedLocks(LOCK_STRIPES);
+        this.networkLock = new ReentrantLock();
+        this.maxOutstandingAsyncRequests = DEFAULT_MAX_OUTSTANDING_ASYNC_REQUESTS;
+        this.asyncAdmissionEngine = null;
+        this.asyncAdmissionShutDown = false;
 
         // Compute k shortest paths when necessary
+        this.kspSystem = null;
+        this.usesFatTreeShortestPaths = false;
         if(reroutingConfigurationMapper.isIn(network.getEntity())) {
-            KSPSystem kspSystem;
+            KSPConfiguration kspConfiguration = kspConfigurationMapper.isIn(network.getEntity()) ? kspConfigurationMapper.get(network.getEntity()) : new KSPConfiguration();
             switch (reroutingConfigurationMapper.get(network.getEntity()).getFlowSelectionTypes()) {
                 case ONE_SHORTEST_PATH:
                 case ALL_SHORTEST_PATHS:
                     if (isFatTree) {
                         networkTopology.computeEqualLengthShortestPaths();
+                        usesFatTreeShortestPaths = true;
                     } else {
-                        kspSystem = new KSPSystem(controller, 1);
+                        kspSystem = new KSPSystem(controller, 1, kspConfiguration);
                         kspSystem.update(network.getLinkGraph());
                     }
                     break;
                 case ALL_TWO_SHORTEST_PATHS:
-                    kspSystem = new KSPSystem(controller, 2);
+                    kspSystem = new KSPSystem(controller, 2, kspConfiguration);
                     kspSystem.update(network.getLinkGraph());
                     break;
                 default:
@@ -141,6 +222,95 @@ public class TenantManagerSystem extends RootSystem {
         }
     }
 
+    /**
+     * Updates the shortest paths used for rerouting after links have been added to and/or removed from the network.
+     * Only the affected kSPs are recomputed. The equal-length shortest paths of a fat tree are fully recomputed.
+     * @param addedLinks edges of the link graph that have been added (can be null).
+     * @param removedLinks edges of the link graph that have been removed (can be null).
+     */
+    public void updateShortestPaths(Collection<Edge> addedLinks, Collection<Edge> removedLinks) {
+        networkLock.lock();
+        try {
+            if(removedLinks != null)
+                linkTable.invalidate(removedLinks);
+            hostCatalog.invalidateDistances();
+            shortestPathQueueSets.clear();
+            if(kspSystem != null)
+                kspSystem.update(network.getLinkGraph(), addedLinks, removedLinks);
+            else if(usesFatTreeShortestPaths)
+                networkTopology.computeEqualLengthShortestPaths();
+        }
+        finally {
+            networkLock.unlock();
+        }
+    }
+
+    /**
+     * @return the system computing the kSPs used for rerouting or null if kSPs are not used.
+     */
+    public KSPSystem getKSPSystem() {
+        return kspSystem;
+    }
+
+    /**
+     * Sets the strategy used to place the VMs for which no host is given (default: random placement).
+     * @param placementStrategy the placement strategy.
+     */
+    public void setPlacementStrategy(PlacementStrategy placementStrategy) {
+        if(placementStrategy == null)
+            throw new RuntimeException("the placement strategy cannot be null");
+        this.placementStrategy = placementStrategy;
+    }
+
+    public PlacementStrategy getPlacementStrategy() {
+        return placementStrategy;
+    }
+
+    /**
+     * Sets the maximum number of VMs the placement strategy can put on a host (default: unlimited). VMs placed on a
+     * given host are not limited.
+     * @param maxVirtualMachinesPerHost maximum number of VMs on a host (0 if unlimited).
+     */
+    public void setMaxVirtualMachinesPerHost(int maxVirtualMachinesPerHost) {
+        hostCatalog.setMaxVirtualMachinesPerHost(maxVirtualMachinesPerHost);
+    }
+
+    /**
+     * @return the hosts of the network as seen by the placement strategy.
+     */
+    public HostCatalog getHostCatalog() {
+        return hostCatalog;
+    }
+
+    /**
+     * @return the latency histograms and counters of the flow creations (collection is disabled until
+     *         getMetrics().setEnabled(true) is called).
+     */
+    public TenantManagerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return the structured log of the admission decisions (e.g., to set its sampling interval).
+     */
+    public AdmissionEventLog getAdmissionEventLog() {
+        return admissionEventLog;
+    }
+
+    /**
+     * @return the index of the flows going through each link, used to select the flows to reroute.
+     */
+    FlowLinkIndex getFlowLinkIndex() {
+        return flowLinkIndex;
+    }
+
+    /**
+     * @return the cache of the queues on the shortest paths of each pair, used by the cost increase of rerouting.
+     */
+    ShortestPathQueueSets getShortestPathQueueSets() {
+        return shortestPathQueueSets;
+    }
+
     /**
      * Creates a new tenant.
      * @param name Name of the tenant.
@@ -151,26 +321,41 @@ public class TenantManagerSystem extends RootSystem {
         if(name == null)
             name = "null";
 
-        logger.info("Creating tenant with name " + name);
+        if(logger.isDebugEnabled())
+            logger.debug("Creating tenant with name " + name);
 
-        Tenant newTenant;
+        Tenant newTenant = new Tenant(name);
 
-        // Making sure this name does not exist yet
-        for(Tenant tenant : tenants)
-            if(tenant.getName().equals(name))
-                throw new TenantManagerException("tenant name already exists");
+        // Making sure this name does not exist yet (and reserving it)
+        if(tenants.putIfAbsent(name, newTenant) != null)
+            throw new TenantManagerException("tenant name already exists");
 
         try(MapperSpace ms = controller.startMapperSpace()) {
             Entity entity = controller.createEntity();
-            newTenant = new Tenant(name);
             tenantMapper.attachComponent(entity, newTenant);
-            tenants.add(newTenant);
+        }
+        catch(RuntimeException e) {
+            tenants.remove(name, newTenant);
+            throw e;
         }
 
-        logger.info("Tenant " + newTenant + " created.");
+        if(logger.isInfoEnabled())
+            logger.info("Tenant " + newTenant + " created.");
         return newTenant;
     }
 
+    /**
+     * Gets a tenant by name.
+     * @param name Name of the tenant.
+     * @return the tenant object or null if there is no tenant with that name.
+     */
+    public Tenant getTenant(String name) {
+        if(name == null)
+            name = "null";
+
+        return tenants.get(name);
+    }
+
     /**
      * Creates a new VM for a given tenant.
      * @param tenant tenant for which the VM should be created.
@@ -193,14 +378,30 @@ public class TenantManagerSystem extends RootSystem {
      * in the network, if the specified host is invalid or cannot run the new VM.
      */
     public VirtualMachine createVirtualMachine(Tenant tenant, String name, Host host) throws TenantManagerException {
+        return createVirtualMachine(tenant, name, host, false);
+    }
+
+    /**
+     * Creates a new VM for a given tenant.
+     * @param tenant tenant for which the VM should be created.
+     * @param name name of the VM.
+     * @param host host on which to place the VM.
+     * @param hostReserved true if the VM is already recorded on the host in the host catalog (batch placement).
+     * @return the created VM.
+     * @throws TenantManagerException see createVirtualMachine(Tenant, String, Host).
+     */
+    VirtualMachine createVirtualMachine(Tenant tenant, String name, Host host, boolean hostReserved) throws TenantManagerException {
         if(tenant == null || name == null)
             throw new TenantManagerException("no null element accepted");
         if(host != null && network != host.getNetwork())
             throw new TenantManagerException("the proposed host is not in the same network");
 
-        logger.info("Creating VM " + name + " for tenant " + tenant);
+        if(logger.isDebugEnabled())
+            logger.debug("Creating VM " + name + " for tenant " + tenant);
 
         VirtualMachine newVm = new VirtualMachine(tenant, name);
+        List<ReentrantLock> locks = tenantLocks.getAll(tenant);
+        StripedLocks.lockAll(locks);
         try(MapperSpace ms = controller.startMapperSpace()) {
             tenantMapper.acquireReadLock(tenant);
             // Making sure a VM with this name does not exist
@@ -216,7 +417,7 @@ public class TenantManagerSystem extends RootSystem {
             if(nHosts < 1)
                 throw new TenantManagerException("no hosts in the network to assign the new VM");
 
-            Host hostToPlaceTheVm = placeVM(newVm, host);
+            Host hostToPlaceTheVm = placeVM(newVm, host, hostReserved);
             if(hostToPlaceTheVm == null)
                 throw new TenantManagerException("could not find a place for the VM");
 
@@ -224,11 +425,91 @@ public class TenantManagerSystem extends RootSystem {
             virtualMachineMapper.attachComponent(vmEntity, newVm);
             tenantMapper.updateComponent(tenant, () -> tenant.addVM(newVm));
         }
+        finally {
+            StripedLocks.unlockAll(locks);
+        }
 
-        logger.info("VM " + newVm + " for tenant " + tenant + " created");
+        if(logger.isInfoEnabled())
+            logger.info("VM " + newVm + " for tenant " + tenant + " created");
         return newVm;
     }
 
+    /**
+     * Creates a set of VMs for a given tenant, knowing the traffic between them.
+     *
+     * The VMs are placed together before any flow is embedded: heavily communicating VMs are put on the same host,
+     * then under the same edge switch, then in the same pod (see BatchPlacement), so that fewer of their flows have
+     * to be routed through the core of the network. The hosts are reserved for all the VMs at once, when they are
+     * chosen. Either all the VMs are created or none.
+     *
+     * @param tenant tenant for which the VMs should be created.
+     * @param specs VMs to create (with a host for the VMs that must be placed on a given host).
+     * @param trafficMatrix expected traffic between the VMs (and the existing VMs of the tenant), by VM name.
+     * @return the created VMs, in the same order as the specifications.
+     * @throws TenantManagerException if a VM name is used twice or already exists for the tenant, if there are no
+     * hosts in the network, if a specified host is invalid, if the VMs could not be allocated to hosts.
+     */
+    public List<VirtualMachine> createVirtualMachines(Tenant tenant, List<VmSpec> specs, TrafficMatrix trafficMatrix) throws TenantManagerException {
+        if(tenant == null || specs == null)
+            throw new TenantManagerException("no null element accepted");
+        if(trafficMatrix == null)
+            trafficMatrix = new TrafficMatrix();
+
+        if(logger.isDebugEnabled())
+            logger.debug("Creating " + specs.size() + " VMs for tenant " + tenant);
+
+        List<VirtualMachine> newVms = new ArrayList<>(specs.size());
+        List<ReentrantLock> locks = tenantLocks.getAll(tenant);
+        StripedLocks.lockAll(locks);
+        try {
+            List<Host> chosenHosts;
+            try(MapperSpace ms = controller.startMapperSpace()) {
+                tenantMapper.acquireReadLock(tenant);
+                Set<String> names = new HashSet<>();
+                for(VirtualMachine vm : tenant.getVirtualMachines()) {
+                    virtualMachineMapper.acquireReadLock(vm);
+                    names.add(vm.getName());
+                }
+                for(VmSpec spec : specs) {
+                    if(spec == null || spec.getName() == null)
+                        throw new TenantManagerException("no null element accepted");
+                    if(!names.add(spec.getName()))
+                        throw new TenantManagerException("VM name " + spec.getName() + " already exists for tenant");
+                    if(spec.getHost() != null && network != spec.getHost().getNetwork())
+                        throw new TenantManagerException("the proposed host for " + spec.getName() + " is not in the same network");
+                }
+
+                networkMapper.acquireReadLock(network);
+                if(network.getHosts().size() < 1)
+                    throw new TenantManagerException("no hosts in the network to assign the new VMs");
+
+                chosenHosts = hostCatalog.placeBatch(tenant, specs, trafficMatrix);
+                if(chosenHosts == null)
+                    throw new TenantManagerException("could not find a place for the VMs");
+            }
+
+            try {
+                for(int i = 0; i < specs.size(); i++)
+                    newVms.add(createVirtualMachine(tenant, specs.get(i).getName(), chosenHosts.get(i), true));
+            }
+            catch(TenantManagerException | RuntimeException e) {
+                for(VirtualMachine vm : newVms)
+                    deleteVM(vm);
+                // Release the hosts reserved for the VMs that were not created
+                for(int i = newVms.size(); i < specs.size(); i++)
+                    hostCatalog.removeVirtualMachine(chosenHosts.get(i));
+                throw e;
+            }
+        }
+        finally {
+            StripedLocks.unlockAll(locks);
+        }
+
+        if(logger.isInfoEnabled())
+            logger.info(newVms.size() + " VMs for tenant " + tenant + " created");
+        return newVms;
+    }
+
     /**
      * Creates a new flow for a tenant.
      *
@@ -253,192 +534,835 @@ public class TenantManagerSystem extends RootSystem {
      * rate/latency/burst values are not strictly positive, if the flow could not be embedded in the network.
      */
     public Flow createFlow(String name, VirtualMachine sourceVm, VirtualMachine destinationVm, InetAddress srcIP, InetAddress dstIP, int srcPort, int dstPort, int protocol, long rate, long burst, double latency) throws TenantManagerException {
-        if(name == null || sourceVm == null || destinationVm == null || srcIP == null || dstIP == null)
-            throw new TenantManagerException("no null element accepted");
+        return createFlow(new FlowSpec(name, sourceVm, destinationVm, srcIP, dstIP, srcPort, dstPort, protocol, rate, burst, latency));
+    }
 
-        logger.info("Received flow creation request: " + sourceVm + "->" + destinationVm + "(" + srcIP + ">" + dstIP + ":" + srcPort + ">" + dstPort + ":" + protocol + ") " + rate + " bps " + burst + " bytes " + latency + " ms");
+    /**
+     * Creates a new flow for a tenant.
+     *
+     * !!!!!
+     * THIS METHOD CANNOT BE RUN IN A MAPPER SPACE
+     * !!!!!
+     *
+     * @param spec Specification of the flow.
+     * @return the added flow attached to the same entity as the RoutingSystem request/response.
+     * @throws TenantManagerException see createFlow(String, VirtualMachine, ...).
+     */
+    public Flow createFlow(FlowSpec spec) throws TenantManagerException {
+        long start = metrics.start();
+        List<ReentrantLock> locks = spec == null ? Collections.emptyList() : vmLocks.getAll(spec.getSource(), spec.getDestination());
+        StripedLocks.lockAll(locks);
+        try {
+            NetworkNode[] endpoints;
+            long validationStart = metrics.start();
+            try(MapperSpace ms = controller.startMapperSpace()) {
+                endpoints = validateFlow(spec);
+            }
+            finally {
+                metrics.record(AdmissionPhase.VALIDATION, validationStart);
+            }
 
-        Flow newFlow;
-        Entity newFlowEntity;
-        NetworkNode srcNode, dstNode;
-        Matching newMatching = new FiveTupleMatching(srcIP, dstIP, srcPort, dstPort, protocol);
-        TrafficContract newTrafficContract = new TokenBucketTrafficContract(rate, burst);
+            Flow flow = embedFlow(spec, endpoints[0], endpoints[1]);
+            metrics.flowAccepted();
+            logAdmission(spec, flow);
+            return flow;
+        }
+        catch(TenantManagerException e) {
+            metrics.flowRejected();
+            logRejection(spec, e);
+            throw e;
+        }
+        finally {
+            StripedLocks.unlockAll(locks);
+            metrics.record(AdmissionPhase.TOTAL, start);
+        }
+    }
 
-        try(MapperSpace ms = controller.startMapperSpace()) {
-            virtualMachineMapper.acquireReadLock(sourceVm);
-            virtualMachineMapper.acquireReadLock(destinationVm);
+    /**
+     * Asynchronous version of createFlow(String, VirtualMachine, ...).
+     * @return a future completed with the added flow or exceptionally with a TenantManagerException if the flow
+     * cannot be created.
+     */
+    public CompletableFuture<Flow> createFlowAsync(String name, VirtualMachine sourceVm, VirtualMachine destinationVm, InetAddress srcIP, InetAddress dstIP, int srcPort, int dstPort, int protocol, long rate, long burst, double latency) {
+        return createFlowAsync(new FlowSpec(name, sourceVm, destinationVm, srcIP, dstIP, srcPort, dstPort, protocol, rate, burst, latency));
+    }
+
+    /**
+     * Creates a new flow for a tenant asynchronously.
+     *
+     * The flow is created by an AdmissionEngine with as many workers as processors. The caller is never blocked: if
+     * the maximum number of outstanding asynchronous requests is reached, the returned future is already completed
+     * with a TenantManagerException. Fails with a RuntimeException after shutdown().
+     *
+     * @param spec Specification of the flow.
+     * @return a future completed with the added flow or exceptionally with a TenantManagerException if the flow
+     * cannot be created (see createFlow(String, VirtualMachine, ...)).
+     */
+    public CompletableFuture<Flow> createFlowAsync(FlowSpec spec) {
+        return getAsyncAdmissionEngine().createFlow(spec);
+    }
+
+    /**
+     * Sets the maximum number of outstanding asynchronous requests (default: 16384). Must be called before the first
+     * asynchronous request.
+     * @param maxOutstandingAsyncRequests the maximum number of outstanding asynchronous requests.
+     */
+    public synchronized void setMaxOutstandingAsyncRequests(int maxOutstandingAsyncRequests) {
+        if(asyncAdmissionEngine != null)
+            throw new RuntimeException("the maximum number of outstanding asynchronous requests must be set before the first asynchronous request");
+        if(maxOutstandingAsyncRequests < 1)
+            throw new RuntimeException("the maximum number of outstanding asynchronous requests must be strictly positive, got " + maxOutstandingAsyncRequests);
+        this.maxOutstandingAsyncRequests = maxOutstandingAsyncRequests;
+    }
+
+    /**
+     * Stops the asynchronous admission: waits for the outstanding asynchronous requests to complete and stops the
+     * threads that run them. Later asynchronous requests fail; the synchronous methods can still be used.
+     */
+    public void shutdown() throws InterruptedException {
+        AdmissionEngine engine;
+        synchronized (this) {
+            asyncAdmissionShutDown = true;
+            engine = asyncAdmissionEngine;
+        }
+        if(engine != null)
+            engine.close();
+    }
+
+    private synchronized AdmissionEngine getAsyncAdmissionEngine() {
+        if(asyncAdmissionShutDown)
+            throw new RuntimeException("the asynchronous admission of the tenant manager has been shut down");
+        if(asyncAdmissionEngine == null)
+            asyncAdmissionEngine = new AdmissionEngine(this, Runtime.getRuntime().availableProcessors(), maxOutstandingAsyncRequests);
+        return asyncAdmissionEngine;
+    }
+
+    /**
+     * Creates several flows.
+     *
+     * All the specifications are first validated in a single mapper space. The valid flows are then created one by
+     * one with createFlow(FlowSpec), the most demanding ones (rate, then burst) first: it is easier to fit small flows
+     * around large ones than the opposite, which reduces the number of rerouting attempts. A rejected flow does not
+     * prevent the next ones from being embedded.
+     *
+     * The VMs of the whole batch are only locked during the first validation. Each flow then only locks its own VMs
+     * and is validated again, as the VMs can have changed in between.
+     *
+     * !!!!!
+     * THIS METHOD CANNOT BE RUN IN A MAPPER SPACE
+     * !!!!!
+     *
+     * @param specs Specifications of the flows to create.
+     * @return the outcome of each flow creation, in the same order as the specifications.
+     */
+    public List<FlowCreationResult> createFlows(List<FlowSpec> specs) {
+        if(specs == null)
+            return new ArrayList<>();
 
-            if (sourceVm.getTenant() != destinationVm.getTenant())
-                throw new TenantManagerException("the two VMs do not belong to the same tenant");
+        if(logger.isDebugEnabled())
+            logger.debug("Received batch of " + specs.size() + " flow creation requests");
 
-            if(sourceVm.getHostMachine().getNetwork() != sourceVm.getHostMachine().getNetwork())
-                throw new TenantManagerException("the two VMs hosts are not in the same network");
+        FlowCreationResult[] results = new FlowCreationResult[specs.size()];
+        List<Integer> toCreate = new ArrayList<>(specs.size());
 
-            for(Flow flow : sourceVm.getFlows()) {
-                flowMapper.acquireReadLock(flow);
-                if(flow.getSource() == sourceVm && flow.getMatching().equals(newMatching))
-                    throw new TenantManagerException("this matching already exists for source VM");
+        List<Object> vms = new ArrayList<>();
+        for(FlowSpec spec : specs) {
+            if(spec != null) {
+                vms.add(spec.getSource());
+                vms.add(spec.getDestination());
+            }
+        }
+        List<ReentrantLock> locks = vmLocks.getAll(vms.toArray());
+        StripedLocks.lockAll(locks);
+        try {
+            // Step 1: validate everything at once
+            try(MapperSpace ms = controller.startMapperSpace()) {
+                // Matchings requested so far in the batch for each source VM
+                Map<VirtualMachine, Set<Matching>> batchMatchings = new HashMap<>();
+                for(int i = 0; i < specs.size(); i++) {
+                    FlowSpec spec = specs.get(i);
+                    long validationStart = metrics.start();
+                    try {
+                        validateFlow(spec);
+                        Set<Matching> matchingsOfVm = batchMatchings.computeIfAbsent(spec.getSource(), vm -> new HashSet<>());
+                        Matching matching = new FiveTupleMatching(spec.getSourceIP(), spec.getDestinationIP(), spec.getSourcePort(), spec.getDestinationPort(), spec.getProtocol());
+                        if(!matchingsOfVm.add(matching))
+                            throw new TenantManagerException("this matching already exists for source VM");
+                        toCreate.add(i);
+                    }
+                    catch(TenantManagerException e) {
+                        // Counted as the rejections of createFlow()
+                        results[i] = new FlowCreationResult(spec, e.getMessage());
+                        metrics.record(AdmissionPhase.VALIDATION, validationStart);
+                        metrics.flowRejected();
+                        logRejection(spec, e);
+                        metrics.record(AdmissionPhase.TOTAL, validationStart);
+                    }
+                }
             }
+        }
+        finally {
+            StripedLocks.unlockAll(locks);
+        }
+
+        // Step 2: most demanding flows first
+        sortByDemand(toCreate, specs);
 
-            if(sourceVm.getHostMachine().getInterfaces().size() != 1) {
-                throw new TenantManagerException("Source host does not have a single interface but " + sourceVm.getHostMachine().getInterfaces().size() + " - that's not supported");
+        // Step 3: create the flows one by one, each one only locking its VMs
+        for(int i : toCreate) {
+            FlowSpec spec = specs.get(i);
+            try {
+                Flow flow = createFlow(spec);
+                results[i] = new FlowCreationResult(spec, flow, pathMapper.get(flow.getEntity()));
             }
+            catch(TenantManagerException e) {
+                results[i] = new FlowCreationResult(spec, e.getMessage());
+            }
+        }
+
+        return Arrays.asList(results);
+    }
 
-            srcNode = sourceVm.getHostMachine().getNetworkNode(sourceVm.getHostMachine().getInterfaces().iterator().next());
+    /**
+     * Dry run of createFlow(FlowSpec): checks whether a flow could be created, and with which reroutings, without
+     * changing anything (see createFlowsDryRun()).
+     * @param spec Specification of the flow.
+     * @return the outcome of the creation of the flow.
+     */
+    public DryRunResult createFlowDryRun(FlowSpec spec) {
+        return createFlowsDryRun(Collections.singletonList(spec)).get(0);
+    }
 
-            if(destinationVm.getHostMachine().getInterfaces().size() != 1) {
-                throw new TenantManagerException("Destination host does not have a single interface but " + destinationVm.getHostMachine().getInterfaces().size() + " - that's not supported");
+    /**
+     * Dry run of createFlows(): checks whether a batch of flows could be created, and with which reroutings, without
+     * changing anything.
+     *
+     * The flows go through the same validation, order, routing and rerouting steps as with createFlows(), each one
+     * seeing the reservations of the previous ones. Paths are however registered and deregistered directly on the
+     * proxy of the routing algorithm, through a ReservationUndoLog that undoes everything before returning: no
+     * component is attached or moved and the network resources end up in their initial state. The VMs of the batch are
+     * only locked while the flows are validated and the network lock only while they are embedded: the outcome is a
+     * snapshot, which concurrent admissions can change.
+     *
+     * Differences with createFlows(): speculative rerouting is not used (it does not change the outcome) and the flows
+     * accepted earlier in the same dry run are not candidates for rerouting.
+     *
+     * !!!!!
+     * THIS METHOD CANNOT BE RUN IN A MAPPER SPACE
+     * !!!!!
+     *
+     * @param specs Specifications of the flows.
+     * @return the outcome of each flow, in the order of specs.
+     */
+    public List<DryRunResult> createFlowsDryRun(List<FlowSpec> specs) {
+        if(specs == null)
+            return new ArrayList<>();
+
+        if(logger.isDebugEnabled())
+            logger.debug("Received batch of " + specs.size() + " flow creation requests (dry run)");
+
+        DryRunResult[] results = new DryRunResult[specs.size()];
+        NetworkNode[][] endpoints = new NetworkNode[specs.size()][];
+        List<Integer> toEmbed = new ArrayList<>(specs.size());
+
+        List<Object> vms = new ArrayList<>();
+        for(FlowSpec spec : specs) {
+            if(spec != null) {
+                vms.add(spec.getSource());
+                vms.add(spec.getDestination());
             }
+        }
+        List<ReentrantLock> locks = vmLocks.getAll(vms.toArray());
+        StripedLocks.lockAll(locks);
+        try {
+            // Step 1: validate everything (as createFlows())
+            try(MapperSpace ms = controller.startMapperSpace()) {
+                Map<VirtualMachine, Set<Matching>> batchMatchings = new HashMap<>();
+                for(int i = 0; i < specs.size(); i++) {
+                    FlowSpec spec = specs.get(i);
+                    try {
+                        endpoints[i] = validateFlow(spec);
+                        Matching matching = new FiveTupleMatching(spec.getSourceIP(), spec.getDestinationIP(), spec.getSourcePort(), spec.getDestinationPort(), spec.getProtocol());
+                        if(!batchMatchings.computeIfAbsent(spec.getSource(), vm -> new HashSet<>()).add(matching))
+                            throw new TenantManagerException("this matching already exists for source VM");
+                        toEmbed.add(i);
+                    }
+                    catch(TenantManagerException e) {
+                        results[i] = DryRunResult.rejected(spec, null, Collections.emptyMap(), e.getMessage());
+                    }
+                }
+            }
+        }
+        finally {
+            StripedLocks.unlockAll(locks);
+        }
+
+        // Step 2: most demanding flows first
+        sortByDemand(toEmbed, specs);
+
+        // Step 3: embed the flows one by one on the reservations only
+        networkLock.lock();
+        ReservationUndoLog undoLog = null;
+        List<Entity> scratchEntities = new ArrayList<>();
+        try {
+            Map<Entity, Path> dryRunPaths = new HashMap<>(); // flow rerouted during the dry run -> its new path
+            Map<Entity, UnicastRequest> dryRunRequests = new HashMap<>(); // flow rerouted during the dry run -> its new request
+            for(int i : toEmbed) {
+                FlowSpec spec = specs.get(i);
+                if(endpoints[i][0] == endpoints[i][1]) {
+                    results[i] = DryRunResult.accepted(spec, null, null, Collections.emptyMap());
+                    continue;
+                }
+                if(undoLog == null)
+                    undoLog = new ReservationUndoLog(requestScopedProxy.getProxy());
+                results[i] = dryRunEmbedFlow(spec, endpoints[i][0], endpoints[i][1], undoLog, dryRunPaths, dryRunRequests, scratchEntities);
+            }
+        }
+        finally {
+            try {
+                if(undoLog != null)
+                    undoLog.rollback();
+            }
+            finally {
+                try(MapperSpace ms = controller.startMapperSpace()) {
+                    for(Entity scratchEntity : scratchEntities) {
+                        ncRequestDataMapper.detachComponent(scratchEntity);
+                        requestMapper.detachComponent(scratchEntity);
+                    }
+                }
+                networkLock.unlock();
+            }
+        }
 
-            dstNode = destinationVm.getHostMachine().getNetworkNode(destinationVm.getHostMachine().getInterfaces().iterator().next());
+        return Arrays.asList(results);
+    }
 
-            if(rate <= 0 || burst <= 0 || latency <= 0)
-                throw new TenantManagerException("rate/burst/latency must be strictly positive");
+    /**
+     * Checks that a flow can be created and finds the network nodes of its source and destination hosts.
+     * Must be called in a mapper space.
+     * @param spec Specification of the flow.
+     * @return the source and destination network nodes of the flow.
+     * @throws TenantManagerException if the flow cannot be created (see createFlow()).
+     */
+    private NetworkNode[] validateFlow(FlowSpec spec) throws TenantManagerException {
+        if(spec == null || spec.getName() == null || spec.getSource() == null || spec.getDestination() == null || spec.getSourceIP() == null || spec.getDestinationIP() == null)
+            throw new TenantManagerException("no null element accepted");
+
+        if(logger.isDebugEnabled())
+            logger.debug("Received flow creation request: " + spec);
+
+        VirtualMachine sourceVm = spec.getSource();
+        VirtualMachine destinationVm = spec.getDestination();
+        Matching newMatching = new FiveTupleMatching(spec.getSourceIP(), spec.getDestinationIP(), spec.getSourcePort(), spec.getDestinationPort(), spec.getProtocol());
+        NetworkNode srcNode, dstNode;
+
+        virtualMachineMapper.acquireReadLock(sourceVm);
+        virtualMachineMapper.acquireReadLock(destinationVm);
+
+        if (sourceVm.getTenant() != destinationVm.getTenant())
+            throw new TenantManagerException("the two VMs do not belong to the same tenant");
+
+        if(sourceVm.getHostMachine().getNetwork() != sourceVm.getHostMachine().getNetwork())
+            throw new TenantManagerException("the two VMs hosts are not in the same network");
+
+        if(sourceVm.getFlow(newMatching) != null)
+            throw new TenantManagerException("this matching already exists for source VM");
+
+        if(sourceVm.getHostMachine().getInterfaces().size() != 1) {
+            throw new TenantManagerException("Source host does not have a single interface but " + sourceVm.getHostMachine().getInterfaces().size() + " - that's not supported");
+        }
+
+        srcNode = sourceVm.getHostMachine().getNetworkNode(sourceVm.getHostMachine().getInterfaces().iterator().next());
+
+        if(destinationVm.getHostMachine().getInterfaces().size() != 1) {
+            throw new TenantManagerException("Destination host does not have a single interface but " + destinationVm.getHostMachine().getInterfaces().size() + " - that's not supported");
         }
 
+        dstNode = destinationVm.getHostMachine().getNetworkNode(destinationVm.getHostMachine().getInterfaces().iterator().next());
+
+        if(spec.getRate() <= 0 || spec.getBurst() <= 0 || spec.getLatency() <= 0)
+            throw new TenantManagerException("rate/burst/latency must be strictly positive");
+
+        return new NetworkNode[]{srcNode, dstNode};
+    }
+
+    /**
+     * Embeds a flow that has been validated by validateFlow().
+     * @param spec Specification of the flow.
+     * @param srcNode Network node of the source host.
+     * @param dstNode Network node of the destination host.
+     * @return the added flow attached to the same entity as the RoutingSystem request/response.
+     * @throws TenantManagerException if the flow could not be embedded in the network.
+     */
+    private Flow embedFlow(FlowSpec spec, NetworkNode srcNode, NetworkNode dstNode) throws TenantManagerException {
+        VirtualMachine sourceVm = spec.getSource();
+        VirtualMachine destinationVm = spec.getDestination();
+        long rate = spec.getRate();
+        long burst = spec.getBurst();
+        double latency = spec.getLatency();
+
+        Flow newFlow;
+        Entity newFlowEntity;
+        Matching newMatching = new FiveTupleMatching(spec.getSourceIP(), spec.getDestinationIP(), spec.getSourcePort(), spec.getDestinationPort(), spec.getProtocol());
+        TrafficContract newTrafficContract = new TokenBucketTrafficContract(rate, burst);
+
         // Check if we want to try to reroute other flows
         boolean rerouteOtherFlows = reroutingConfigurationMapper.isIn(sourceVm.getHostMachine().getNetwork().getEntity());
 
-        newFlow = new Flow(name, sourceVm, destinationVm, newMatching, newTrafficContract);
+        newFlow = new Flow(spec.getName(), sourceVm, destinationVm, newMatching, newTrafficContract);
 
         if(srcNode == dstNode) {
-            logger.info("Both VMs are on the same host, no routing");
+            logger.debug("Both VMs are on the same host, no routing");
             // The two VMs are on the same host: always accept, Flow is then added to an empty entity
             newFlowEntity = controller.createEntity();
+            flowMapper.attachComponent(newFlowEntity, newFlow);
         }
         else {
-            logger.info("Creating routing request");
-            // Creating request
-            UnicastRequest newFlowRequest = new UnicastRequest(srcNode.getQueueNode(), dstNode.getQueueNode());
-            NCRequestData newFlowNCRequestData = new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(((double) rate) / 8, burst), Num.getFactory().create(latency / 1000));
-            SelectedRoutingAlgorithm selectedRoutingAlgorithm = new SelectedRoutingAlgorithm(routingAlgorithm);
+            // Network resources are reserved one flow at a time
+            long phaseStart = metrics.start();
+            networkLock.lock();
+            phaseStart = metrics.record(AdmissionPhase.NETWORK_LOCK, phaseStart);
+            try {
+                logger.debug("Creating routing request");
+                // Creating request
+                UnicastRequest newFlowRequest = new UnicastRequest(srcNode.getQueueNode(), dstNode.getQueueNode());
+                NCRequestData newFlowNCRequestData = new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(((double) rate) / 8, burst), Num.getFactory().create(latency / 1000));
+                SelectedRoutingAlgorithm selectedRoutingAlgorithm = new SelectedRoutingAlgorithm(routingAlgorithm);
+
+                try (MapperSpace ms = controller.startMapperSpace()) {
+                    newFlowEntity = controller.createEntity();
+                    requestMapper.attachComponent(newFlowEntity, newFlowRequest);
+                    ncRequestDataMapper.attachComponent(newFlowEntity, newFlowNCRequestData);
+                    selectedRoutingAlgorithmMapper.attachComponent(newFlowEntity, selectedRoutingAlgorithm);
+                }
+                metrics.record(AdmissionPhase.INITIAL_ROUTING, phaseStart);
 
-            try (MapperSpace ms = controller.startMapperSpace()) {
-                newFlowEntity = controller.createEntity();
-                requestMapper.attachComponent(newFlowEntity, newFlowRequest);
-                ncRequestDataMapper.attachComponent(newFlowEntity, newFlowNCRequestData);
-                selectedRoutingAlgorithmMapper.attachComponent(newFlowEntity, selectedRoutingAlgorithm);
-            }
-
-            // Check that the flow was routed
-            Path path = pathMapper.get(newFlowEntity);
-            if (path == null && !rerouteOtherFlows) {
-                throw new TenantManagerException("unable to embed the flow");
-            }
-            else if(path == null) {
-                List<Flow> reconfigurationAttempts = new LinkedList<>();
-                List<Flow> flowsReconfigured = new LinkedList<>();
-                List<Flow> reconfigurationSuccesses = new LinkedList<>();
-                ReroutingConfiguration reroutingConfig = reroutingConfigurationMapper.get(sourceVm.getHostMachine().getNetwork().getEntity());
-
-                // Step 1: determine which flows to reroute
-                List<Entity> flowsToReroute = selectFlowsToReroute(newFlowRequest, reroutingConfig.getFlowSelectionTypes());
-                int maxFlowsToReroute;
-                switch(reroutingConfig.getLimitReroutingTypes()) {
-                    case ABSOLUTE:
-                        maxFlowsToReroute = reroutingConfig.getRerouteLimit();
-                        break;
-                    case PERCENT:
-                        // +1 to have at least 1: e.g., 2 * 10/100 = 0.
-                        maxFlowsToReroute = ((flowsToReroute.size() * reroutingConfig.getRerouteLimit()) / 100) + 1;
-                        break;
-                    default:
-                        maxFlowsToReroute = flowsToReroute.size();
-                        break;
+                // Check that the flow was routed
+                Path path = pathMapper.get(newFlowEntity);
+                if (path == null && !rerouteOtherFlows) {
+                    throw new TenantManagerException("unable to embed the flow");
                 }
-                maxFlowsToReroute = Math.min(flowsToReroute.size(), maxFlowsToReroute);
-                this.logger.info("Will try at most " + maxFlowsToReroute + " reroutings, out of " + flowsToReroute.size() + " possible");
-
-                // Step 2: Sort the flows
-                sortFlows(flowsToReroute, newFlowRequest, reroutingConfig.getSortFlowTypes());
-
-                // Step 3: Now we reroute one by one and retry to embed the new flow
-                for (Entity flowToRerouteEntity : flowsToReroute.subList(0, maxFlowsToReroute)) {
-                    reconfigurationAttempts.add(flowMapper.get(flowToRerouteEntity));
-                    this.logger.info("Rerouting attempt #" + reconfigurationAttempts.size() + " - flow " + flowToRerouteEntity.getId());
-
-                    // 3.1: Get the original request and path
-                    UnicastRequest requestOfReroutedFlow = requestMapper.get(flowToRerouteEntity);
-                    Path originalPathOfReroutedFlow = pathMapper.get(flowToRerouteEntity);
-                    NCRequestData ncDataOfReroutedFlow = ncRequestDataMapper.get(flowToRerouteEntity);
-
-                    // 3.2: Increase cost of some edges
-                    DetServProxy originalProxy = (DetServProxy) routingAlgorithm.getProxy();
-                    routingAlgorithm.setProxy(getCostIncreaseProxy(originalProxy, flowToRerouteEntity, originalPathOfReroutedFlow, reroutingConfig.getCostIncreaseTypes()));
-
-                    // 3.3: Find a new route for the flow to reroute
-                    Entity newEntityFlowToReroute = controller.createEntity();
-                    try (MapperSpace ms = controller.startMapperSpace()) {
-                        requestMapper.attachComponent(newEntityFlowToReroute, new UnicastRequest(requestOfReroutedFlow.getSource(), requestOfReroutedFlow.getDestination()));
-                        ncRequestDataMapper.attachComponent(newEntityFlowToReroute, new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(ncDataOfReroutedFlow.getTb().getUltAffineRate(), ncDataOfReroutedFlow.getTb().getBurst()), ncDataOfReroutedFlow.getDeadline()));
-                        selectedRoutingAlgorithmMapper.attachComponent(newEntityFlowToReroute, new SelectedRoutingAlgorithm(routingAlgorithm));
-                        rerouteFromMapper.attachComponent(newEntityFlowToReroute, new RerouteFrom(flowToRerouteEntity));
+                else if(path == null) {
+                    List<Flow> reconfigurationAttempts = new LinkedList<>();
+                    List<Flow> flowsReconfigured = new LinkedList<>();
+                    List<Flow> reconfigurationSuccesses = new LinkedList<>();
+                    ReroutingConfiguration reroutingConfig = reroutingConfigurationMapper.get(sourceVm.getHostMachine().getNetwork().getEntity());
+
+                    // Step 1: determine which flows to reroute
+                    phaseStart = metrics.start();
+                    List<Entity> flowsToReroute = selectFlowsToReroute(newFlowRequest, reroutingConfig.getFlowSelectionTypes());
+                    metrics.record(AdmissionPhase.FLOW_SELECTION, phaseStart);
+                    int maxFlowsToReroute = getMaxFlowsToReroute(reroutingConfig, flowsToReroute.size());
+                    if(this.logger.isDebugEnabled())
+                        this.logger.debug("Will try at most " + maxFlowsToReroute + " reroutings, out of " + flowsToReroute.size() + " possible");
+
+                    // Step 2: Sort the flows (only the ones that will be tried)
+                    phaseStart = metrics.start();
+                    List<Entity> flowsToTry = rankFlows(flowsToReroute, newFlowRequest, reroutingConfig.getSortFlowTypes(), maxFlowsToReroute);
+                    metrics.record(AdmissionPhase.SORTING, phaseStart);
+
+                    // Step 3: Now we reroute one by one and retry to embed the new flow
+                    SpeculativeRerouting speculativeRerouting = speculativeReroutingMapper.isIn(network.getEntity()) ? speculativeReroutingMapper.get(network.getEntity()) : null;
+                    if (speculativeRerouting != null) {
+                        // 3.0: What-if of the whole loop, the network is only changed if the new flow fits
+                        phaseStart = metrics.start();
+                        List<Entity> flowsToCommit = speculateReroutings(newFlowRequest, newFlowNCRequestData, flowsToTry, reroutingConfig, speculativeRerouting, reconfigurationAttempts);
+                        metrics.record(AdmissionPhase.SPECULATION, phaseStart);
+                        if (flowsToCommit != null) {
+                            Entity committedFlowEntity = commitReroutings(newFlowRequest, newFlowNCRequestData, flowsToCommit, reroutingConfig, flowsReconfigured);
+                            if (committedFlowEntity != null) {
+                                newFlowEntity = committedFlowEntity;
+                                reconfigurationSuccesses.add(flowsReconfigured.get(flowsReconfigured.size() - 1));
+                                metrics.reroutingSucceeded(reroutingConfig);
+                            }
+                        }
+                        flowsToTry = new ArrayList<>();
                     }
 
-                    // Reset proxy
-                    routingAlgorithm.setProxy(originalProxy);
-
-                    // If rerouting fails
-                    if (!pathMapper.isIn(newEntityFlowToReroute)) {
-                        this.logger.info("Rerouting of " + flowMapper.get(flowToRerouteEntity) + " failed!");
-                        continue;
+                    AvoidQueuesProxy costIncreaseProxy = new AvoidQueuesProxy(requestScopedProxy.getProxy()); // reused by the attempts of this request
+                    for (Entity flowToRerouteEntity : flowsToTry) {
+                        reconfigurationAttempts.add(flowMapper.get(flowToRerouteEntity));
+                        metrics.reroutingAttempted(reroutingConfig);
+                        if(this.logger.isDebugEnabled())
+                            this.logger.debug("Rerouting attempt #" + reconfigurationAttempts.size() + " - flow " + flowToRerouteEntity.getId());
+
+                        // 3.1 to 3.4: Reroute the flow
+                        Entity newEntityFlowToReroute = rerouteFlow(flowToRerouteEntity, costIncreaseProxy, reroutingConfig);
+                        if (newEntityFlowToReroute == null)
+                            continue;
+                        Flow reroutedFlow = flowMapper.get(newEntityFlowToReroute);
+                        flowsReconfigured.add(reroutedFlow);
+
+                        // Retry to add the new flow, if rerouting was successful
+                        this.logger.debug("Re-adding the new flow... ");
+                        newFlowEntity = readdFlow(newFlowRequest, newFlowNCRequestData);
+                        if (pathMapper.isIn(newFlowEntity)) {
+                            this.logger.debug("Re-routing and re-adding successful!");
+                            reconfigurationSuccesses.add(reroutedFlow);
+                            metrics.reroutingSucceeded(reroutingConfig);
+                            break; // If rerouting and re-adding is successful, don't try to reroute more.
+                        }
+
+                        this.logger.debug("Re-adding the new flow failed!");
                     }
 
-                    this.logger.info("Rerouting of " + flowMapper.get(flowToRerouteEntity) + " successful!");
-                    flowsReconfigured.add(flowMapper.get(flowToRerouteEntity));
+                    reroutingStatsMapper.attachComponent(newFlowEntity, new ReroutingStats(reconfigurationAttempts, reconfigurationSuccesses, flowsReconfigured));
 
-                    // 3.4: Deregister the previous path of the flow
-                    try (MapperSpace ms = controller.startMapperSpace()) {
-                        requestMapper.detachComponent(flowToRerouteEntity);
-                    }
+                    if(reconfigurationSuccesses.size() == 0)
+                        throw new TenantManagerException("unable to embed the flow");
+                }
+                else {
+                    // Path was found! OK!
+                    if(rerouteOtherFlows)
+                        reroutingStatsMapper.attachComponent(newFlowEntity, new ReroutingStats(new LinkedList<>(), new LinkedList<>(), new LinkedList<>()));
+                }
 
-                    // Update Flow Component location
-                    Flow reroutedFlow = flowMapper.detachComponent(flowToRerouteEntity);
-                    flowMapper.attachComponent(newEntityFlowToReroute, reroutedFlow);
+                flowMapper.attachComponent(newFlowEntity, newFlow);
+                indexFlow(newFlowEntity);
+            }
+            finally {
+                networkLock.unlock();
+            }
+        }
 
-                    // Retry to add the new flow, if rerouting was successful
-                    this.logger.info("Re-adding the new flow... ");
-                    newFlowEntity = controller.createEntity();
-                    try (MapperSpace ms = controller.startMapperSpace()) {
-                        requestMapper.attachComponent(newFlowEntity, newFlowRequest);
-                        ncRequestDataMapper.attachComponent(newFlowEntity, newFlowNCRequestData);
-                        selectedRoutingAlgorithmMapper.attachComponent(newFlowEntity, new SelectedRoutingAlgorithm(routingAlgorithm));
-                    }
+        virtualMachineMapper.updateComponent(sourceVm, () -> sourceVm.addFlow(newFlow));
+        virtualMachineMapper.updateComponent(destinationVm, () -> destinationVm.addFlow(newFlow));
+        hostCatalog.addFlow(sourceVm.getHostMachine(), destinationVm.getHostMachine(), rate, burst);
+        if(logger.isDebugEnabled())
+            logger.debug("Flow " + newFlow + " from " + sourceVm + " to " + destinationVm + " created");
+        return newFlow;
+    }
 
-                    if (pathMapper.isIn(newFlowEntity)) {
-                        this.logger.info("Re-routing and re-adding successful!");
-                        reconfigurationSuccesses.add(reroutedFlow);
-                        break; // If rerouting and re-adding is successful, don't try to reroute more.
-                    }
+    /**
+     * Reroutes a flow, the cost of some edges being increased for its new route. Its current path stays reserved until
+     * a new one is found and registered. Must be called with the network lock.
+     * @param flowToRerouteEntity Entity holding the flow and its path.
+     * @param costIncreaseProxy proxy increasing the cost of the edges (filled by this method).
+     * @param reroutingConfig rerouting configuration.
+     * @return the Entity now holding the flow and its new path or null if the flow could not be rerouted.
+     */
+    private Entity rerouteFlow(Entity flowToRerouteEntity, AvoidQueuesProxy costIncreaseProxy, ReroutingConfiguration reroutingConfig) {
+        // 3.1: Get the original path
+        long phaseStart = metrics.start();
+        Path originalPathOfReroutedFlow = pathMapper.get(flowToRerouteEntity);
+
+        // 3.2: Increase cost of some edges (only for the request of the rerouted flow)
+        if (!fillCostIncreaseProxy(costIncreaseProxy, flowToRerouteEntity, originalPathOfReroutedFlow, reroutingConfig)) {
+            if(this.logger.isDebugEnabled())
+                this.logger.debug("Rerouting of " + flowMapper.get(flowToRerouteEntity) + " skipped: no known path between its hosts");
+            metrics.record(AdmissionPhase.REROUTING, phaseStart);
+            return null;
+        }
 
-                    this.logger.info("Re-adding the new flow failed!");
-                }
+        // 3.3 and 3.4: Find a new route for the flow to reroute and deregister its previous path
+        Entity newEntityFlowToReroute = moveFlow(flowToRerouteEntity, costIncreaseProxy);
+        metrics.record(AdmissionPhase.REROUTING, phaseStart);
 
-                reroutingStatsMapper.attachComponent(newFlowEntity, new ReroutingStats(reconfigurationAttempts, reconfigurationSuccesses, flowsReconfigured));
+        // If rerouting fails
+        if (newEntityFlowToReroute == null) {
+            if(this.logger.isDebugEnabled())
+                this.logger.debug("Rerouting of " + flowMapper.get(flowToRerouteEntity) + " failed!");
+            return null;
+        }
 
-                if(reconfigurationSuccesses.size() == 0)
-                    throw new TenantManagerException("unable to embed the flow");
+        if(this.logger.isDebugEnabled())
+            this.logger.debug("Rerouting of " + flowMapper.get(newEntityFlowToReroute) + " successful!");
+        metrics.flowRerouted(reroutingConfig);
+        return newEntityFlowToReroute;
+    }
+
+    /**
+     * Routes a flow again, its current path staying reserved until a new one is found and registered. The previous path
+     * is then deregistered and the flow moved to the Entity of the new path. Must be called with the network lock.
+     * @param flowEntity Entity holding the flow and its path.
+     * @param override proxy used (only) for the new request of the flow.
+     * @return the Entity now holding the flow and its new path or null if no new path was found (nothing changed).
+     */
+    private Entity moveFlow(Entity flowEntity, PathProxy override) {
+        NCRequestData ncData = ncRequestDataMapper.get(flowEntity);
+        UnicastRequest oldRequest = requestMapper.get(flowEntity);
+        UnicastRequest newRequest = new UnicastRequest(oldRequest.getSource(), oldRequest.getDestination());
+        Entity newEntity = controller.createEntity();
+        routeWithOverride(newRequest, override, () -> {
+            try (MapperSpace ms = controller.startMapperSpace()) {
+                requestMapper.attachComponent(newEntity, newRequest);
+                ncRequestDataMapper.attachComponent(newEntity, new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(ncData.getTb().getUltAffineRate(), ncData.getTb().getBurst()), ncData.getDeadline()));
+                selectedRoutingAlgorithmMapper.attachComponent(newEntity, new SelectedRoutingAlgorithm(routingAlgorithm));
+                rerouteFromMapper.attachComponent(newEntity, new RerouteFrom(flowEntity));
             }
-            else {
-                // Path was found! OK!
-                if(rerouteOtherFlows)
-                    reroutingStatsMapper.attachComponent(newFlowEntity, new ReroutingStats(new LinkedList<>(), new LinkedList<>(), new LinkedList<>()));
+            return null;
+        });
+        if (!pathMapper.isIn(newEntity))
+            return null;
+
+        // Deregister the previous path of the flow
+        try (MapperSpace ms = controller.startMapperSpace()) {
+            requestMapper.detachComponent(flowEntity);
+        }
+
+        // Update Flow Component location
+        Flow flow = flowMapper.detachComponent(flowEntity);
+        flowMapper.attachComponent(newEntity, flow);
+        flowLinkIndex.remove(flowEntity);
+        indexFlow(newEntity);
+        return newEntity;
+    }
+
+    /**
+     * Routes again the request of a new flow (after other flows have been rerouted). Must be called with the network
+     * lock.
+     * @param newFlowRequest request of the new flow.
+     * @param newFlowNCRequestData NC data of the new flow.
+     * @return the Entity of the request, holding a path if the new flow could be routed.
+     */
+    private Entity readdFlow(UnicastRequest newFlowRequest, NCRequestData newFlowNCRequestData) {
+        long phaseStart = metrics.start();
+        Entity newFlowEntity = controller.createEntity();
+        try (MapperSpace ms = controller.startMapperSpace()) {
+            requestMapper.attachComponent(newFlowEntity, newFlowRequest);
+            ncRequestDataMapper.attachComponent(newFlowEntity, newFlowNCRequestData);
+            selectedRoutingAlgorithmMapper.attachComponent(newFlowEntity, new SelectedRoutingAlgorithm(routingAlgorithm));
+        }
+        metrics.record(AdmissionPhase.READDING, phaseStart);
+        return newFlowEntity;
+    }
+
+    /**
+     * Commits the reroutings found by speculateReroutings() and embeds the new flow. The speculative routing algorithms
+     * do not necessarily route as the shared one does: if one of the reroutings fails or if the new flow does not fit
+     * once they are all done, the flows already rerouted are routed back onto their previous path, in reverse order,
+     * so that the network is left as it was. Must be called with the network lock.
+     * @param newFlowRequest request of the new flow.
+     * @param newFlowNCRequestData NC data of the new flow.
+     * @param flowsToCommit entities of the flows to reroute, in order.
+     * @param reroutingConfig rerouting configuration.
+     * @param flowsReconfigured flows rerouted, if the new flow is embedded (updated).
+     * @return the Entity of the new flow holding its path or null if the new flow was not embedded.
+     */
+    private Entity commitReroutings(UnicastRequest newFlowRequest, NCRequestData newFlowNCRequestData, List<Entity> flowsToCommit, ReroutingConfiguration reroutingConfig, List<Flow> flowsReconfigured) {
+        AvoidQueuesProxy costIncreaseProxy = new AvoidQueuesProxy(requestScopedProxy.getProxy());
+        List<Entity> reroutedEntities = new ArrayList<>(flowsToCommit.size());
+        List<Path> previousPaths = new ArrayList<>(flowsToCommit.size());
+        for (Entity flowToRerouteEntity : flowsToCommit) {
+            Path previousPath = pathMapper.get(flowToRerouteEntity);
+            Entity newEntityFlowToReroute = rerouteFlow(flowToRerouteEntity, costIncreaseProxy, reroutingConfig);
+            if (newEntityFlowToReroute == null) {
+                this.logger.warn("Rerouting of " + flowMapper.get(flowToRerouteEntity) + " failed although it succeeded speculatively!");
+                break;
             }
+            reroutedEntities.add(newEntityFlowToReroute);
+            previousPaths.add(previousPath);
         }
 
-        flowMapper.attachComponent(newFlowEntity, newFlow);
-        virtualMachineMapper.updateComponent(sourceVm, () -> sourceVm.addFlow(newFlow));
-        virtualMachineMapper.updateComponent(destinationVm, () -> destinationVm.addFlow(newFlow));
-        logger.info("Flow " + newFlow + " from " + sourceVm + " to " + destinationVm + " created");
-        return newFlow;
+        if (reroutedEntities.size() == flowsToCommit.size()) {
+            this.logger.debug("Re-adding the new flow... ");
+            Entity newFlowEntity = readdFlow(newFlowRequest, newFlowNCRequestData);
+            if (pathMapper.isIn(newFlowEntity)) {
+                this.logger.debug("Re-routing and re-adding successful!");
+                for (Entity reroutedEntity : reroutedEntities)
+                    flowsReconfigured.add(flowMapper.get(reroutedEntity));
+                return newFlowEntity;
+            }
+            this.logger.warn("Re-adding the new flow failed although it succeeded speculatively!");
+        }
+
+        // Undo the reroutings: each flow fitted on its previous path together with its new one
+        for (int i = reroutedEntities.size() - 1; i >= 0; i--) {
+            if (moveFlow(reroutedEntities.get(i), new PinnedPathProxy(requestScopedProxy.getProxy(), previousPaths.get(i))) == null)
+                throw new RuntimeException("unable to route " + flowMapper.get(reroutedEntities.get(i)) + " back onto its previous path");
+        }
+        return null;
+    }
+
+    /**
+     * Same as embedFlow() but only registering paths through an undo log (see createFlowsDryRun()).
+     * Must be called with the network lock.
+     * @param spec Specification of the flow.
+     * @param srcNode Network node of the source host.
+     * @param dstNode Network node of the destination host (different from srcNode).
+     * @param undoLog undo log of the dry run.
+     * @param dryRunPaths paths of the flows already rerouted during the dry run (updated).
+     * @param dryRunRequests requests of the flows already rerouted during the dry run (updated).
+     * @param scratchEntities entities created for the dry run (updated).
+     * @return the outcome of the creation of the flow.
+     */
+    private DryRunResult dryRunEmbedFlow(FlowSpec spec, NetworkNode srcNode, NetworkNode dstNode, ReservationUndoLog undoLog, Map<Entity, Path> dryRunPaths, Map<Entity, UnicastRequest> dryRunRequests, List<Entity> scratchEntities) {
+        boolean rerouteOtherFlows = reroutingConfigurationMapper.isIn(network.getEntity());
+        Map<Flow, Path> reroutedPaths = new LinkedHashMap<>();
+
+        NCRequestData newFlowNCRequestData = new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(((double) spec.getRate()) / 8, spec.getBurst()), Num.getFactory().create(spec.getLatency() / 1000));
+        UnicastRequest newFlowRequest = createScratchRequest(srcNode.getQueueNode(), dstNode.getQueueNode(), newFlowNCRequestData, scratchEntities);
+        Path path = dryRunRoute(newFlowRequest, undoLog);
+        if(path != null)
+            return DryRunResult.accepted(spec, path, null, reroutedPaths);
+        if(!rerouteOtherFlows)
+            return DryRunResult.rejected(spec, null, reroutedPaths, "unable to embed the flow");
+
+        List<Flow> reconfigurationAttempts = new LinkedList<>();
+        List<Flow> flowsReconfigured = new LinkedList<>();
+        List<Flow> reconfigurationSuccesses = new LinkedList<>();
+        ReroutingConfiguration reroutingConfig = reroutingConfigurationMapper.get(network.getEntity());
+
+        // Steps 1 and 2: same selection and ranking as embedFlow()
+        List<Entity> flowsToReroute;
+        try {
+            flowsToReroute = selectFlowsToReroute(newFlowRequest, reroutingConfig.getFlowSelectionTypes());
+        }
+        catch(TenantManagerException e) {
+            return DryRunResult.rejected(spec, null, reroutedPaths, e.getMessage());
+        }
+        List<Entity> flowsToTry = rankFlows(flowsToReroute, newFlowRequest, reroutingConfig.getSortFlowTypes(), getMaxFlowsToReroute(reroutingConfig, flowsToReroute.size()));
+
+        // Step 3: reroute one by one and retry to embed the new flow
+        AvoidQueuesProxy costIncreaseProxy = new AvoidQueuesProxy(requestScopedProxy.getProxy());
+        for(Entity flowToRerouteEntity : flowsToTry) {
+            Flow flowToReroute = flowMapper.get(flowToRerouteEntity);
+            reconfigurationAttempts.add(flowToReroute);
+
+            UnicastRequest requestOfReroutedFlow = dryRunRequests.containsKey(flowToRerouteEntity) ? dryRunRequests.get(flowToRerouteEntity) : requestMapper.get(flowToRerouteEntity);
+            Path originalPathOfReroutedFlow = dryRunPaths.containsKey(flowToRerouteEntity) ? dryRunPaths.get(flowToRerouteEntity) : pathMapper.get(flowToRerouteEntity);
+            NCRequestData ncDataOfReroutedFlow = ncRequestDataMapper.get(flowToRerouteEntity);
+            UnicastRequest newRequestOfReroutedFlow = createScratchRequest(requestOfReroutedFlow.getSource(), requestOfReroutedFlow.getDestination(), new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(ncDataOfReroutedFlow.getTb().getUltAffineRate(), ncDataOfReroutedFlow.getTb().getBurst()), ncDataOfReroutedFlow.getDeadline()), scratchEntities);
+
+            // Same order as embedFlow(): the new path is found and registered while the current one is still reserved,
+            // the current one is then freed
+            if(!fillCostIncreaseProxy(costIncreaseProxy, flowToRerouteEntity, originalPathOfReroutedFlow, reroutingConfig))
+                continue;
+            Path newPathOfReroutedFlow = routeWithOverride(newRequestOfReroutedFlow, costIncreaseProxy, () -> dryRunRoute(newRequestOfReroutedFlow, undoLog));
+            if(newPathOfReroutedFlow == null)
+                continue; // The flow keeps its path
+            if(!undoLog.deregister(originalPathOfReroutedFlow, requestOfReroutedFlow))
+                throw new RuntimeException("could not free the previous path of " + flowToReroute + " during a dry run");
+
+            flowsReconfigured.add(flowToReroute);
+            dryRunPaths.put(flowToRerouteEntity, newPathOfReroutedFlow);
+            dryRunRequests.put(flowToRerouteEntity, newRequestOfReroutedFlow);
+            reroutedPaths.put(flowToReroute, newPathOfReroutedFlow);
+
+            path = dryRunRoute(newFlowRequest, undoLog);
+            if(path != null) {
+                reconfigurationSuccesses.add(flowToReroute);
+                break;
+            }
+        }
+
+        ReroutingStats reroutingStats = new ReroutingStats(reconfigurationAttempts, reconfigurationSuccesses, flowsReconfigured);
+        if(path == null)
+            return DryRunResult.rejected(spec, reroutingStats, reroutedPaths, "unable to embed the flow");
+        return DryRunResult.accepted(spec, path, reroutingStats, reroutedPaths);
+    }
+
+    /**
+     * Creates a request that is not routed by the RoutingSystem (no SelectedRoutingAlgorithm).
+     * @param source source of the request.
+     * @param destination destination of the request.
+     * @param ncRequestData NC requirements of the request.
+     * @param scratchEntities list to which the entity of the request is added.
+     * @return the request.
+     */
+    private UnicastRequest createScratchRequest(Node source, Node destination, NCRequestData ncRequestData, List<Entity> scratchEntities) {
+        UnicastRequest request = new UnicastRequest(source, destination);
+        Entity entity = controller.createEntity();
+        try (MapperSpace ms = controller.startMapperSpace()) {
+            requestMapper.attachComponent(entity, request);
+            ncRequestDataMapper.attachComponent(entity, ncRequestData);
+        }
+        scratchEntities.add(entity);
+        return request;
+    }
+
+    /**
+     * Routes a request and registers its path through an undo log.
+     * @return the registered path or null if no path could be found or registered.
+     */
+    private Path dryRunRoute(UnicastRequest request, ReservationUndoLog undoLog) {
+        Response response = routingAlgorithm.solve(request);
+        if(response instanceof Path && undoLog.register((Path) response, request))
+            return (Path) response;
+        return null;
+    }
+
+    /**
+     * Adds a routed flow to the index of the flows of each link.
+     * @param flowEntity Entity holding the path of the flow.
+     */
+    private void indexFlow(Entity flowEntity) {
+        Edge[] queueEdges = pathMapper.get(flowEntity).getPath();
+        Set<Edge> linkEdges = new LinkedHashSet<>();
+        for(Edge queueEdge : queueEdges)
+            linkEdges.add(linkTable.getLinkEdge(queueEdge));
+        flowLinkIndex.add(flowEntity, linkEdges.toArray(new Edge[0]));
+    }
+
+    /**
+     * @param reroutingConfig rerouting configuration.
+     * @param candidates number of flows that could be rerouted.
+     * @return the number of flows whose rerouting will be tried.
+     */
+    private static int getMaxFlowsToReroute(ReroutingConfiguration reroutingConfig, int candidates) {
+        int maxFlowsToReroute;
+        switch(reroutingConfig.getLimitReroutingTypes()) {
+            case ABSOLUTE:
+                maxFlowsToReroute = reroutingConfig.getRerouteLimit();
+                break;
+            case PERCENT:
+                // +1 to have at least 1: e.g., 2 * 10/100 = 0.
+                maxFlowsToReroute = ((candidates * reroutingConfig.getRerouteLimit()) / 100) + 1;
+                break;
+            default:
+                maxFlowsToReroute = candidates;
+                break;
+        }
+        return Math.min(candidates, maxFlowsToReroute);
+    }
+
+    /**
+     * Sorts the indices of flows of a batch so that the most demanding flows come first (ties in batch order).
+     * @param indices indices in specs.
+     * @param specs Specifications of the flows of the batch.
+     */
+    private static void sortByDemand(List<Integer> indices, List<FlowSpec> specs) {
+        indices.sort(Comparator.comparingLong((Integer i) -> specs.get(i).getRate())
+                .thenComparingLong((Integer i) -> specs.get(i).getBurst())
+                .reversed()
+                .thenComparingInt((Integer i) -> i));
+    }
+
+    /**
+     * Writes an accepted flow to the admission event log, if it is sampled.
+     * @param spec Specification of the flow.
+     * @param flow The created flow.
+     */
+    private void logAdmission(FlowSpec spec, Flow flow) {
+        if(!admissionEventLog.sampleAccepted())
+            return;
+
+        Entity flowEntity = flow.getEntity();
+        int hops = pathMapper.isIn(flowEntity) ? pathMapper.get(flowEntity).getPath().length : 0;
+        int reroutedFlows = reroutingStatsMapper.isIn(flowEntity) ? reroutingStatsMapper.get(flowEntity).getFlowsReconfigured().size() : 0;
+        admissionEventLog.accepted(spec, hops, reroutedFlows);
+    }
+
+    /**
+     * Writes a rejected flow to the admission event log, if it is sampled.
+     * @param spec Specification of the flow.
+     * @param e Reason of the rejection.
+     */
+    private void logRejection(FlowSpec spec, TenantManagerException e) {
+        if(admissionEventLog.sampleRejected())
+            admissionEventLog.rejected(spec, e.getMessage());
     }
 
     public void deleteFlow(Flow flow) {
         if(flow == null)
             return;
 
-        logger.info("Deleting " + flow);
+        if(logger.isDebugEnabled())
+            logger.debug("Deleting " + flow);
 
+        List<ReentrantLock> locks = new ArrayList<>(vmLocks.getAll(flow.getSource(), flow.getDestination()));
+        locks.add(networkLock);
+        StripedLocks.lockAll(locks);
         try(MapperSpace ms = controller.startMapperSpace()) {
             flowMapper.acquireReadLock(flow);
             virtualMachineMapper.acquireReadLock(flow.getSource());
@@ -447,8 +1371,17 @@ public class TenantManagerSystem extends RootSystem {
             virtualMachineMapper.updateComponent(flow.getDestination(), () -> flow.getDestination().removeFlow(flow));
 
             // Remove request and flow
+            boolean wasAttached = flowMapper.isIn(flow.getEntity());
+            flowLinkIndex.remove(flow.getEntity());
             requestMapper.detachComponent(flow);
             flowMapper.detachComponent(flow);
+            if(wasAttached && flow.getTrafficContract() instanceof TokenBucketTrafficContract) {
+                TokenBucketTrafficContract contract = (TokenBucketTrafficContract) flow.getTrafficContract();
+                hostCatalog.removeFlow(flow.getSource().getHostMachine(), flow.getDestination().getHostMachine(), contract.getRate(), contract.getBurst());
+            }
+        }
+        finally {
+            StripedLocks.unlockAll(locks);
         }
     }
 
@@ -456,14 +1389,20 @@ public class TenantManagerSystem extends RootSystem {
         if(vm == null)
             return;
 
-        logger.info("Deleting " + vm);
+        if(logger.isInfoEnabled())
+            logger.info("Deleting " + vm);
 
+        List<ReentrantLock> locks = lockForDeletion(vm.getTenant(), () -> Collections.singleton(vm));
         try(MapperSpace ms = controller.startMapperSpace()) {
             virtualMachineMapper.acquireReadLock(vm);
             for(Flow flow : vm.getFlows())
                 this.deleteFlow(flow);
             tenantMapper.updateComponent(vm.getTenant(), () -> vm.getTenant().removeVM(vm));
             virtualMachineMapper.detachComponent(vm);
+            hostCatalog.removeVirtualMachine(vm.getHostMachine());
+        }
+        finally {
+            StripedLocks.unlockAll(locks);
         }
     }
 
@@ -471,8 +1410,10 @@ public class TenantManagerSystem extends RootSystem {
         if(tenant == null)
             return;
 
-        logger.info("Deleting " + tenant);
+        if(logger.isInfoEnabled())
+            logger.info("Deleting " + tenant);
 
+        List<ReentrantLock> locks = lockForDeletion(tenant, tenant::getVirtualMachines);
         try(MapperSpace ms = controller.startMapperSpace()) {
             tenantMapper.acquireReadLock(tenant);
             Set<Flow> flowsToRemove = new HashSet<>();
@@ -490,203 +1431,409 @@ public class TenantManagerSystem extends RootSystem {
             for(VirtualMachine vm : tenant.getVirtualMachines()) {
                 tenantMapper.updateComponent(vm.getTenant(), () -> vm.getTenant().removeVM(vm));
                 virtualMachineMapper.detachComponent(vm);
+                hostCatalog.removeVirtualMachine(vm.getHostMachine());
             }
 
             tenantMapper.detachComponent(tenant);
         }
+        finally {
+            StripedLocks.unlockAll(locks);
+        }
+
+        tenants.remove(tenant.getName(), tenant);
+    }
+
+    /**
+     * Deleting VMs also deletes flows from/to other VMs of the tenant: the tenant, the VMs to delete, the VMs at the
+     * other end of their flows and the network are locked. The tenant is locked first, so that no VM is added to it
+     * meanwhile. The flows of the VMs to delete are only known once these are locked: if the peers of these flows are
+     * not covered by the locks taken, the VM locks are released and taken again, in stripe order, with them.
+     * @param tenant tenant of the VMs to delete.
+     * @param vmsToDelete VMs to delete (read once the tenant is locked).
+     * @return the locks that have been taken.
+     */
+    private List<ReentrantLock> lockForDeletion(Tenant tenant, Supplier<Collection<VirtualMachine>> vmsToDelete) {
+        List<ReentrantLock> tenantLocksTaken = tenantLocks.getAll(tenant);
+        StripedLocks.lockAll(tenantLocksTaken);
+        try {
+            Set<VirtualMachine> vms = new HashSet<>(vmsToDelete.get());
+            while(true) {
+                List<ReentrantLock> vmLocksTaken = vmLocks.getAll(vms.toArray());
+                StripedLocks.lockAll(vmLocksTaken);
+                for(VirtualMachine vm : new ArrayList<>(vms)) {
+                    for(Flow flow : vm.getFlows()) {
+                        vms.add(flow.getSource());
+                        vms.add(flow.getDestination());
+                    }
+                }
+                if(vmLocksTaken.containsAll(vmLocks.getAll(vms.toArray()))) {
+                    List<ReentrantLock> locks = new ArrayList<>(tenantLocksTaken);
+                    locks.addAll(vmLocksTaken);
+                    locks.add(networkLock);
+                    networkLock.lock();
+                    return locks;
+                }
+                StripedLocks.unlockAll(vmLocksTaken);
+            }
+        }
+        catch(RuntimeException e) {
+            StripedLocks.unlockAll(tenantLocksTaken);
+            throw e;
+        }
     }
 
     /**
      * Places a VM in the network.
      * @param vm VM to place.
      * @param host host where to place the VM or null if to be decided by the function.
+     * @param hostReserved true if the VM is already recorded on the given host in the host catalog.
      * @return Host where to place the VM or null if no place found.
      */
-    private Host placeVM(VirtualMachine vm, Host host) {
+    private Host placeVM(VirtualMachine vm, Host host, boolean hostReserved) {
         Host chosenHost;
         if(host == null) {
-            logger.info("Placing VM " + vm + " on a host");
-            int nHosts = network.getHosts().size();
-            Host[] hosts = new Host[nHosts];
-            network.getHosts().toArray(hosts);
-            chosenHost = hosts[new Random().nextInt(nHosts)];
-            logger.info("Host " + chosenHost + " chosen");
+            if(logger.isDebugEnabled())
+                logger.debug("Placing VM " + vm + " on a host");
+            chosenHost = hostCatalog.place(placementStrategy, vm);
+            if(chosenHost == null) {
+                logger.error("No host can take the VM");
+                return null;
+            }
+            if(logger.isDebugEnabled())
+                logger.debug("Host " + chosenHost + " chosen");
         }
         else {
-            logger.info("Placing VM " + vm + " on " + host + " as requested");
+            if(logger.isDebugEnabled())
+                logger.debug("Placing VM " + vm + " on " + host + " as requested");
             if(host.getNetwork() != network) {
                 logger.error("The forced host for hosting the VM is no in the same network...");
                 return null;
             }
-            else
+            else {
                 chosenHost = host;
+                if(!hostReserved)
+                    hostCatalog.addVirtualMachine(chosenHost);
+            }
         }
         virtualMachineMapper.updateComponent(vm, () -> vm.setHostMachine(chosenHost));
         return chosenHost;
     }
 
-    private List<Entity> selectFlowsToReroute(UnicastRequest request, FlowSelectionTypes flowSelectionType) {
+    /**
+     * @param linkSourceNode source node in the link graph.
+     * @param linkDestinationNode destination node in the link graph.
+     * @param level 0 for the shortest paths, 1 for the second shortest ones (not available in a fat tree).
+     * @return the precomputed shortest paths of the level as arrays of link edges (from the kSPs if they are
+     * computed, from the fat tree otherwise).
+     */
+    private List<Edge[]> getShortestPathEdges(Node linkSourceNode, Node linkDestinationNode, int level) {
+        if (isFatTree && level == 0 && kspSystem == null)
+            return networkTopology.getEqualLengthShortestPaths(linkSourceNode, linkDestinationNode);
+        else
+            return kShortestPathsMapper.get(linkSourceNode.getEntity()).getShortestPathEdges(linkDestinationNode, level);
+    }
+
+    /**
+     * @param linkSourceNode source node in the link graph.
+     * @param linkDestinationNode destination node in the link graph.
+     * @return true if the precomputed shortest paths of the pair can be looked up, false if the pair is unreachable or
+     * unknown to the kSPs.
+     */
+    private boolean hasShortestPaths(Node linkSourceNode, Node linkDestinationNode) {
+        if (isFatTree && kspSystem == null)
+            return true;
+        return kShortestPathsMapper.isIn(linkSourceNode.getEntity()) && kShortestPathsMapper.get(linkSourceNode.getEntity()).hasShortestPathsTo(linkDestinationNode);
+    }
+
+    /**
+     * @param request request of the flow that could not be embedded.
+     * @param flowSelectionType which flows to select.
+     * @return the flows that could be rerouted.
+     * @throws TenantManagerException if the selection needs the shortest paths of the pair and they are not known.
+     */
+    private List<Entity> selectFlowsToReroute(UnicastRequest request, FlowSelectionTypes flowSelectionType) throws TenantManagerException {
         Node linkSourceNode = networkNodeMapper.get(toNetworkMapper.get(request.getSource().getEntity()).getNetworkEntity()).getLinkNode();
         Node linkDestinationNode = networkNodeMapper.get(toNetworkMapper.get(request.getDestination().getEntity()).getNetworkEntity()).getLinkNode();
 
-        Set<Entity> setOfFlows = new HashSet<>();
-
         List<Edge[]> pathsToConsider = new ArrayList<>();
+        boolean usesShortestPaths = flowSelectionType == FlowSelectionTypes.ONE_SHORTEST_PATH || flowSelectionType == FlowSelectionTypes.ALL_SHORTEST_PATHS || flowSelectionType == FlowSelectionTypes.ALL_TWO_SHORTEST_PATHS;
+        if (usesShortestPaths && !hasShortestPaths(linkSourceNode, linkDestinationNode))
+            throw new TenantManagerException("unable to embed the flow (no known path between the hosts)");
         switch (flowSelectionType) {
             case ALL_FLOWS:
                 return new ArrayList<>(pathListMapper.get(request.getSource().getGraph().getEntity()).getPathList());
             case ONE_SHORTEST_PATH:
-                Edge[] path;
-                if (isFatTree) {
-                    path = networkTopology.getEqualLengthShortestPaths(linkSourceNode, linkDestinationNode).get(0);
-                } else {
-                    path = kShortestPathsMapper.get(linkSourceNode.getEntity()).getShortestPaths(linkDestinationNode, 0).get(0).getPath();
-                }
-                pathsToConsider.add(path);
+                pathsToConsider.add(getShortestPathEdges(linkSourceNode, linkDestinationNode, 0).get(0));
                 break;
             case ALL_SHORTEST_PATHS:
-                if (isFatTree) {
-                    pathsToConsider.addAll(networkTopology.getEqualLengthShortestPaths(linkSourceNode, linkDestinationNode));
-                } else {
-                    for (Path p : kShortestPathsMapper.get(linkSourceNode.getEntity()).getShortestPaths(linkDestinationNode, 0))
-                        pathsToConsider.add(p.getPath());
-                }
+                pathsToConsider.addAll(getShortestPathEdges(linkSourceNode, linkDestinationNode, 0));
                 break;
             case ALL_TWO_SHORTEST_PATHS:
-                for (Path p : kShortestPathsMapper.get(linkSourceNode.getEntity()).getShortestPaths(linkDestinationNode, 0))
-                    pathsToConsider.add(p.getPath());
-                for (Path p : kShortestPathsMapper.get(linkSourceNode.getEntity()).getShortestPaths(linkDestinationNode, 1))
-                    pathsToConsider.add(p.getPath());
+                pathsToConsider.addAll(getShortestPathEdges(linkSourceNode, linkDestinationNode, 0));
+                pathsToConsider.addAll(getShortestPathEdges(linkSourceNode, linkDestinationNode, 1));
                 break;
             default:
                 break;
         }
 
-        // Compute set of edges (that prevents from trying to add several times the same edge)
-        Set<Entity> setOfEdges = new HashSet<>();
-        for(Edge[] path : pathsToConsider) {
-            for(Edge linkEdge : path) {
-                Edge[] queueEdges = linkMapper.get(toNetworkMapper.get(linkEdge.getEntity()).getNetworkEntity()).getQueueEdges();
-                for(Edge queueEdge : queueEdges)
-                    setOfEdges.add(queueEdge.getEntity());
+        // Flows going through any link of the paths
+        List<Edge> linkEdges = new ArrayList<>();
+        for(Edge[] path : pathsToConsider)
+            Collections.addAll(linkEdges, path);
+
+        return flowLinkIndex.getFlowsOn(linkEdges);
+    }
+
+    /**
+     * @param algorithm a routing algorithm.
+     * @return the proxy of the algorithm.
+     */
+    private static PathProxy getPathProxy(RoutingAlgorithm algorithm) {
+        if (!(algorithm.getProxy() instanceof PathProxy))
+            throw new RuntimeException("rerouting needs a routing algorithm using a PathProxy, got " + algorithm.getProxy());
+        return (PathProxy) algorithm.getProxy();
+    }
+
+    /**
+     * Wraps the proxy of a routing algorithm in a RequestScopedProxy, once: the proxy of the algorithm is then never
+     * replaced. Tenant managers sharing the algorithm share the RequestScopedProxy.
+     * @param algorithm a routing algorithm.
+     * @return the RequestScopedProxy of the algorithm.
+     */
+    private static RequestScopedProxy installRequestScopedProxy(RoutingAlgorithm algorithm) {
+        synchronized (algorithm) {
+            if (algorithm.getProxy() instanceof RequestScopedProxy)
+                return (RequestScopedProxy) algorithm.getProxy();
+            RequestScopedProxy proxy = new RequestScopedProxy(getPathProxy(algorithm));
+            algorithm.setProxy(proxy);
+            return proxy;
+        }
+    }
+
+    /**
+     * Routes a request with the costs of a specific proxy, all the other requests being routed as usual (see
+     * RequestScopedProxy).
+     * @param request the request.
+     * @param override proxy to use for the request.
+     * @param routing routes the request with the routing algorithm.
+     * @return what routing returns.
+     */
+    private <T> T routeWithOverride(Request request, PathProxy override, Supplier<T> routing) {
+        requestScopedProxy.setOverride(request, override);
+        try {
+            return routing.get();
+        }
+        finally {
+            requestScopedProxy.removeOverride(request);
+        }
+    }
+
+    /**
+     * What-if version of the rerouting loop of embedFlow(), used for speculative rerouting. The flows are tried in the
+     * same order and get the same new routes as in embedFlow(), but the new paths (and the one of the new flow) are
+     * only registered through an undo log, which is rolled back before returning: nothing is changed if the new flow
+     * does not fit. The new routes of the next "parallelism" flows are computed concurrently on the current
+     * reservations and computed again once a flow has been rerouted (the reservations then changed).
+     * Must be called with the network lock.
+     * @param newFlowRequest request of the flow that could not be embedded.
+     * @param newFlowNCRequestData NC requirements of the flow that could not be embedded.
+     * @param flowsToTry flows to reroute, in the order in which they are tried.
+     * @param reroutingConfig rerouting configuration.
+     * @param speculativeRerouting speculative rerouting configuration.
+     * @param reconfigurationAttempts flows whose rerouting is tried (updated).
+     * @return the flows to reroute, in order, for the new flow to fit or null if it does not fit.
+     */
+    private List<Entity> speculateReroutings(UnicastRequest newFlowRequest, NCRequestData newFlowNCRequestData, List<Entity> flowsToTry, ReroutingConfiguration reroutingConfig, SpeculativeRerouting speculativeRerouting, List<Flow> reconfigurationAttempts) {
+        ReservationUndoLog undoLog = new ReservationUndoLog(requestScopedProxy.getProxy());
+        List<Entity> scratchEntities = new ArrayList<>();
+        try {
+            UnicastRequest newFlowScratchRequest = createScratchRequest(newFlowRequest.getSource(), newFlowRequest.getDestination(), new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(newFlowNCRequestData.getTb().getUltAffineRate(), newFlowNCRequestData.getTb().getBurst()), newFlowNCRequestData.getDeadline()), scratchEntities);
+
+            List<Entity> reroutedFlows = new ArrayList<>();
+            Map<Entity, UnicastRequest> newRequests = new HashMap<>(); // flow -> request of its new route
+            Map<Entity, Path> newPaths = new HashMap<>(); // flow -> new route on the current reservations (null if none)
+            for (int attempt = 0; attempt < flowsToTry.size(); attempt++) {
+                Entity flowToRerouteEntity = flowsToTry.get(attempt);
+                reconfigurationAttempts.add(flowMapper.get(flowToRerouteEntity));
+                metrics.reroutingAttempted(reroutingConfig);
+                if (!newPaths.containsKey(flowToRerouteEntity))
+                    routeConcurrently(flowsToTry.subList(attempt, Math.min(flowsToTry.size(), attempt + speculativeRerouting.getParallelism())), reroutingConfig, speculativeRerouting, newRequests, newPaths, scratchEntities);
+
+                // Same order as embedFlow(): register the new path, then free the current one
+                Path newPath = newPaths.get(flowToRerouteEntity);
+                if (newPath == null || !undoLog.register(newPath, newRequests.get(flowToRerouteEntity))) {
+                    if(this.logger.isDebugEnabled())
+                        this.logger.debug("Rerouting of " + flowMapper.get(flowToRerouteEntity) + " failed (speculatively)!");
+                    continue;
+                }
+                if (!undoLog.deregister(pathMapper.get(flowToRerouteEntity), requestMapper.get(flowToRerouteEntity)))
+                    throw new RuntimeException("could not free the path of " + flowMapper.get(flowToRerouteEntity) + " during speculative rerouting");
+                reroutedFlows.add(flowToRerouteEntity);
+                // The reservations changed, the remaining new routes are outdated
+                newPaths.clear();
+
+                if (dryRunRoute(newFlowScratchRequest, undoLog) != null)
+                    return reroutedFlows;
+            }
+            return null;
+        } finally {
+            try {
+                undoLog.rollback();
+            } finally {
+                try (MapperSpace ms = controller.startMapperSpace()) {
+                    for (Entity scratchEntity : scratchEntities) {
+                        ncRequestDataMapper.detachComponent(scratchEntity);
+                        requestMapper.detachComponent(scratchEntity);
+                    }
+                }
             }
         }
+    }
 
-        for(Entity queueEdgeEntity : setOfEdges)
-            setOfFlows.addAll(pathListMapper.get(queueEdgeEntity).getPathList());
+    /**
+     * Computes concurrently, without registering anything, the new routes of flows to reroute, i.e., the routes
+     * embedFlow() would find for them on the current reservations.
+     * @param flowEntities entities of the flows to reroute.
+     * @param reroutingConfig rerouting configuration (edges whose cost is increased when rerouting a flow).
+     * @param speculativeRerouting speculative rerouting configuration.
+     * @param newRequests request of the new route of each flow (updated).
+     * @param newPaths new route of each flow or null if none was found (updated).
+     * @param scratchEntities entities created for the requests (updated).
+     */
+    private void routeConcurrently(List<Entity> flowEntities, ReroutingConfiguration reroutingConfig, SpeculativeRerouting speculativeRerouting, Map<Entity, UnicastRequest> newRequests, Map<Entity, Path> newPaths, List<Entity> scratchEntities) {
+        // One algorithm instance (and cost increase proxy) per concurrent what-if routing
+        while (speculativeRoutingAlgorithms.size() < flowEntities.size()) {
+            RoutingAlgorithm algorithm = speculativeRerouting.getRoutingAlgorithmFactory().get();
+            RequestScopedProxy proxy = installRequestScopedProxy(algorithm);
+            speculativeRoutingAlgorithms.add(algorithm);
+            speculativeRequestScopedProxies.add(proxy);
+            speculativeCostIncreaseProxies.add(new AvoidQueuesProxy(proxy.getProxy()));
+        }
+
+        List<Future<Path>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < flowEntities.size(); i++) {
+                // Requests on scratch entities: without SelectedRoutingAlgorithm, they are not routed by the RoutingSystem
+                UnicastRequest requestOfReroutedFlow = requestMapper.get(flowEntities.get(i));
+                NCRequestData ncDataOfReroutedFlow = ncRequestDataMapper.get(flowEntities.get(i));
+                UnicastRequest request = createScratchRequest(requestOfReroutedFlow.getSource(), requestOfReroutedFlow.getDestination(), new NCRequestData(CurvePwAffine.getFactory().createTokenBucket(ncDataOfReroutedFlow.getTb().getUltAffineRate(), ncDataOfReroutedFlow.getTb().getBurst()), ncDataOfReroutedFlow.getDeadline()), scratchEntities);
+                newRequests.put(flowEntities.get(i), request);
+
+                RoutingAlgorithm algorithm = speculativeRoutingAlgorithms.get(i);
+                RequestScopedProxy proxy = speculativeRequestScopedProxies.get(i);
+                AvoidQueuesProxy increasedCostProxy = speculativeCostIncreaseProxies.get(i);
+                if (!fillCostIncreaseProxy(increasedCostProxy, flowEntities.get(i), pathMapper.get(flowEntities.get(i)), reroutingConfig)) {
+                    futures.add(CompletableFuture.completedFuture(null));
+                    continue;
+                }
+                futures.add(speculativeRerouting.getExecutor().submit(() -> {
+                    proxy.setOverride(request, increasedCostProxy);
+                    try {
+                        Response response = algorithm.solve(request);
+                        return response instanceof Path ? (Path) response : null;
+                    }
+                    finally {
+                        proxy.removeOverride(request);
+                    }
+                }));
+            }
 
-        return new ArrayList<>(setOfFlows);
+            for (int i = 0; i < flowEntities.size(); i++)
+                newPaths.put(flowEntities.get(i), futures.get(i).get());
+        } catch (InterruptedException | ExecutionException e) {
+            for (Future<Path> future : futures)
+                future.cancel(true);
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            throw new RuntimeException("speculative rerouting failed", e);
+        }
     }
 
-    private void sortFlows(List<Entity> selectedFlows, UnicastRequest request, SortFlowTypes sortFlowType) {
+    /**
+     * Orders the candidate flows to reroute and keeps the first ones. If not all of them are kept, the first ones are
+     * selected without sorting all of them.
+     * @param selectedFlows candidate flows.
+     * @param request request of the flow that could not be embedded.
+     * @param sortFlowType how to order the flows.
+     * @param limit number of flows to keep.
+     * @return the first limit flows, in order.
+     */
+    private List<Entity> rankFlows(List<Entity> selectedFlows, UnicastRequest request, SortFlowTypes sortFlowType, int limit) {
         Node linkSourceNode = networkNodeMapper.get(toNetworkMapper.get(request.getSource().getEntity()).getNetworkEntity()).getLinkNode();
         Node linkDestinationNode = networkNodeMapper.get(toNetworkMapper.get(request.getDestination().getEntity()).getNetworkEntity()).getLinkNode();
 
-        Comparator<Entity> comparator = null;
+        // Score of each flow, computed once (higher scores first)
+        double[] scores = new double[selectedFlows.size()];
 
         switch(sortFlowType) {
             case COMMON_EDGES_SORT:
                 Set<Edge> setOfPhysicalEdges = new HashSet<>();
-                if (isFatTree) {
-                    List<Edge[]> shortestPaths = networkTopology.getEqualLengthShortestPaths(linkSourceNode, linkDestinationNode);
-                    for(Edge[] sp : shortestPaths)
-                        for (Edge edge : sp)
-                            setOfPhysicalEdges.add(edge);
-                } else {
-                    List<Path> shortestPaths = kShortestPathsMapper.get(linkSourceNode.getEntity()).getShortestPaths(linkDestinationNode, 0);
-                    for(Path sp : shortestPaths) {
-                        for (Edge edge : sp.getPath())
-                            setOfPhysicalEdges.add(edge);
-                    }
-                }
+                for(Edge[] sp : getShortestPathEdges(linkSourceNode, linkDestinationNode, 0))
+                    for (Edge edge : sp)
+                        setOfPhysicalEdges.add(edge);
 
-                comparator = Comparator.comparingInt((Entity e) -> {
+                for(int i = 0; i < scores.length; i++) {
                     int commonEdges = 0;
-                    for(Edge queueEdge : pathMapper.get(e).getPath()) {
-                        Edge linkEdge = linkMapper.get(toNetworkMapper.get(queueEdge.getEntity()).getNetworkEntity()).getLinkEdge();
-                        if(setOfPhysicalEdges.contains(linkEdge))
+                    for(Edge queueEdge : pathMapper.get(selectedFlows.get(i)).getPath()) {
+                        if(setOfPhysicalEdges.contains(linkTable.getLinkEdge(queueEdge)))
                             commonEdges++;
                     }
-                    return commonEdges;
-                });
-                comparator = comparator.reversed();
+                    scores[i] = commonEdges;
+                }
                 break;
             case RATE_SORT:
-                comparator = Comparator.comparingDouble((Entity e) -> ncRequestDataMapper.get(e).getTb().getUltAffineRate().doubleValue());
-                comparator = comparator.reversed();
+                for(int i = 0; i < scores.length; i++)
+                    scores[i] = ncRequestDataMapper.get(selectedFlows.get(i)).getTb().getUltAffineRate().doubleValue();
                 break;
             case BURST_SORT:
-                comparator = Comparator.comparingDouble((Entity e) -> ncRequestDataMapper.get(e).getTb().getBurst().doubleValue());
-                comparator = comparator.reversed();
+                for(int i = 0; i < scores.length; i++)
+                    scores[i] = ncRequestDataMapper.get(selectedFlows.get(i)).getTb().getBurst().doubleValue();
                 break;
             case DELAY_SORT:
-                comparator = Comparator.comparingDouble((Entity e) -> ncRequestDataMapper.get(e).getDeadline().doubleValue());
-                comparator = comparator.reversed();
+                for(int i = 0; i < scores.length; i++)
+                    scores[i] = ncRequestDataMapper.get(selectedFlows.get(i)).getDeadline().doubleValue();
                 break;
             case NO_SORT:
-                break;
+                return selectedFlows.subList(0, limit);
         }
 
-        if(comparator != null)
-            selectedFlows.sort(comparator.thenComparingLong(Entity::getId));
+        if(limit < selectedFlows.size())
+            return FlowRanking.top(selectedFlows, scores, limit);
+        FlowRanking.sort(selectedFlows, scores);
+        return selectedFlows;
     }
 
-    private PathProxy getCostIncreaseProxy(DetServProxy originalProxy, Entity flowToRerouteEntity, Path originalPathOfReroutedFlow, CostIncreaseTypes costIncreaseType) {
+    /**
+     * Sets the edges whose cost is increased when rerouting a flow.
+     * @return false if the cost increase needs the shortest paths of the pair of the flow and they are not known (the
+     * flow should then not be rerouted).
+     */
+    private boolean fillCostIncreaseProxy(AvoidQueuesProxy increasedCostProxy, Entity flowToRerouteEntity, Path originalPathOfReroutedFlow, ReroutingConfiguration reroutingConfig) {
+        CostIncreaseTypes costIncreaseType = reroutingConfig.getCostIncreaseTypes();
         UnicastRequest request = requestMapper.get(flowToRerouteEntity);
         Node linkSourceNode = networkNodeMapper.get(toNetworkMapper.get(request.getSource().getEntity()).getNetworkEntity()).getLinkNode();
         Node linkDestinationNode = networkNodeMapper.get(toNetworkMapper.get(request.getDestination().getEntity()).getNetworkEntity()).getLinkNode();
 
-        AvoidQueuesProxy increasedCostProxy = new AvoidQueuesProxy(originalProxy);
+        increasedCostProxy.clear();
+        increasedCostProxy.setMultiplier(reroutingConfig.getCostIncreaseMultiplier());
 
-        // SP part
-        Edge[] queues;
-        switch (costIncreaseType) {
-            case PHYSICAL_LINK_INCREASE_AND_SP:
-            case QUEUE_LINK_INCREASE_AND_SP:
-                // Just the queues on the SP
-                if (isFatTree) {
-                    queues = networkTopology.getEqualLengthShortestPaths(linkSourceNode, linkDestinationNode).get(0);
-                } else {
-                    queues = kShortestPathsMapper.get(linkSourceNode.getEntity()).getShortestPaths(linkDestinationNode, 0).get(0).getPath();
-                }
-                for(int i = 1; i < queues.length - 1; i++) // ignore first and last queues as these are host links
-                    for (Edge queueToAdd : linkMapper.get(toNetworkMapper.get(queues[i].getEntity()).getNetworkEntity()).getQueueEdges())
-                        increasedCostProxy.addQueue(queueToAdd);
-                break;
-            case PHYSICAL_LINK_INCREASE_AND_ALL_TWO_SP:
-            case QUEUE_LINK_INCREASE_AND_ALL_TWO_SP:
-                for(Path path : kShortestPathsMapper.get(linkSourceNode.getEntity()).getShortestPaths(linkDestinationNode, 1)) {
-                    queues = path.getPath();
-                    for(int i = 1; i < queues.length - 1; i++) // ignore first and last queues as these are host links
-                        for (Edge queueToAdd : linkMapper.get(toNetworkMapper.get(queues[i].getEntity()).getNetworkEntity()).getQueueEdges())
-                            increasedCostProxy.addQueue(queueToAdd);
-                }
-            case PHYSICAL_LINK_INCREASE_AND_ALL_SP:
-            case QUEUE_LINK_INCREASE_AND_ALL_SP:
-                if (isFatTree) {
-                    for(Edge[] path : networkTopology.getEqualLengthShortestPaths(linkSourceNode, linkDestinationNode)) {
-                        for(int i = 1; i < path.length - 1; i++) // ignore first and last queues as these are host links
-                            for (Edge queueToAdd : linkMapper.get(toNetworkMapper.get(path[i].getEntity()).getNetworkEntity()).getQueueEdges())
-                                increasedCostProxy.addQueue(queueToAdd);
-                    }
-                } else {
-                    for(Path path : kShortestPathsMapper.get(linkSourceNode.getEntity()).getShortestPaths(linkDestinationNode, 0)) {
-                        for(int i = 1; i < path.getPath().length - 1; i++) // ignore first and last queues as these are host links
-                            for (Edge queueToAdd : linkMapper.get(toNetworkMapper.get(path.getPath()[i].getEntity()).getNetworkEntity()).getQueueEdges())
-                                increasedCostProxy.addQueue(queueToAdd);
-                    }
-                }
-        }
+        // SP part (only depends on the pair and on the topology)
+        ShortestPathQueueSets.Scope scope = ShortestPathQueueSets.getScope(costIncreaseType);
+        if(scope != null && !hasShortestPaths(linkSourceNode, linkDestinationNode))
+            return false;
+        if(scope != null)
+            increasedCostProxy.addQueues(shortestPathQueueSets.get(linkSourceNode, linkDestinationNode, scope, () -> getShortestPathQueues(linkSourceNode, linkDestinationNode, scope)));
 
         // Existing path part
+        Edge[] queues;
         switch (costIncreaseType) {
             case QUEUE_LINK_INCREASE:
             case QUEUE_LINK_INCREASE_AND_SP:
             case QUEUE_LINK_INCREASE_AND_ALL_SP:
             case QUEUE_LINK_INCREASE_AND_ALL_TWO_SP:
                 queues = originalPathOfReroutedFlow.getPath();
-                for(int i = 1; i < queues.length; i++) // ignore first queue as these are host links (keep the last one because it's only per-queue thing)
-                    increasedCostProxy.addQueue(queues[i]);
+                // ignore first queue as these are host links (keep the last one because it's only per-queue thing)
+                increasedCostProxy.addQueues(queues, 1, queues.length);
                 break;
             case PHYSICAL_LINK_INCREASE:
             case PHYSICAL_LINK_INCREASE_AND_SP:
@@ -694,12 +1841,33 @@ public class TenantManagerSystem extends RootSystem {
             case PHYSICAL_LINK_INCREASE_AND_ALL_TWO_SP:
                 queues = originalPathOfReroutedFlow.getPath();
                 for(int i = 1; i < queues.length; i++) { // ignore first queue and last as these are host links
-                    for (Edge queueToAdd : linkMapper.get(toNetworkMapper.get(queues[i].getEntity()).getNetworkEntity()).getQueueEdges())
-                        increasedCostProxy.addQueue(queueToAdd);
+                    increasedCostProxy.addQueues(linkTable.getQueueEdges(queues[i]));
                 }
                 break;
         }
+        return true;
+    }
+
+    /**
+     * @return the queues of the links of the shortest paths of a pair selected by a scope, except the host links.
+     */
+    private Edge[] getShortestPathQueues(Node linkSourceNode, Node linkDestinationNode, ShortestPathQueueSets.Scope scope) {
+        List<Edge[]> paths = new ArrayList<>();
+        switch (scope) {
+            case ONE_SHORTEST_PATH:
+                // Just the queues on the SP
+                paths.add(getShortestPathEdges(linkSourceNode, linkDestinationNode, 0).get(0));
+                break;
+            case ALL_TWO_SHORTEST_PATHS:
+                paths.addAll(getShortestPathEdges(linkSourceNode, linkDestinationNode, 1));
+            case ALL_SHORTEST_PATHS:
+                paths.addAll(getShortestPathEdges(linkSourceNode, linkDestinationNode, 0));
+        }
 
-        return increasedCostProxy;
+        Set<Edge> queues = new LinkedHashSet<>();
+        for(Edge[] path : paths)
+            for(int i = 1; i < path.length - 1; i++) // ignore first and last queues as these are host links
+                Collections.addAll(queues, linkTable.getQueueEdges(path[i]));
+        return queues.toArray(new Edge[0]);
     }
 }
@@ -3,10 +3,12 @@ package de.tum.ei.lkn.eces.tenantmanager;
 import de.tum.ei.lkn.eces.core.Component;
 import de.tum.ei.lkn.eces.core.annotations.ComponentBelongsTo;
 import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.tenantmanager.matching.Matching;
+import de.tum.ei.lkn.eces.tenantmanager.util.InsertionOrderedSet;
 
-import java.util.Collections;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Component representing a VM.
@@ -17,23 +19,29 @@ import java.util.List;
 public class VirtualMachine extends Component {
     private String name;
     private Host hostMachine;
-    private List<Flow> flows;
+    private InsertionOrderedSet<Flow> flows;
+    private Map<Matching, Flow> outgoingFlows; // matching -> flow, for the flows of which the VM is the source
     private Tenant tenant;
     private String managementConnection;
 
     VirtualMachine(Tenant tenant, String name) {
         this.tenant = tenant;
         this.name = name;
-        this.flows = new LinkedList<>();
+        this.flows = new InsertionOrderedSet<>();
+        this.outgoingFlows = new HashMap<>();
         this.managementConnection = null;
     }
 
     void addFlow(Flow flow) {
         this.flows.add(flow);
+        if(flow.getSource() == this)
+            this.outgoingFlows.put(flow.getMatching(), flow);
     }
 
     void removeFlow(Flow flow) {
         this.flows.remove(flow);
+        if(flow.getSource() == this)
+            this.outgoingFlows.remove(flow.getMatching(), flow);
     }
 
     public String getName() {
@@ -41,7 +49,16 @@ public class VirtualMachine extends Component {
     }
 
     public List<Flow> getFlows() {
-        return Collections.unmodifiableList(flows);
+        return flows.asUnmodifiableList();
+    }
+
+    /**
+     * Gets the flow leaving the VM with a given matching structure.
+     * @param matching the matching structure.
+     * @return the flow of which the VM is the source with that matching or null if there is none.
+     */
+    public Flow getFlow(Matching matching) {
+        return outgoingFlows.get(matching);
     }
 
     public Tenant getTenant() {
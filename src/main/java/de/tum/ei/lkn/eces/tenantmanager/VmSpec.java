@@ -0,0 +1,38 @@
+package de.tum.ei.lkn.eces.tenantmanager;
+
+import de.tum.ei.lkn.eces.network.Host;
+
+/**
+ * Specification of a VM to create, as used for batch VM creation.
+ *
+ * @author Amaury Van Bemten
+ */
+public class VmSpec {
+    private final String name;
+    private final Host host; // null if to be decided by the placement
+
+    public VmSpec(String name) {
+        this(name, null);
+    }
+
+    public VmSpec(String name, Host host) {
+        this.name = name;
+        this.host = host;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the host on which the VM must be placed or null if it is to be decided by the placement.
+     */
+    public Host getHost() {
+        return host;
+    }
+
+    @Override
+    public String toString() {
+        return "VmSpec(" + name + (host == null ? "" : " on " + host) + ")";
+    }
+}
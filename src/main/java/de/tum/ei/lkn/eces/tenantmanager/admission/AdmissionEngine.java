@@ -0,0 +1,155 @@
+package de.tum.ei.lkn.eces.tenantmanager.admission;
+
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.tenantmanager.*;
+import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Work queue in front of a TenantManagerSystem: operations are queued and executed by a pool of worker threads.
+ *
+ * Operations on different tenants/VMs run in parallel (the TenantManagerSystem locks tenants and VMs separately),
+ * only the reservation of network resources is serialized. The outcome of each operation is given by the returned
+ * future, which completes exceptionally with a TenantManagerException if the operation is rejected.
+ *
+ * The number of outstanding (queued or running) operations can be bounded. Submitting never blocks the caller: when
+ * the bound is reached, the returned future is already completed with a TenantManagerException.
+ *
+ * @author Amaury Van Bemten
+ */
+public class AdmissionEngine implements AutoCloseable {
+    private final Logger logger;
+    private final TenantManagerSystem tenantManagerSystem;
+    private final BlockingQueue<Runnable> workQueue;
+    private final ThreadPoolExecutor workers;
+    private final AtomicInteger outstanding;
+    private final int maxOutstanding;
+
+    /**
+     * @param tenantManagerSystem system executing the operations.
+     * @param nWorkers number of worker threads.
+     */
+    public AdmissionEngine(TenantManagerSystem tenantManagerSystem, int nWorkers) {
+        this(tenantManagerSystem, nWorkers, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param tenantManagerSystem system executing the operations.
+     * @param nWorkers number of worker threads.
+     * @param maxOutstanding maximum number of outstanding operations.
+     */
+    public AdmissionEngine(TenantManagerSystem tenantManagerSystem, int nWorkers, int maxOutstanding) {
+        if(nWorkers < 1)
+            throw new RuntimeException("the number of workers must be strictly positive, got " + nWorkers);
+        if(maxOutstanding < 1)
+            throw new RuntimeException("the maximum number of outstanding operations must be strictly positive, got " + maxOutstanding);
+        this.outstanding = new AtomicInteger();
+        this.maxOutstanding = maxOutstanding;
+        this.logger = Logger.getLogger(this.getClass());
+        this.tenantManagerSystem = tenantManagerSystem;
+        this.workQueue = new LinkedBlockingQueue<>();
+        this.workers = new ThreadPoolExecutor(nWorkers, nWorkers, 0, TimeUnit.MILLISECONDS, workQueue, new ThreadFactory() {
+            private int nThreads = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "admission-worker-" + nThreads++);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public CompletableFuture<Tenant> createTenant(String name) {
+        return submit(() -> tenantManagerSystem.createTenant(name));
+    }
+
+    public CompletableFuture<VirtualMachine> createVirtualMachine(Tenant tenant, String name) {
+        return submit(() -> tenantManagerSystem.createVirtualMachine(tenant, name));
+    }
+
+    public CompletableFuture<VirtualMachine> createVirtualMachine(Tenant tenant, String name, Host host) {
+        return submit(() -> tenantManagerSystem.createVirtualMachine(tenant, name, host));
+    }
+
+    public CompletableFuture<Flow> createFlow(FlowSpec spec) {
+        return submit(() -> tenantManagerSystem.createFlow(spec));
+    }
+
+    public CompletableFuture<Void> deleteFlow(Flow flow) {
+        return submit(() -> {
+            tenantManagerSystem.deleteFlow(flow);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteVM(VirtualMachine vm) {
+        return submit(() -> {
+            tenantManagerSystem.deleteVM(vm);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> deleteTenant(Tenant tenant) {
+        return submit(() -> {
+            tenantManagerSystem.deleteTenant(tenant);
+            return null;
+        });
+    }
+
+    /**
+     * @return the number of operations waiting for a worker.
+     */
+    public int getQueueLength() {
+        return workQueue.size();
+    }
+
+    /**
+     * @return the number of operations submitted and not completed yet.
+     */
+    public int getOutstandingCount() {
+        return outstanding.get();
+    }
+
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    /**
+     * Stops accepting operations and waits for the queued ones to complete.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        workers.shutdown();
+        while(!workers.awaitTermination(1, TimeUnit.SECONDS))
+            logger.info("Waiting for " + (workQueue.size() + workers.getActiveCount()) + " admission operations to complete");
+    }
+
+    <T> CompletableFuture<T> submit(AdmissionOperation<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if(outstanding.incrementAndGet() > maxOutstanding) {
+            outstanding.decrementAndGet();
+            future.completeExceptionally(new TenantManagerException("too many outstanding admission operations (" + maxOutstanding + ")"));
+            return future;
+        }
+
+        try {
+            workers.execute(() -> {
+                try {
+                    future.complete(operation.run());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    outstanding.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            outstanding.decrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
@@ -0,0 +1,103 @@
+package de.tum.ei.lkn.eces.tenantmanager.admission;
+
+import de.tum.ei.lkn.eces.tenantmanager.FlowSpec;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Structured log of the flow admission decisions, with one key=value line per (sampled) decision, e.g.:
+ *  event=accepted flow=f1 tenant=t1 src=vm1 dst=vm2 rate=1000 burst=100 latency=10.0 hops=4 rerouted=1
+ *  event=rejected flow=f2 tenant=t1 src=vm1 dst=vm3 rate=1000 burst=100 latency=10.0 reason="unable to embed the flow"
+ *
+ * Only one decision out of samplingInterval is logged (accepted and rejected flows are sampled independently).
+ * Lines are written at INFO level on the logger of this class, which can therefore be silenced or redirected
+ * independently of the logs of the systems. Nothing is built when that logger does not log INFO.
+ *
+ * @author Amaury Van Bemten
+ */
+public class AdmissionEventLog {
+    private static final Logger LOGGER = Logger.getLogger(AdmissionEventLog.class);
+
+    private volatile int samplingInterval;
+    private final AtomicLong acceptedEvents;
+    private final AtomicLong rejectedEvents;
+
+    public AdmissionEventLog() {
+        this.samplingInterval = 1;
+        this.acceptedEvents = new AtomicLong();
+        this.rejectedEvents = new AtomicLong();
+    }
+
+    public int getSamplingInterval() {
+        return samplingInterval;
+    }
+
+    /**
+     * @param samplingInterval one decision out of samplingInterval is logged (1 to log all the decisions).
+     */
+    public void setSamplingInterval(int samplingInterval) {
+        if(samplingInterval < 1)
+            throw new RuntimeException("the sampling interval must be at least 1, got " + samplingInterval);
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * Decides whether the next accepted flow is logged. Must be called once per accepted flow.
+     * @return true if accepted() should be called for this flow.
+     */
+    public boolean sampleAccepted() {
+        return sample(acceptedEvents);
+    }
+
+    /**
+     * Decides whether the next rejected flow is logged. Must be called once per rejected flow.
+     * @return true if rejected() should be called for this flow.
+     */
+    public boolean sampleRejected() {
+        return sample(rejectedEvents);
+    }
+
+    /**
+     * Logs an accepted flow (only call when sampleAccepted() returned true).
+     * @param spec Specification of the flow.
+     * @param hops number of edges of the path of the flow (0 if both VMs are on the same host).
+     * @param reroutedFlows number of flows that were rerouted to embed the flow.
+     */
+    public void accepted(FlowSpec spec, int hops, int reroutedFlows) {
+        LOGGER.info(describe("accepted", spec) + " hops=" + hops + " rerouted=" + reroutedFlows);
+    }
+
+    /**
+     * Logs a rejected flow (only call when sampleRejected() returned true).
+     * @param spec Specification of the flow (can be null or incomplete).
+     * @param reason reason of the rejection.
+     */
+    public void rejected(FlowSpec spec, String reason) {
+        LOGGER.info(describe("rejected", spec) + " reason=\"" + reason + "\"");
+    }
+
+    private boolean sample(AtomicLong events) {
+        if(!LOGGER.isInfoEnabled())
+            return false;
+        int interval = samplingInterval;
+        return interval == 1 || events.getAndIncrement() % interval == 0;
+    }
+
+    private static String describe(String event, FlowSpec spec) {
+        if(spec == null)
+            return "event=" + event;
+
+        // Only names are used: the toString() of the VMs describes their tenant and host
+        VirtualMachine source = spec.getSource();
+        return "event=" + event +
+                " flow=" + spec.getName() +
+                " tenant=" + (source == null || source.getTenant() == null ? null : source.getTenant().getName()) +
+                " src=" + (source == null ? null : source.getName()) +
+                " dst=" + (spec.getDestination() == null ? null : spec.getDestination().getName()) +
+                " rate=" + spec.getRate() +
+                " burst=" + spec.getBurst() +
+                " latency=" + spec.getLatency();
+    }
+}
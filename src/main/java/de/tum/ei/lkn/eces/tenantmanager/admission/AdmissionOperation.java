@@ -0,0 +1,12 @@
+package de.tum.ei.lkn.eces.tenantmanager.admission;
+
+import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+
+/**
+ * An operation on the tenant manager executed asynchronously.
+ *
+ * @author Amaury Van Bemten
+ */
+public interface AdmissionOperation<T> {
+    T run() throws TenantManagerException;
+}
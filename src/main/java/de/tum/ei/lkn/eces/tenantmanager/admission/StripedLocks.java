@@ -0,0 +1,64 @@
+package de.tum.ei.lkn.eces.tenantmanager.admission;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks shared by objects: an object is protected by the lock of its stripe, chosen from its identity
+ * hash code. Two objects can share a stripe, so locks of several objects must always be taken through getAll()/
+ * lockAll(), which take them in stripe order.
+ *
+ * @author Amaury Van Bemten
+ */
+public class StripedLocks {
+    private final ReentrantLock[] stripes;
+
+    public StripedLocks(int nStripes) {
+        if(nStripes < 1)
+            throw new RuntimeException("the number of stripes must be strictly positive, got " + nStripes);
+        this.stripes = new ReentrantLock[nStripes];
+        for(int i = 0; i < nStripes; i++)
+            stripes[i] = new ReentrantLock();
+    }
+
+    /**
+     * @param objects some objects.
+     * @return the locks of the objects, without duplicates and in the order in which they must be taken.
+     */
+    public List<ReentrantLock> getAll(Object... objects) {
+        TreeMap<Integer, ReentrantLock> locks = new TreeMap<>();
+        for(Object object : objects) {
+            int stripe = getStripe(object);
+            locks.put(stripe, stripes[stripe]);
+        }
+        return new ArrayList<>(locks.values());
+    }
+
+    /**
+     * @return all the locks, in the order in which they must be taken.
+     */
+    public List<ReentrantLock> getAll() {
+        List<ReentrantLock> locks = new ArrayList<>(stripes.length);
+        for(ReentrantLock stripe : stripes)
+            locks.add(stripe);
+        return locks;
+    }
+
+    public static void lockAll(List<ReentrantLock> locks) {
+        for(ReentrantLock lock : locks)
+            lock.lock();
+    }
+
+    public static void unlockAll(List<ReentrantLock> locks) {
+        for(int i = locks.size() - 1; i >= 0; i--)
+            locks.get(i).unlock();
+    }
+
+    private int getStripe(Object object) {
+        int hash = System.identityHashCode(object);
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash, stripes.length);
+    }
+}
@@ -0,0 +1,224 @@
+package de.tum.ei.lkn.eces.tenantmanager.kspsystem;
+
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * Store encoding kSPs as edge IDs in a single int array (the arena) instead of Path objects.
+ *
+ * Each edge gets a dense ID the first time it is encoded. The kSPs of one source/destination pair are appended to
+ * the arena as:
+ *  [number of levels L][L + 1 offsets of the levels in the arena]
+ *  followed, for each level, by [number of paths][length of path 1][edge IDs of path 1][length of path 2]...
+ * and are identified by the offset at which they start (their handle). Edge objects are only looked up when a path
+ * is read.
+ *
+ * The arena is append-only: kSPs that are replaced by an incremental update stay in the arena until the store is
+ * replaced by a full update.
+ *
+ * The beginning of the arena can be a read-only buffer (e.g., a memory-mapped snapshot, see KSPSnapshot), the
+ * kSPs encoded afterwards are then appended in memory.
+ *
+ * @author Amaury Van Bemten
+ */
+public class CompactPathStore {
+    private final Map<Edge, Integer> edgeIds;
+    private Edge[] edges;
+    // Read-only beginning of the arena (null if none) and its size
+    private final IntBuffer base;
+    private final int baseSize;
+    // Rest of the arena (index 0 is the int at index baseSize of the arena)
+    private int[] arena;
+    private int arenaSize;
+
+    CompactPathStore() {
+        this(Collections.emptyList(), null);
+    }
+
+    /**
+     * @param knownEdges edges whose IDs are their index in this list.
+     * @param base read-only beginning of the arena, encoded with the IDs of knownEdges (can be null).
+     */
+    CompactPathStore(List<Edge> knownEdges, IntBuffer base) {
+        this.edgeIds = new IdentityHashMap<>();
+        this.edges = new Edge[Math.max(64, knownEdges.size())];
+        for(Edge edge : knownEdges)
+            getEdgeId(edge);
+        this.base = base;
+        this.baseSize = base == null ? 0 : base.limit();
+        this.arena = new int[1024];
+        this.arenaSize = baseSize;
+    }
+
+    /**
+     * Appends the kSPs of a pair to the arena.
+     * @param levels the kSPs of each level.
+     * @return the handle of the kSPs.
+     */
+    synchronized int encode(List<List<Path>> levels) {
+        List<List<Edge[]>> levelsOfEdges = new ArrayList<>(levels.size());
+        for(List<Path> level : levels) {
+            List<Edge[]> paths = new ArrayList<>(level.size());
+            for(Path path : level)
+                paths.add(path.getPath());
+            levelsOfEdges.add(paths);
+        }
+        return encodeEdges(levelsOfEdges);
+    }
+
+    /**
+     * Same as encode() with paths given as arrays of edges.
+     */
+    synchronized int encodeEdges(List<List<Edge[]>> levels) {
+        int handle = arenaSize;
+        append(levels.size());
+        int offsetTable = arenaSize;
+        for(int i = 0; i <= levels.size(); i++)
+            append(0);
+        for(int level = 0; level < levels.size(); level++) {
+            set(offsetTable + level, arenaSize);
+            append(levels.get(level).size());
+            for(Edge[] path : levels.get(level)) {
+                append(path.length);
+                for(Edge edge : path)
+                    append(getEdgeId(edge));
+            }
+        }
+        set(offsetTable + levels.size(), arenaSize);
+        return handle;
+    }
+
+    synchronized int getLevelCount(int handle) {
+        return read(handle);
+    }
+
+    /**
+     * @param handle handle of the kSPs of a pair.
+     * @param level level of the kSPs.
+     * @return the paths of the level, each path being decoded to edges when it is accessed.
+     */
+    synchronized List<Edge[]> decode(int handle, int level) {
+        int offset = read(handle + 1 + level);
+        int[] pathOffsets = new int[read(offset)];
+        offset++;
+        for(int i = 0; i < pathOffsets.length; i++) {
+            pathOffsets[i] = offset;
+            offset += read(offset) + 1;
+        }
+
+        return new AbstractList<Edge[]>() {
+            @Override
+            public Edge[] get(int index) {
+                return decodePath(pathOffsets[index]);
+            }
+
+            @Override
+            public int size() {
+                return pathOffsets.length;
+            }
+        };
+    }
+
+    private synchronized Edge[] decodePath(int offset) {
+        Edge[] path = new Edge[read(offset)];
+        for(int i = 0; i < path.length; i++)
+            path[i] = edges[read(offset + 1 + i)];
+        return path;
+    }
+
+    /**
+     * @return the number of hops of the paths of the last level or -1 if the last level is empty.
+     */
+    synchronized int getLastLevelLength(int handle) {
+        int offset = read(handle + read(handle));
+        if(read(offset) == 0)
+            return -1;
+        return read(offset + 1);
+    }
+
+    /**
+     * @return true if one of the kSPs of a pair uses one of the given edges.
+     */
+    synchronized boolean usesAnyOf(int handle, Set<Edge> edgesToFind) {
+        BitSet ids = new BitSet();
+        for(Edge edge : edgesToFind) {
+            Integer id = edgeIds.get(edge);
+            if(id != null)
+                ids.set(id);
+        }
+        if(ids.isEmpty())
+            return false;
+
+        int levels = read(handle);
+        int offset = read(handle + 1);
+        int end = read(handle + 1 + levels);
+        while(offset < end) {
+            int paths = read(offset++);
+            for(int i = 0; i < paths; i++) {
+                int length = read(offset++);
+                for(int j = 0; j < length; j++)
+                    if(ids.get(read(offset + j)))
+                        return true;
+                offset += length;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of ints used in the arena.
+     */
+    public synchronized int getArenaSize() {
+        return arenaSize;
+    }
+
+    /**
+     * @return the number of distinct edges in the store.
+     */
+    public synchronized int getEdgeCount() {
+        return edgeIds.size();
+    }
+
+    /**
+     * Writes the whole arena.
+     * @param output stream to write to.
+     * @throws IOException if writing fails.
+     */
+    synchronized void writeArena(DataOutputStream output) throws IOException {
+        for(int i = 0; i < arenaSize; i++)
+            output.writeInt(read(i));
+    }
+
+    private int read(int index) {
+        if(index < baseSize)
+            return base.get(index);
+        return arena[index - baseSize];
+    }
+
+    private void set(int index, int value) {
+        arena[index - baseSize] = value;
+    }
+
+    private int getEdgeId(Edge edge) {
+        Integer id = edgeIds.get(edge);
+        if(id == null) {
+            id = edgeIds.size();
+            edgeIds.put(edge, id);
+            if(id == edges.length)
+                edges = Arrays.copyOf(edges, edges.length * 2);
+            edges[id] = edge;
+        }
+        return id;
+    }
+
+    private void append(int value) {
+        if(arenaSize - baseSize == arena.length)
+            arena = Arrays.copyOf(arena, arena.length * 2);
+        arena[arenaSize++ - baseSize] = value;
+    }
+}
@@ -0,0 +1,144 @@
+package de.tum.ei.lkn.eces.tenantmanager.kspsystem;
+
+import de.tum.ei.lkn.eces.graph.Node;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * Size-bounded cache of the kSPs of source/destination pairs, used by the KSPSystem in lazy mode.
+ *
+ * The least recently used pair is evicted when the cache is full. Hits, misses and evictions are counted so that the
+ * size of the cache can be tuned.
+ *
+ * @author Amaury Van Bemten
+ */
+public class KSPCache {
+    // Cached value of unreachable pairs
+    static final List<List<Path>> UNREACHABLE = Collections.emptyList();
+
+    private final int capacity;
+    private final LinkedHashMap<NodePair, List<List<Path>>> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    // Incremented by each invalidation, so that kSPs computed before it are not cached after it
+    private long generation;
+
+    KSPCache(int capacity) {
+        if(capacity < 1)
+            throw new RuntimeException("the capacity of a kSP cache must be strictly positive, got " + capacity);
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<NodePair, List<List<Path>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<NodePair, List<List<Path>>> eldest) {
+                if(size() > KSPCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gets the kSPs of a pair, computing them if they are not cached. The computation is done outside of the lock of
+     * the cache, so concurrent misses on different pairs do not wait for each other. If the cache is invalidated
+     * during the computation, the computed kSPs are returned but not cached (they may be outdated).
+     * @param source source node.
+     * @param destination destination node.
+     * @param loader computes the kSPs of a pair (UNREACHABLE if there is no path).
+     * @return the kSPs of the pair (one list per level) or UNREACHABLE.
+     */
+    List<List<Path>> get(Node source, Node destination, BiFunction<Node, Node, List<List<Path>>> loader) {
+        NodePair pair = new NodePair(source, destination);
+        long loadGeneration;
+        synchronized (this) {
+            List<List<Path>> cached = entries.get(pair);
+            if(cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+            loadGeneration = generation;
+        }
+
+        List<List<Path>> computed = loader.apply(source, destination);
+        synchronized (this) {
+            if(loadGeneration == generation)
+                entries.put(pair, computed);
+        }
+        return computed;
+    }
+
+    /**
+     * Removes the cached pairs whose kSPs match a predicate.
+     * @param predicate the predicate.
+     */
+    synchronized void invalidateIf(Predicate<List<List<Path>>> predicate) {
+        generation++;
+        Iterator<List<List<Path>>> iterator = entries.values().iterator();
+        while(iterator.hasNext())
+            if(predicate.test(iterator.next()))
+                iterator.remove();
+    }
+
+    synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "KSPCache(" + entries.size() + "/" + capacity + ", " + hits + " hits, " + misses + " misses, " + evictions + " evictions)";
+    }
+
+    private static final class NodePair {
+        private final Node source;
+        private final Node destination;
+
+        NodePair(Node source, Node destination) {
+            this.source = source;
+            this.destination = destination;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof NodePair))
+                return false;
+            else
+                return ((NodePair) other).source == source && ((NodePair) other).destination == destination;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(source) + System.identityHashCode(destination);
+        }
+    }
+}
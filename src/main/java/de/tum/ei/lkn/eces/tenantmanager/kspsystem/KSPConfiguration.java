@@ -0,0 +1,93 @@
+package de.tum.ei.lkn.eces.tenantmanager.kspsystem;
+
+import de.tum.ei.lkn.eces.core.Component;
+import de.tum.ei.lkn.eces.core.annotations.ComponentBelongsTo;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Component defining how the KSPSystem computes the kSPs of a network.
+ * The component should be attached to the Entity of the Network object, it is then used by the TenantManagerSystem
+ * when it needs kSPs.
+ *
+ * By default, the kSPs of all the pairs are computed upfront, sequentially in the calling thread.
+ *
+ * @author Amaury Van Bemten
+ */
+@ComponentBelongsTo(system = KSPSystem.class)
+public class KSPConfiguration extends Component {
+    private ExecutorService executor;
+    private KSPProgressListener progressListener;
+    private int cacheSize;
+    private boolean compactStorage;
+    private File snapshotDirectory;
+
+    public KSPConfiguration() {
+        this.executor = null;
+        this.progressListener = null;
+        this.cacheSize = 0;
+        this.compactStorage = false;
+        this.snapshotDirectory = null;
+    }
+
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor (e.g., a ForkJoinPool) over which the source nodes are spread when computing kSPs.
+     * The executor is not shut down by the KSPSystem.
+     * @param executor the executor or null to compute the kSPs sequentially in the calling thread.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public KSPProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    public void setProgressListener(KSPProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Enables the lazy mode: the kSPs of a pair are only computed when first needed and at most cacheSize pairs are
+     * kept in memory (least recently used ones are evicted).
+     * @param cacheSize maximum number of pairs to keep or 0 to compute all the kSPs upfront.
+     */
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public boolean isCompactStorage() {
+        return compactStorage;
+    }
+
+    /**
+     * Stores the kSPs as edge IDs in a flat int array instead of Path objects. Paths are then decoded when they are
+     * accessed, KShortestPaths.getShortestPathEdges() being the cheapest way to read them. Ignored in lazy mode.
+     * @param compactStorage true to store the kSPs compactly.
+     */
+    public void setCompactStorage(boolean compactStorage) {
+        this.compactStorage = compactStorage;
+    }
+
+    public File getSnapshotDirectory() {
+        return snapshotDirectory;
+    }
+
+    /**
+     * Enables snapshots: the kSPs are stored compactly and written to this directory after each computation, and
+     * are read from it instead of being computed when the same topology is loaded again. Ignored in lazy mode.
+     * @param snapshotDirectory existing directory or null to disable snapshots.
+     */
+    public void setSnapshotDirectory(File snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+}
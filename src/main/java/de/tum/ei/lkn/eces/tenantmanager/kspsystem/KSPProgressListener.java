@@ -0,0 +1,15 @@
+package de.tum.ei.lkn.eces.tenantmanager.kspsystem;
+
+/**
+ * Listener notified by the KSPSystem each time the kSPs from a source node have been computed.
+ * In parallel mode, the listener is called from the worker threads.
+ *
+ * @author Amaury Van Bemten
+ */
+public interface KSPProgressListener {
+    /**
+     * @param doneSources number of source nodes for which the kSPs have been computed so far.
+     * @param totalSources total number of source nodes.
+     */
+    void progress(int doneSources, int totalSources);
+}
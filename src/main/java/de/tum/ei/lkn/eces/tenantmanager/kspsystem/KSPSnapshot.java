@@ -0,0 +1,254 @@
+package de.tum.ei.lkn.eces.tenantmanager.kspsystem;
+
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.Node;
+
+import java.io.*;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Binary snapshot of the kSPs of a graph, used to avoid recomputing them when the same topology is loaded again.
+ *
+ * Nodes and edges are identified by their IDs, and by their position in the order of these IDs (not in the iteration
+ * order of the graph). A snapshot is keyed by a fingerprint of the topology (number of levels, ID of each node, ID,
+ * source and destination of each edge). The topology itself is stored as well and compared on reading, so that a
+ * fingerprint collision is detected.
+ *
+ * Format (big endian):
+ *  header:   magic, version, fingerprint (long), max level, number of nodes, number of edges, number of pairs,
+ *            size of the arena
+ *  topology: ID of each node (long), then ID, source node ID and destination node ID of each edge (longs)
+ *  pairs:    source node index, destination node index, handle of the kSPs in the arena (-1 if unreachable)
+ *  arena:    the arena of a CompactPathStore whose edge IDs are the edge indices
+ *
+ * The arena is memory-mapped when reading, so that loading a snapshot does not copy the paths to the heap. It is
+ * checked once when read: a snapshot with an index or a handle out of bounds is rejected.
+ *
+ * @author Amaury Van Bemten
+ */
+final class KSPSnapshot {
+    private static final int MAGIC = 0x4B535053; // "KSPS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 * 5;
+
+    private KSPSnapshot() {
+    }
+
+    /**
+     * @param nodes nodes of the graph.
+     * @param edges edges of the graph.
+     * @param maxLevel number of levels of the kSPs.
+     * @return the fingerprint of the topology (FNV-1a hash), which does not depend on the order of nodes and edges.
+     */
+    static long fingerprint(List<Node> nodes, List<Edge> edges, int maxLevel) {
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, VERSION);
+        hash = mix(hash, maxLevel);
+        hash = mix(hash, nodes.size());
+        hash = mix(hash, edges.size());
+        for(Node node : sortedNodes(nodes))
+            hash = mix(hash, node.getId());
+        for(Edge edge : sortedEdges(edges)) {
+            hash = mix(hash, edge.getId());
+            hash = mix(hash, edge.getSource().getId());
+            hash = mix(hash, edge.getDestination().getId());
+        }
+        return hash;
+    }
+
+    static File getFile(File directory, long fingerprint) {
+        return new File(directory, String.format("ksp-%016x.snapshot", fingerprint));
+    }
+
+    /**
+     * Writes a snapshot. The file is written next to its final location and then moved, so that a crash never leaves
+     * a truncated snapshot behind.
+     * @param file file to write.
+     * @param fingerprint fingerprint of the topology.
+     * @param maxLevel number of levels of the kSPs.
+     * @param nodes nodes of the graph.
+     * @param edges edges of the graph.
+     * @param components compact kSPs components of each source node.
+     * @throws IOException if writing fails.
+     */
+    static void write(File file, long fingerprint, int maxLevel, List<Node> nodes, List<Edge> edges, Map<Node, KShortestPaths> components) throws IOException {
+        nodes = sortedNodes(nodes);
+        edges = sortedEdges(edges);
+
+        // Re-encode the live kSPs with the edge indices as IDs (this also drops the kSPs replaced by incremental updates)
+        CompactPathStore store = new CompactPathStore(edges, null);
+        List<int[]> pairs = new ArrayList<>();
+        for(int source = 0; source < nodes.size(); source++) {
+            KShortestPaths kSPComponent = components.get(nodes.get(source));
+            if(kSPComponent == null)
+                continue;
+            for(int destination = 0; destination < nodes.size(); destination++) {
+                Node destinationNode = nodes.get(destination);
+                Integer handle = kSPComponent.getHandle(destinationNode);
+                if(handle != null) {
+                    List<List<Edge[]>> levels = new ArrayList<>();
+                    for(int level = 0; level < kSPComponent.getStore().getLevelCount(handle); level++)
+                        levels.add(kSPComponent.getStore().decode(handle, level));
+                    pairs.add(new int[]{source, destination, store.encodeEdges(levels)});
+                }
+                else if(kSPComponent.isUnreachable(destinationNode)) {
+                    pairs.add(new int[]{source, destination, -1});
+                }
+            }
+        }
+
+        File temporaryFile = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(fingerprint);
+            output.writeInt(maxLevel);
+            output.writeInt(nodes.size());
+            output.writeInt(edges.size());
+            output.writeInt(pairs.size());
+            output.writeInt(store.getArenaSize());
+            for(Node node : nodes)
+                output.writeLong(node.getId());
+            for(Edge edge : edges) {
+                output.writeLong(edge.getId());
+                output.writeLong(edge.getSource().getId());
+                output.writeLong(edge.getDestination().getId());
+            }
+            for(int[] pair : pairs)
+                for(int value : pair)
+                    output.writeInt(value);
+            store.writeArena(output);
+        }
+        Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot.
+     * @param file file to read.
+     * @param fingerprint expected fingerprint of the topology.
+     * @param maxLevel expected number of levels of the kSPs.
+     * @param nodes nodes of the graph.
+     * @param edges edges of the graph.
+     * @return the (not attached) compact kSPs components of each source node, sharing a store backed by the file.
+     * @throws IOException if the file cannot be read or is not a valid snapshot for this topology.
+     */
+    static Map<Node, KShortestPaths> read(File file, long fingerprint, int maxLevel, List<Node> nodes, List<Edge> edges) throws IOException {
+        nodes = sortedNodes(nodes);
+        edges = sortedEdges(edges);
+
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if(buffer.capacity() < HEADER_SIZE)
+            throw new IOException("truncated kSP snapshot " + file);
+        if(buffer.getInt() != MAGIC)
+            throw new IOException(file + " is not a kSP snapshot");
+        int version = buffer.getInt();
+        if(version != VERSION)
+            throw new IOException("unsupported kSP snapshot version " + version);
+        if(buffer.getLong() != fingerprint || buffer.getInt() != maxLevel || buffer.getInt() != nodes.size() || buffer.getInt() != edges.size())
+            throw new IOException("kSP snapshot " + file + " is for another topology");
+        int nPairs = buffer.getInt();
+        int arenaSize = buffer.getInt();
+        long topologySize = 8L * nodes.size() + 24L * edges.size();
+        if(nPairs < 0 || arenaSize < 0 || (long) buffer.capacity() != HEADER_SIZE + topologySize + 12L * nPairs + 4L * arenaSize)
+            throw new IOException("truncated kSP snapshot " + file);
+
+        // Same topology (and not only the same fingerprint)
+        for(Node node : nodes)
+            if(buffer.getLong() != node.getId())
+                throw new IOException("kSP snapshot " + file + " is for another topology");
+        for(Edge edge : edges)
+            if(buffer.getLong() != edge.getId() || buffer.getLong() != edge.getSource().getId() || buffer.getLong() != edge.getDestination().getId())
+                throw new IOException("kSP snapshot " + file + " is for another topology");
+
+        IntBuffer pairs = buffer.asIntBuffer();
+        buffer.position(buffer.position() + 12 * nPairs);
+        IntBuffer arena = buffer.slice().asIntBuffer();
+        CompactPathStore store = new CompactPathStore(edges, arena);
+
+        Map<Node, KShortestPaths> components = new HashMap<>();
+        for(Node node : nodes)
+            components.put(node, new KShortestPaths(store));
+        for(int i = 0; i < nPairs; i++) {
+            int source = pairs.get(3 * i);
+            int destination = pairs.get(3 * i + 1);
+            int handle = pairs.get(3 * i + 2);
+            if(source < 0 || source >= nodes.size() || destination < 0 || destination >= nodes.size())
+                throw new IOException("kSP snapshot " + file + " refers to unknown node index " + (source < 0 || source >= nodes.size() ? source : destination));
+            if(handle < 0) {
+                components.get(nodes.get(source)).put(nodes.get(destination), null);
+            }
+            else {
+                checkKSPs(arena, handle, edges.size(), file);
+                components.get(nodes.get(source)).putHandle(nodes.get(destination), handle);
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Checks that the kSPs of a pair are within the arena and only refer to known edges (see CompactPathStore for
+     * their layout).
+     * @throws IOException if they are not.
+     */
+    private static void checkKSPs(IntBuffer arena, int handle, int nEdges, File file) throws IOException {
+        int size = arena.limit();
+        if(handle >= size)
+            throw new IOException("kSP snapshot " + file + " has a handle out of the arena: " + handle);
+        int levels = arena.get(handle);
+        if(levels < 0 || levels > size - handle - 2)
+            throw new IOException("kSP snapshot " + file + " has an invalid number of levels at " + handle);
+        int offset = handle + 2 + levels;
+        for(int level = 0; level < levels; level++) {
+            if(arena.get(handle + 1 + level) != offset || offset >= size)
+                throw new IOException("kSP snapshot " + file + " has an invalid level offset at " + handle);
+            int paths = arena.get(offset++);
+            if(paths < 0)
+                throw new IOException("kSP snapshot " + file + " has an invalid number of paths at " + handle);
+            for(int path = 0; path < paths; path++) {
+                if(offset >= size)
+                    throw new IOException("kSP snapshot " + file + " has a path out of the arena at " + handle);
+                int length = arena.get(offset++);
+                if(length < 0 || length > size - offset)
+                    throw new IOException("kSP snapshot " + file + " has a path out of the arena at " + handle);
+                for(int i = 0; i < length; i++) {
+                    int edgeId = arena.get(offset + i);
+                    if(edgeId < 0 || edgeId >= nEdges)
+                        throw new IOException("kSP snapshot " + file + " refers to unknown edge index " + edgeId);
+                }
+                offset += length;
+            }
+        }
+        if(arena.get(handle + 1 + levels) != offset)
+            throw new IOException("kSP snapshot " + file + " has an invalid level offset at " + handle);
+    }
+
+    private static List<Node> sortedNodes(List<Node> nodes) {
+        List<Node> sorted = new ArrayList<>(nodes);
+        sorted.sort(Comparator.comparingLong(Node::getId));
+        return sorted;
+    }
+
+    private static List<Edge> sortedEdges(List<Edge> edges) {
+        List<Edge> sorted = new ArrayList<>(edges);
+        sorted.sort(Comparator.comparingLong(Edge::getId));
+        return sorted;
+    }
+
+    private static long mix(long hash, long value) {
+        for(int i = 0; i < 8; i++) {
+            hash ^= (value >>> (8 * i)) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -2,6 +2,7 @@ package de.tum.ei.lkn.eces.tenantmanager.kspsystem;
 
 import de.tum.ei.lkn.eces.core.Controller;
 import de.tum.ei.lkn.eces.core.RootSystem;
+import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.graph.Graph;
 import de.tum.ei.lkn.eces.graph.Node;
 import de.tum.ei.lkn.eces.routing.algorithms.sp.ksp.KSPAlgorithm;
@@ -11,89 +12,453 @@ import de.tum.ei.lkn.eces.routing.requests.UnicastRequest;
 import de.tum.ei.lkn.eces.routing.responses.Path;
 import de.tum.ei.lkn.eces.tenantmanager.kspsystem.mappers.KShortestPathsMapper;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * System automatically computing the kSP between source/destination pairs in a graph.
  *
+ * The kSPs from different source nodes are independent: if an executor is configured, the source nodes are spread
+ * over it. Each worker reuses its own kSP algorithm instance. The results are the same as in sequential mode.
+ *
+ * After links have been added to or removed from the graph, only the pairs whose kSPs can have changed are
+ * recomputed (see update(Graph, Collection, Collection)).
+ *
+ * If a cache size is configured, the system runs in lazy mode: nothing is computed upfront and the kSPs of a pair are
+ * computed the first time they are requested from the KShortestPaths component of the source node. They are then
+ * kept in a size-bounded LRU cache (see getCache()).
+ *
+ * If compact storage is configured (and the system is not in lazy mode), the kSPs are stored as edge IDs in a
+ * CompactPathStore (see getCompactPathStore()).
+ *
+ * If a snapshot directory is configured, the kSPs are stored compactly and written to a snapshot of the topology
+ * after each computation. A full computation is skipped if a snapshot of the same topology exists (see KSPSnapshot).
+ *
  * @author Amaury Van Bemten
  */
 public class KSPSystem extends RootSystem {
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
     private KShortestPathsMapper kShortestPathsMapper;
     private int maxLevel;
+    private KSPConfiguration configuration;
+    private KSPCache cache; // null if not in lazy mode
+    private CompactPathStore store; // null if paths are not stored compactly
+    // kSP algorithm instances not currently used by a worker
+    private Queue<KSPAlgorithm> idleAlgorithms;
 
     public KSPSystem(Controller controller, int maxLevel) {
+        this(controller, maxLevel, new KSPConfiguration());
+    }
+
+    public KSPSystem(Controller controller, int maxLevel, KSPConfiguration configuration) {
         super(controller);
         kShortestPathsMapper = new KShortestPathsMapper(controller);
         this.maxLevel = maxLevel;
+        this.configuration = configuration;
+        this.cache = configuration.getCacheSize() > 0 ? new KSPCache(configuration.getCacheSize()) : null;
+        this.idleAlgorithms = new ConcurrentLinkedQueue<>();
+        this.store = null;
+    }
+
+    /**
+     * @return the cache of kSPs or null if the system is not in lazy mode.
+     */
+    public KSPCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the store of the kSPs or null if they are not stored compactly.
+     */
+    public CompactPathStore getCompactPathStore() {
+        return store;
     }
 
+    /**
+     * (Re)computes the kSPs between all the pairs of nodes of a graph.
+     * @param graph the graph.
+     */
     public void update(Graph graph) {
-        this.logger.info("Computing kSPs on " + graph);
-        for(Node sourceNode : graph.getNodes()) {
-            KShortestPaths kSPComponent;
+        List<Node> nodes = new ArrayList<>(graph.getNodes());
+        if(cache != null) {
+            this.logger.info("kSPs on " + graph + " will be computed on demand");
+            cache.clear();
+            for(Node sourceNode : nodes) {
+                if (kShortestPathsMapper.isIn(sourceNode.getEntity()))
+                    kShortestPathsMapper.detachComponent(sourceNode.getEntity());
+                kShortestPathsMapper.attachComponent(sourceNode.getEntity(), new KShortestPaths(sourceNode, cache, this::computeLevelsOnDemand));
+            }
+            return;
+        }
+
+        List<Edge> edges = new ArrayList<>(graph.getEdges());
+        Map<Node, KShortestPaths> kSPComponents = readSnapshot(nodes, edges);
+        if(kSPComponents == null) {
+            this.logger.info("Computing kSPs on " + graph);
+            // The old store still holds the replaced kSPs, start from a fresh one
+            if(usesCompactStorage())
+                store = new CompactPathStore();
+            Map<Node, Collection<Node>> pairs = new LinkedHashMap<>();
+            for(Node sourceNode : nodes)
+                pairs.put(sourceNode, nodes);
 
-            // Check if component is there
+            kSPComponents = compute(pairs);
+            writeSnapshot(nodes, edges, kSPComponents);
+        }
+
+        for(Node sourceNode : nodes) {
+            // If kSPs are there already, replace them!
             if (kShortestPathsMapper.isIn(sourceNode.getEntity())) {
-                kSPComponent = kShortestPathsMapper.get(sourceNode.getEntity());
-                // If kSPs are there already, remove them!
-                this.logger.debug("Removing old kSPs for " + sourceNode + " -> " + sourceNode);
+                if(this.logger.isDebugEnabled())
+                    this.logger.debug("Removing old kSPs for " + sourceNode);
                 kShortestPathsMapper.detachComponent(sourceNode.getEntity());
-            } else {
-                // Component is not even there, create it!
-                kSPComponent = new KShortestPaths();
-                this.logger.debug("Creating new empty kSPs for " + sourceNode + " -> " + sourceNode);
-                kShortestPathsMapper.attachComponent(sourceNode.getEntity(), kSPComponent);
             }
+            kShortestPathsMapper.attachComponent(sourceNode.getEntity(), kSPComponents.get(sourceNode));
+        }
+    }
+
+    /**
+     * Updates the kSPs of a graph after some of its links have been added and/or removed. The kSPs must have been
+     * computed before with update(Graph) and the nodes of the graph must not have changed.
+     *
+     * Only the pairs whose kSPs can have changed are recomputed:
+     * - pairs with a kSP that uses a removed link,
+     * - pairs that are unreachable, do not have all their levels or whose last level is not longer than the
+     *   shortest path through an added link (computed with the distances in the new graph).
+     *
+     * @param graph the graph, already containing the added links and no longer containing the removed ones.
+     * @param addedEdges links added to the graph (can be null).
+     * @param removedEdges links removed from the graph (can be null).
+     */
+    public void update(Graph graph, Collection<Edge> addedEdges, Collection<Edge> removedEdges) {
+        Set<Edge> removed = removedEdges == null ? Collections.emptySet() : new HashSet<>(removedEdges);
+        Collection<Edge> added = addedEdges == null ? Collections.emptyList() : addedEdges;
+        this.logger.info("Updating kSPs on " + graph + " after " + added.size() + " link additions and " + removed.size() + " link removals");
+
+        if(cache != null) {
+            // The distances of the pairs that are not cached are not known, assume that any addition can matter
+            if(!added.isEmpty())
+                cache.clear();
+            else
+                cache.invalidateIf(levels -> KShortestPaths.usesAnyOf(levels, removed));
+            return;
+        }
 
-            for (Node destinationNode : graph.getNodes()) {
-                if(sourceNode == destinationNode)
-                    continue;
-
-                // The component is there but does not have info for the given destination yet
-                this.logger.info("Computing kSPs for " + sourceNode + " -> " + destinationNode + "!");
-
-                // Create array of size "maxLevel" that contains empty arrays
-                kSPComponent.shortestPaths.put(destinationNode, new ArrayList<>());
-                for (int level = 0; level < maxLevel; level++)
-                    kSPComponent.shortestPaths.get(destinationNode).add(new ArrayList<>());
-
-                // Computing the kSPs
-                KSPAlgorithm yen = new YenAlgorithm(controller);
-                yen.setProxy(new ShortestPathProxy());
-                UnicastRequest kspRequest = new UnicastRequest(sourceNode, destinationNode);
-                Iterator<Path> kSPsIterator = yen.iterator(kspRequest);
-
-
-                // Get first shortest path
-                Path firstPath;
-                if (kSPsIterator.hasNext()) {
-                    firstPath = kSPsIterator.next();
-                    kSPComponent.shortestPaths.get(destinationNode).get(0).add(firstPath);
-                } else {
-                    // There's just nothing
-                    return;
+        List<Node> nodes = new ArrayList<>(graph.getNodes());
+        Map<Node, KShortestPaths> current = new HashMap<>();
+        for(Node node : nodes) {
+            if(!kShortestPathsMapper.isIn(node.getEntity()))
+                throw new RuntimeException("no kSPs for " + node + ", the kSPs must be fully computed first");
+            current.put(node, kShortestPathsMapper.get(node.getEntity()));
+        }
+
+        Map<Node, Collection<Node>> affectedPairs = new LinkedHashMap<>();
+
+        // Pairs using a removed link
+        if(!removed.isEmpty()) {
+            for(Node sourceNode : nodes) {
+                KShortestPaths kSPComponent = current.get(sourceNode);
+                for(Node destinationNode : kSPComponent.getStoredDestinations()) {
+                    if(kSPComponent.usesAnyOf(destinationNode, removed))
+                        affectedPairs.computeIfAbsent(sourceNode, node -> new HashSet<>()).add(destinationNode);
                 }
+            }
+        }
+
+        // Pairs that could use an added link
+        if(!added.isEmpty()) {
+            Map<Node, List<Node>> successors = new HashMap<>();
+            Map<Node, List<Node>> predecessors = new HashMap<>();
+            for(Edge edge : graph.getEdges()) {
+                successors.computeIfAbsent(edge.getSource(), node -> new ArrayList<>()).add(edge.getDestination());
+                predecessors.computeIfAbsent(edge.getDestination(), node -> new ArrayList<>()).add(edge.getSource());
+            }
 
-                int lengthChanges = 0;
-                int lastLength = firstPath.getPath().length;
-                while (kSPsIterator.hasNext()) {
-                    Path nextPath = kSPsIterator.next();
-                    // Check if still same length
-                    if (lastLength == nextPath.getPath().length) {
-                        kSPComponent.shortestPaths.get(destinationNode).get(lengthChanges).add(nextPath);
-                    } else {
-                        lengthChanges++;
-                        if (lengthChanges == maxLevel)
-                            break;
-                        else {
-                            lastLength = nextPath.getPath().length;
-                            kSPComponent.shortestPaths.get(destinationNode).get(lengthChanges).add(nextPath);
-                        }
+            for(Edge edge : added) {
+                Map<Node, Integer> distancesToLinkSource = hopDistances(edge.getSource(), predecessors);
+                Map<Node, Integer> distancesFromLinkDestination = hopDistances(edge.getDestination(), successors);
+                for(Map.Entry<Node, Integer> toLinkSource : distancesToLinkSource.entrySet()) {
+                    Node sourceNode = toLinkSource.getKey();
+                    KShortestPaths kSPComponent = current.get(sourceNode);
+                    if(kSPComponent == null)
+                        continue;
+                    for(Map.Entry<Node, Integer> fromLinkDestination : distancesFromLinkDestination.entrySet()) {
+                        Node destinationNode = fromLinkDestination.getKey();
+                        if(sourceNode == destinationNode)
+                            continue;
+                        int lengthThroughLink = toLinkSource.getValue() + 1 + fromLinkDestination.getValue();
+                        if(lengthThroughLink <= longestStoredLength(kSPComponent, destinationNode))
+                            affectedPairs.computeIfAbsent(sourceNode, node -> new HashSet<>()).add(destinationNode);
                     }
                 }
             }
         }
+
+        int nPairs = 0;
+        for(Collection<Node> destinations : affectedPairs.values())
+            nPairs += destinations.size();
+        this.logger.info("Recomputing kSPs of " + nPairs + " pairs");
+
+        Map<Node, KShortestPaths> recomputed = compute(affectedPairs);
+        for(Map.Entry<Node, KShortestPaths> entry : recomputed.entrySet()) {
+            KShortestPaths kSPComponent = current.get(entry.getKey());
+            kShortestPathsMapper.updateComponent(kSPComponent, () -> kSPComponent.replaceDestinations(entry.getValue()));
+        }
+
+        // Snapshot of the new topology
+        writeSnapshot(nodes, new ArrayList<>(graph.getEdges()), current);
+    }
+
+    private boolean usesCompactStorage() {
+        return configuration.isCompactStorage() || configuration.getSnapshotDirectory() != null;
+    }
+
+    /**
+     * Reads the snapshot of a topology if snapshots are enabled and one exists.
+     * @return the (not attached) kSPs components of each node or null if there is no usable snapshot.
+     */
+    private Map<Node, KShortestPaths> readSnapshot(List<Node> nodes, List<Edge> edges) {
+        if(configuration.getSnapshotDirectory() == null)
+            return null;
+
+        long fingerprint = KSPSnapshot.fingerprint(nodes, edges, maxLevel);
+        File file = KSPSnapshot.getFile(configuration.getSnapshotDirectory(), fingerprint);
+        if(!file.exists())
+            return null;
+
+        try {
+            Map<Node, KShortestPaths> kSPComponents = KSPSnapshot.read(file, fingerprint, maxLevel, nodes, edges);
+            store = nodes.isEmpty() ? new CompactPathStore() : kSPComponents.get(nodes.get(0)).getStore();
+            this.logger.info("Loaded kSPs from " + file);
+            return kSPComponents;
+        } catch (IOException | RuntimeException e) {
+            this.logger.warn("Ignoring kSP snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes the snapshot of a topology if snapshots are enabled. Failing to write it is not fatal.
+     */
+    private void writeSnapshot(List<Node> nodes, List<Edge> edges, Map<Node, KShortestPaths> kSPComponents) {
+        if(configuration.getSnapshotDirectory() == null)
+            return;
+
+        long fingerprint = KSPSnapshot.fingerprint(nodes, edges, maxLevel);
+        File file = KSPSnapshot.getFile(configuration.getSnapshotDirectory(), fingerprint);
+        try {
+            KSPSnapshot.write(file, fingerprint, maxLevel, nodes, edges, kSPComponents);
+            this.logger.info("Wrote kSPs to " + file);
+        } catch (IOException e) {
+            this.logger.warn("Could not write kSP snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the length up to which a new path would enter the kSPs of a pair, UNREACHABLE if any new path would.
+     */
+    private int longestStoredLength(KShortestPaths kSPComponent, Node destinationNode) {
+        // Levels are filled in order: if the last one is empty, all the paths are known
+        int length = kSPComponent.getLastLevelLength(destinationNode);
+        return length < 0 ? UNREACHABLE : length;
+    }
+
+    /**
+     * Breadth-first search of the hop distances from a node.
+     * @param from node to start from.
+     * @param neighbors neighbors to follow for each node.
+     * @return the distances of all the reachable nodes (including the start node).
+     */
+    private static Map<Node, Integer> hopDistances(Node from, Map<Node, List<Node>> neighbors) {
+        Map<Node, Integer> distances = new HashMap<>();
+        Deque<Node> queue = new ArrayDeque<>();
+        distances.put(from, 0);
+        queue.add(from);
+        while(!queue.isEmpty()) {
+            Node node = queue.poll();
+            for(Node neighbor : neighbors.getOrDefault(node, Collections.emptyList())) {
+                if(!distances.containsKey(neighbor)) {
+                    distances.put(neighbor, distances.get(node) + 1);
+                    queue.add(neighbor);
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Computes the kSPs of some pairs.
+     * @param pairs destinations to compute for each source node.
+     * @return a (not attached) kSPs component for each source node.
+     */
+    private Map<Node, KShortestPaths> compute(Map<Node, Collection<Node>> pairs) {
+        if(configuration.getExecutor() == null)
+            return computeSequentially(pairs);
+        else
+            return computeInParallel(pairs, configuration.getExecutor());
+    }
+
+    private Map<Node, KShortestPaths> computeSequentially(Map<Node, Collection<Node>> pairs) {
+        KSPAlgorithm yen = borrowKSPAlgorithm();
+        Map<Node, KShortestPaths> kSPComponents = new HashMap<>();
+        for(Map.Entry<Node, Collection<Node>> entry : pairs.entrySet()) {
+            kSPComponents.put(entry.getKey(), computeFromSource(entry.getKey(), entry.getValue(), yen));
+            reportProgress(kSPComponents.size(), pairs.size());
+        }
+        idleAlgorithms.add(yen);
+        return kSPComponents;
+    }
+
+    private Map<Node, KShortestPaths> computeInParallel(Map<Node, Collection<Node>> pairs, ExecutorService executor) {
+        AtomicInteger doneSources = new AtomicInteger();
+
+        Map<Node, Future<KShortestPaths>> futures = new LinkedHashMap<>();
+        for(Map.Entry<Node, Collection<Node>> entry : pairs.entrySet()) {
+            futures.put(entry.getKey(), executor.submit(() -> {
+                KSPAlgorithm yen = borrowKSPAlgorithm();
+                KShortestPaths kSPComponent = computeFromSource(entry.getKey(), entry.getValue(), yen);
+                idleAlgorithms.add(yen);
+                reportProgress(doneSources.incrementAndGet(), pairs.size());
+                return kSPComponent;
+            }));
+        }
+
+        Map<Node, KShortestPaths> kSPComponents = new HashMap<>();
+        try {
+            for(Map.Entry<Node, Future<KShortestPaths>> entry : futures.entrySet())
+                kSPComponents.put(entry.getKey(), entry.getValue().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for(Future<KShortestPaths> future : futures.values())
+                future.cancel(true);
+            throw new RuntimeException("interrupted while computing kSPs", e);
+        } catch (ExecutionException e) {
+            for(Future<KShortestPaths> future : futures.values())
+                future.cancel(true);
+            throw new RuntimeException("kSP computation failed", e.getCause());
+        }
+
+        return kSPComponents;
+    }
+
+    /**
+     * Algorithm instances are handed out to the workers and given back to idleAlgorithms once they are done.
+     * @return an algorithm instance not used by any other worker.
+     */
+    private KSPAlgorithm borrowKSPAlgorithm() {
+        KSPAlgorithm yen = idleAlgorithms.poll();
+        if(yen == null)
+            yen = createKSPAlgorithm();
+        return yen;
+    }
+
+    private synchronized KSPAlgorithm createKSPAlgorithm() {
+        KSPAlgorithm yen = new YenAlgorithm(controller);
+        yen.setProxy(new ShortestPathProxy());
+        return yen;
+    }
+
+    private void reportProgress(int doneSources, int totalSources) {
+        if(this.logger.isDebugEnabled())
+            this.logger.debug("kSPs computed for " + doneSources + "/" + totalSources + " source nodes");
+        if(configuration.getProgressListener() != null)
+            configuration.getProgressListener().progress(doneSources, totalSources);
+    }
+
+    /**
+     * Computes the kSPs from a source node to some destination nodes.
+     * @param sourceNode the source node.
+     * @param destinationNodes the destination nodes (the source node is ignored if present).
+     * @param yen kSP algorithm to use.
+     * @return a (not attached) kSPs component for the source node.
+     */
+    private KShortestPaths computeFromSource(Node sourceNode, Collection<Node> destinationNodes, KSPAlgorithm yen) {
+        KShortestPaths kSPComponent = new KShortestPaths(store);
+        if(this.logger.isDebugEnabled())
+            this.logger.debug("Creating new empty kSPs for " + sourceNode + " -> " + sourceNode);
+
+        for (Node destinationNode : destinationNodes) {
+            if(sourceNode == destinationNode)
+                continue;
+
+            kSPComponent.put(destinationNode, computeLevels(sourceNode, destinationNode, yen));
+        }
+
+        return kSPComponent;
+    }
+
+    /**
+     * Computes the kSPs of a pair in lazy mode.
+     * @param sourceNode the source node.
+     * @param destinationNode the destination node.
+     * @return the kSPs of each level or KSPCache.UNREACHABLE.
+     */
+    private List<List<Path>> computeLevelsOnDemand(Node sourceNode, Node destinationNode) {
+        KSPAlgorithm yen = borrowKSPAlgorithm();
+        try {
+            List<List<Path>> levels = computeLevels(sourceNode, destinationNode, yen);
+            return levels == null ? KSPCache.UNREACHABLE : levels;
+        }
+        finally {
+            idleAlgorithms.add(yen);
+        }
+    }
+
+    /**
+     * Computes the kSPs of a pair.
+     * @param sourceNode the source node.
+     * @param destinationNode the destination node.
+     * @param yen kSP algorithm to use.
+     * @return the kSPs of each level or null if there is no path at all.
+     */
+    private List<List<Path>> computeLevels(Node sourceNode, Node destinationNode, KSPAlgorithm yen) {
+        if(this.logger.isDebugEnabled())
+            this.logger.debug("Computing kSPs for " + sourceNode + " -> " + destinationNode + "!");
+
+        // Computing the kSPs
+        UnicastRequest kspRequest = new UnicastRequest(sourceNode, destinationNode);
+        Iterator<Path> kSPsIterator = yen.iterator(kspRequest);
+
+        // Get first shortest path
+        Path firstPath;
+        if (kSPsIterator.hasNext()) {
+            firstPath = kSPsIterator.next();
+        } else {
+            // There's just nothing
+            return null;
+        }
+
+        // Create array of size "maxLevel" that contains empty arrays
+        List<List<Path>> levels = new ArrayList<>();
+        for (int level = 0; level < maxLevel; level++)
+            levels.add(new ArrayList<>());
+        levels.get(0).add(firstPath);
+
+        int lengthChanges = 0;
+        int lastLength = firstPath.getPath().length;
+        while (kSPsIterator.hasNext()) {
+            Path nextPath = kSPsIterator.next();
+            // Check if still same length
+            if (lastLength == nextPath.getPath().length) {
+                levels.get(lengthChanges).add(nextPath);
+            } else {
+                lengthChanges++;
+                if (lengthChanges == maxLevel)
+                    break;
+                else {
+                    lastLength = nextPath.getPath().length;
+                    levels.get(lengthChanges).add(nextPath);
+                }
+            }
+        }
+
+        return levels;
     }
 }
@@ -2,18 +2,24 @@ package de.tum.ei.lkn.eces.tenantmanager.kspsystem;
 
 import de.tum.ei.lkn.eces.core.Component;
 import de.tum.ei.lkn.eces.core.annotations.ComponentBelongsTo;
+import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.graph.Node;
 import de.tum.ei.lkn.eces.routing.responses.Path;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
+import java.util.function.BiFunction;
 
 /**
  * Component that stores, for each node, a map which contains, for each destination node, the kSPs.
  *
  * The set of kSPs is: all shortest paths of equal length + all second shortest paths of equal length + etc.
- * The limit is configured by the KSPSystem.
+ * The limit is configured by the KSPSystem. Destinations without any path are recorded as unreachable.
+ *
+ * In lazy mode, the component does not store anything: the kSPs to a destination are computed the first time they
+ * are needed and kept in a size-bounded cache shared by all the source nodes.
+ *
+ * In compact mode, the kSPs are stored as edge IDs in a CompactPathStore shared by all the source nodes and are
+ * decoded when they are accessed. getShortestPathEdges() avoids creating Path objects.
  *
  * @author Amaury Van Bemten
  */
@@ -24,20 +30,250 @@ public class KShortestPaths extends Component {
      *  next list: paths of this length
      */
     HashMap<Node, List<List<Path>>> shortestPaths;
+    // Destinations for which there is no path at all
+    Set<Node> unreachableDestinations;
+
+    // Compact mode (null otherwise): handle of the kSPs of each destination in the store
+    private final CompactPathStore store;
+    private final HashMap<Node, Integer> handles;
+
+    // Lazy mode (null otherwise)
+    private final Node source;
+    private final KSPCache cache;
+    private final BiFunction<Node, Node, List<List<Path>>> loader;
 
     KShortestPaths() {
+        this((CompactPathStore) null);
+    }
+
+    KShortestPaths(CompactPathStore store) {
         shortestPaths = new HashMap<>();
+        unreachableDestinations = new HashSet<>();
+        source = null;
+        cache = null;
+        loader = null;
+        this.store = store;
+        this.handles = store == null ? null : new HashMap<>();
+    }
+
+    KShortestPaths(Node source, KSPCache cache, BiFunction<Node, Node, List<List<Path>>> loader) {
+        shortestPaths = new HashMap<>();
+        unreachableDestinations = new HashSet<>();
+        this.source = source;
+        this.cache = cache;
+        this.loader = loader;
+        this.store = null;
+        this.handles = null;
+    }
+
+    /**
+     * Stores the kSPs to a destination.
+     * @param destination destination node.
+     * @param levels kSPs of each level or null if the destination is unreachable.
+     */
+    void put(Node destination, List<List<Path>> levels) {
+        if(levels == null) {
+            unreachableDestinations.add(destination);
+            return;
+        }
+        if(store != null)
+            handles.put(destination, store.encode(levels));
+        else
+            shortestPaths.put(destination, levels);
+    }
+
+    /**
+     * Stores the handle of the kSPs to a destination (compact mode only).
+     * @param destination destination node.
+     * @param handle handle of the kSPs in the store of the component.
+     */
+    void putHandle(Node destination, int handle) {
+        handles.put(destination, handle);
+    }
+
+    /**
+     * @return the handle of the kSPs to a destination or null if they are not stored (compact mode only).
+     */
+    Integer getHandle(Node destination) {
+        return handles.get(destination);
+    }
+
+    /**
+     * @return the store of the kSPs or null if the component is not in compact mode.
+     */
+    CompactPathStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return the destinations for which kSPs are stored (not the unreachable ones), empty in lazy mode.
+     */
+    Set<Node> getStoredDestinations() {
+        return store != null ? handles.keySet() : shortestPaths.keySet();
+    }
+
+    /**
+     * @param destination destination node.
+     * @return the number of hops of the paths of the last level to the destination, or -1 if there are no stored
+     * kSPs to the destination or if its last level is empty (i.e., if all its paths are known).
+     */
+    int getLastLevelLength(Node destination) {
+        if(store != null) {
+            Integer handle = handles.get(destination);
+            return handle == null ? -1 : store.getLastLevelLength(handle);
+        }
+        List<List<Path>> levels = shortestPaths.get(destination);
+        if(levels == null || levels.get(levels.size() - 1).isEmpty())
+            return -1;
+        return levels.get(levels.size() - 1).get(0).getPath().length;
+    }
+
+    /**
+     * @return true if one of the stored kSPs to the destination uses one of the given edges.
+     */
+    boolean usesAnyOf(Node destination, Set<Edge> edges) {
+        if(store != null) {
+            Integer handle = handles.get(destination);
+            return handle != null && store.usesAnyOf(handle, edges);
+        }
+        List<List<Path>> levels = shortestPaths.get(destination);
+        return levels != null && usesAnyOf(levels, edges);
+    }
+
+    static boolean usesAnyOf(List<List<Path>> levels, Set<Edge> edges) {
+        for(List<Path> level : levels)
+            for(Path path : level)
+                for(Edge edge : path.getPath())
+                    if(edges.contains(edge))
+                        return true;
+        return false;
+    }
+
+    /**
+     * @param destination destination node.
+     * @return the kSPs to the destination, KSPCache.UNREACHABLE if unreachable or null if unknown.
+     */
+    private List<List<Path>> getLevels(Node destination) {
+        if(store != null) {
+            if(unreachableDestinations.contains(destination))
+                return KSPCache.UNREACHABLE;
+            Integer handle = handles.get(destination);
+            return handle == null ? null : decodeLevels(handle);
+        }
+        if(cache != null)
+            return destination == source ? null : cache.get(source, destination, loader);
+        if(unreachableDestinations.contains(destination))
+            return KSPCache.UNREACHABLE;
+        return shortestPaths.get(destination);
+    }
+
+    /**
+     * @param handle handle of the kSPs of a pair in the store (compact mode only).
+     * @return the kSPs of the pair, each path being decoded when it is accessed. The cost of the paths is their number
+     * of hops.
+     */
+    private List<List<Path>> decodeLevels(int handle) {
+        int levelCount = store.getLevelCount(handle);
+        return new AbstractList<List<Path>>() {
+            @Override
+            public List<Path> get(int level) {
+                if(level < 0 || level >= levelCount)
+                    throw new IndexOutOfBoundsException("level " + level + " out of " + levelCount);
+                List<Edge[]> paths = store.decode(handle, level);
+                return new AbstractList<Path>() {
+                    @Override
+                    public Path get(int index) {
+                        Edge[] path = paths.get(index);
+                        return new Path(path, path.length, new double[0], new double[0]);
+                    }
+
+                    @Override
+                    public int size() {
+                        return paths.size();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return levelCount;
+            }
+        };
     }
 
     public boolean hasShortestPathsTo(Node destination) {
-        return shortestPaths.containsKey(destination);
+        if(store != null)
+            return handles.containsKey(destination);
+        List<List<Path>> levels = getLevels(destination);
+        return levels != null && levels != KSPCache.UNREACHABLE;
+    }
+
+    /**
+     * @param destination destination node.
+     * @return true if the kSPs to the destination have been computed and there is no path to it.
+     */
+    public boolean isUnreachable(Node destination) {
+        if(store != null)
+            return unreachableDestinations.contains(destination);
+        return getLevels(destination) == KSPCache.UNREACHABLE;
+    }
+
+    /**
+     * Replaces the kSPs (or unreachability) of the destinations known by another component.
+     * @param other component holding the new kSPs.
+     */
+    void replaceDestinations(KShortestPaths other) {
+        for(Map.Entry<Node, List<List<Path>>> entry : other.shortestPaths.entrySet()) {
+            shortestPaths.put(entry.getKey(), entry.getValue());
+            unreachableDestinations.remove(entry.getKey());
+        }
+        if(other.handles != null) {
+            for(Map.Entry<Node, Integer> entry : other.handles.entrySet()) {
+                handles.put(entry.getKey(), entry.getValue());
+                unreachableDestinations.remove(entry.getKey());
+            }
+        }
+        for(Node destination : other.unreachableDestinations) {
+            shortestPaths.remove(destination);
+            if(handles != null)
+                handles.remove(destination);
+            unreachableDestinations.add(destination);
+        }
     }
 
     public List<Path> getShortestPaths(Node destination, int level) {
-        if(!shortestPaths.containsKey(destination))
+        List<List<Path>> levels = getLevels(destination);
+        if(levels == KSPCache.UNREACHABLE)
+            throw new RuntimeException("destination node unreachable");
+        if(levels == null)
+            throw new RuntimeException("unknown destination node");
+        if(level >= levels.size())
+            throw new RuntimeException("too many kSPs asked");
+        return Collections.unmodifiableList(levels.get(level));
+    }
+
+    /**
+     * Same as getShortestPaths() but returns the paths as arrays of edges. Available in all modes.
+     * @param destination destination node.
+     * @param level level of the kSPs (0 for the shortest ones).
+     * @return the paths of the level.
+     */
+    public List<Edge[]> getShortestPathEdges(Node destination, int level) {
+        if(store == null) {
+            List<Path> paths = getShortestPaths(destination, level);
+            List<Edge[]> pathEdges = new ArrayList<>(paths.size());
+            for(Path path : paths)
+                pathEdges.add(path.getPath());
+            return pathEdges;
+        }
+
+        if(unreachableDestinations.contains(destination))
+            throw new RuntimeException("destination node unreachable");
+        Integer handle = handles.get(destination);
+        if(handle == null)
             throw new RuntimeException("unknown destination node");
-        if(level >= shortestPaths.get(destination).size())
+        if(level >= store.getLevelCount(handle))
             throw new RuntimeException("too many kSPs asked");
-        return Collections.unmodifiableList(shortestPaths.get(destination).get(level));
+        return store.decode(handle, level);
     }
 }
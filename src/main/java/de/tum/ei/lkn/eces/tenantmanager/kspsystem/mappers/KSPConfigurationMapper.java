@@ -0,0 +1,11 @@
+package de.tum.ei.lkn.eces.tenantmanager.kspsystem.mappers;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Mapper;
+import de.tum.ei.lkn.eces.tenantmanager.kspsystem.KSPConfiguration;
+
+public class KSPConfigurationMapper extends Mapper<KSPConfiguration> {
+	public KSPConfigurationMapper(Controller controller) {
+		super(controller);
+	}
+}
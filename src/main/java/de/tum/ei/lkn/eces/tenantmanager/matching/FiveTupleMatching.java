@@ -14,12 +14,35 @@ public class FiveTupleMatching extends Matching {
     private int destinationPort;
     private int protocol;
 
+    /* Compact primitive representation of the five-tuple used for hashing and to quickly rule out equality.
+     * Exact for two IPv4 addresses and valid ports/protocol, IPv6 addresses are folded to 32 bits. */
+    private long addressKey;
+    private long portsKey;
+
     public FiveTupleMatching(InetAddress sourceIP, InetAddress destinationIP, int sourcePort, int destinationPort, int protocol) {
         this.sourceIP = sourceIP;
         this.destinationIP = destinationIP;
         this.sourcePort = sourcePort;
         this.destinationPort = destinationPort;
         this.protocol = protocol;
+        this.addressKey = (packAddress(sourceIP) << 32) ^ packAddress(destinationIP);
+        this.portsKey = ((sourcePort & 0xFFFFL) << 24) | ((destinationPort & 0xFFFFL) << 8) | (protocol & 0xFFL);
+    }
+
+    /**
+     * Packs an address in 32 bits: IPv4 addresses are kept as is, IPv6 addresses are folded.
+     * @param address the address.
+     * @return the packed address.
+     */
+    private static long packAddress(InetAddress address) {
+        if(address == null)
+            return 0;
+
+        byte[] bytes = address.getAddress();
+        long packed = 0;
+        for(int i = 0; i < bytes.length; i += 4)
+            packed ^= ((bytes[i] & 0xFFL) << 24) | ((bytes[i + 1] & 0xFFL) << 16) | ((bytes[i + 2] & 0xFFL) << 8) | (bytes[i + 3] & 0xFFL);
+        return packed;
     }
 
     public InetAddress getSourceIP() {
@@ -47,10 +70,17 @@ public class FiveTupleMatching extends Matching {
         if(!(other instanceof FiveTupleMatching))
             return false;
         else
-            return ((FiveTupleMatching) other).sourceIP.equals(sourceIP) &&
+            return ((FiveTupleMatching) other).addressKey == addressKey &&
+                ((FiveTupleMatching) other).portsKey == portsKey &&
+                ((FiveTupleMatching) other).sourceIP.equals(sourceIP) &&
                 ((FiveTupleMatching) other).destinationIP.equals(destinationIP) &&
                 ((FiveTupleMatching) other).sourcePort == sourcePort &&
                 ((FiveTupleMatching) other).destinationPort == destinationPort &&
                 ((FiveTupleMatching) other).protocol == protocol;
     }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(addressKey ^ (portsKey * 0x9E3779B97F4A7C15L));
+    }
 }
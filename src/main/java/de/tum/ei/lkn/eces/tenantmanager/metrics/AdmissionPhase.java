@@ -0,0 +1,27 @@
+package de.tum.ei.lkn.eces.tenantmanager.metrics;
+
+/**
+ * Phases of the creation of a flow whose latency is measured by the TenantManagerMetrics.
+ *
+ * @author Amaury Van Bemten
+ */
+public enum AdmissionPhase {
+    /** Whole createFlow() call, including waiting for the locks of the VMs. */
+    TOTAL,
+    /** Checks on the VMs and on the specification of the flow. */
+    VALIDATION,
+    /** Waiting for the network lock. */
+    NETWORK_LOCK,
+    /** First attempt to route the new flow. */
+    INITIAL_ROUTING,
+    /** Selection of the flows that could be rerouted. */
+    FLOW_SELECTION,
+    /** Ranking of the flows that will be tried. */
+    SORTING,
+    /** What-if routing of all the rerouting attempts (speculative rerouting only). */
+    SPECULATION,
+    /** Routing of one flow to reroute (one sample per rerouting attempt). */
+    REROUTING,
+    /** New attempt to route the new flow after a successful rerouting. */
+    READDING
+}
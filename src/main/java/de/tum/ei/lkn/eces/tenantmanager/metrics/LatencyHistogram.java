@@ -0,0 +1,131 @@
+package de.tum.ei.lkn.eces.tenantmanager.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies (in nanoseconds) with a bounded relative error, in the spirit of HdrHistogram.
+ *
+ * Values below 256 have their own bucket. Above, each power of two is split into 128 buckets of equal width, so
+ * that a value is known with a relative error below 1/128 (< 0.8%) whatever its magnitude. The whole range of long
+ * values fits in 7296 buckets.
+ *
+ * Recording is wait-free and can be done concurrently with reading, readers then see a value recorded or not.
+ *
+ * @author Amaury Van Bemten
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // 128
+    private static final int BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS); // 7296
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a value.
+     * @param nanos latency in nanoseconds (negative values are recorded as 0).
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(getBucket(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the mean of the recorded values in nanoseconds (0 if no value was recorded).
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : ((double) sum.sum()) / n;
+    }
+
+    /**
+     * @return the largest recorded value in nanoseconds (exact).
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile percentile in [0;100].
+     * @return an upper bound (within the precision of the histogram) of the given percentile of the recorded values
+     *         in nanoseconds (0 if no value was recorded).
+     */
+    public long getValueAtPercentile(double percentile) {
+        if(percentile < 0 || percentile > 100)
+            throw new RuntimeException("a percentile must be in [0;100], got " + percentile);
+
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for(int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if(total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if(seen >= rank)
+                return Math.min(getUpperBound(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * Resets the histogram. Values recorded during the reset may be partially lost.
+     */
+    public void reset() {
+        for(int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    static int getBucket(long value) {
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        if(bits <= SUB_BUCKET_BITS + 1)
+            return (int) value;
+        int shift = bits - SUB_BUCKET_BITS - 1;
+        return SUB_BUCKETS * shift + (int) (value >>> shift);
+    }
+
+    static long getUpperBound(int bucket) {
+        if(bucket < 2 * SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket - SUB_BUCKETS * shift;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, mean=%.1fus, p50=%.1fus, p99=%.1fus, p99.9=%.1fus, max=%.1fus",
+                getCount(),
+                getMean() / 1000,
+                getValueAtPercentile(50) / 1000.0,
+                getValueAtPercentile(99) / 1000.0,
+                getValueAtPercentile(99.9) / 1000.0,
+                getMax() / 1000.0);
+    }
+}
@@ -0,0 +1,58 @@
+package de.tum.ei.lkn.eces.tenantmanager.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the reroutings done with one rerouting configuration.
+ *
+ * @author Amaury Van Bemten
+ */
+public class ReroutingCounters {
+    private final LongAdder attempts;
+    private final LongAdder reroutedFlows;
+    private final LongAdder successes;
+
+    ReroutingCounters() {
+        this.attempts = new LongAdder();
+        this.reroutedFlows = new LongAdder();
+        this.successes = new LongAdder();
+    }
+
+    /**
+     * @return the number of flows for which a new route was looked for.
+     */
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    /**
+     * @return the number of flows that were moved to a new route.
+     */
+    public long getReroutedFlows() {
+        return reroutedFlows.sum();
+    }
+
+    /**
+     * @return the number of new flows that could be embedded thanks to rerouting.
+     */
+    public long getSuccesses() {
+        return successes.sum();
+    }
+
+    void attempt() {
+        attempts.increment();
+    }
+
+    void reroutedFlow() {
+        reroutedFlows.increment();
+    }
+
+    void success() {
+        successes.increment();
+    }
+
+    @Override
+    public String toString() {
+        return getAttempts() + " attempts, " + getReroutedFlows() + " rerouted flows, " + getSuccesses() + " successes";
+    }
+}
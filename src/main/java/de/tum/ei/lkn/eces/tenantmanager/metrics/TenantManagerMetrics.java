@@ -0,0 +1,169 @@
+package de.tum.ei.lkn.eces.tenantmanager.metrics;
+
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.ReroutingConfiguration;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms of each phase of the creation of a flow and counters of accepted/rejected flows and of the
+ * reroutings done with each rerouting configuration.
+ *
+ * Collection is disabled by default. When it is disabled, start() returns NOT_STARTED without reading the clock and
+ * all the other recording methods return immediately, so that the admission path only pays for a volatile read.
+ *
+ * Usage on the admission path:
+ *  long start = metrics.start();
+ *  ...
+ *  metrics.record(AdmissionPhase.X, start);
+ *
+ * @author Amaury Van Bemten
+ */
+public class TenantManagerMetrics {
+    // Start time returned when collection is disabled
+    public static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private volatile boolean enabled;
+    private final Map<AdmissionPhase, LatencyHistogram> histograms;
+    private final LongAdder acceptedFlows;
+    private final LongAdder rejectedFlows;
+    private final ConcurrentMap<ReroutingConfiguration, ReroutingCounters> reroutingCounters;
+
+    public TenantManagerMetrics() {
+        this.enabled = false;
+        this.histograms = new EnumMap<>(AdmissionPhase.class);
+        for(AdmissionPhase phase : AdmissionPhase.values())
+            histograms.put(phase, new LatencyHistogram());
+        this.acceptedFlows = new LongAdder();
+        this.rejectedFlows = new LongAdder();
+        this.reroutingCounters = new ConcurrentHashMap<>();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables collection. Already collected values are kept.
+     * @param enabled true to collect.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the current time to give to record() or NOT_STARTED if collection is disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * Records the duration of a phase.
+     * @param phase the phase.
+     * @param start value returned by start() at the beginning of the phase.
+     * @return the end of the phase, which can be used as the start of the next phase (NOT_STARTED if the phase was
+     *         not started).
+     */
+    public long record(AdmissionPhase phase, long start) {
+        if(start == NOT_STARTED)
+            return NOT_STARTED;
+        long end = System.nanoTime();
+        histograms.get(phase).record(end - start);
+        return end;
+    }
+
+    public void flowAccepted() {
+        if(enabled)
+            acceptedFlows.increment();
+    }
+
+    public void flowRejected() {
+        if(enabled)
+            rejectedFlows.increment();
+    }
+
+    /**
+     * Counts a flow for which a new route is looked for.
+     * @param configuration rerouting configuration of the network.
+     */
+    public void reroutingAttempted(ReroutingConfiguration configuration) {
+        if(enabled)
+            getCounters(configuration).attempt();
+    }
+
+    /**
+     * Counts a flow that was moved to a new route.
+     * @param configuration rerouting configuration of the network.
+     */
+    public void flowRerouted(ReroutingConfiguration configuration) {
+        if(enabled)
+            getCounters(configuration).reroutedFlow();
+    }
+
+    /**
+     * Counts a new flow that could be embedded thanks to rerouting.
+     * @param configuration rerouting configuration of the network.
+     */
+    public void reroutingSucceeded(ReroutingConfiguration configuration) {
+        if(enabled)
+            getCounters(configuration).success();
+    }
+
+    public LatencyHistogram getHistogram(AdmissionPhase phase) {
+        return histograms.get(phase);
+    }
+
+    public long getAcceptedFlows() {
+        return acceptedFlows.sum();
+    }
+
+    public long getRejectedFlows() {
+        return rejectedFlows.sum();
+    }
+
+    /**
+     * @return the rerouting counters of each rerouting configuration that has been used since the last reset.
+     */
+    public Map<ReroutingConfiguration, ReroutingCounters> getReroutingCounters() {
+        return Collections.unmodifiableMap(reroutingCounters);
+    }
+
+    /**
+     * Clears all the collected values.
+     */
+    public void reset() {
+        for(LatencyHistogram histogram : histograms.values())
+            histogram.reset();
+        acceptedFlows.reset();
+        rejectedFlows.reset();
+        reroutingCounters.clear();
+    }
+
+    private ReroutingCounters getCounters(ReroutingConfiguration configuration) {
+        return reroutingCounters.computeIfAbsent(configuration, c -> new ReroutingCounters());
+    }
+
+    /**
+     * @return a human-readable description of a rerouting configuration.
+     */
+    public static String describe(ReroutingConfiguration configuration) {
+        return configuration.getFlowSelectionTypes() + "/" + configuration.getSortFlowTypes() + "/" + configuration.getCostIncreaseTypes() + "/" + configuration.getLimitReroutingTypes() + "(" + configuration.getRerouteLimit() + ")";
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(getAcceptedFlows()).append(" accepted flows, ").append(getRejectedFlows()).append(" rejected flows");
+        for(AdmissionPhase phase : AdmissionPhase.values())
+            if(histograms.get(phase).getCount() > 0)
+                builder.append("\n").append(phase).append(": ").append(histograms.get(phase));
+        for(Map.Entry<ReroutingConfiguration, ReroutingCounters> entry : reroutingCounters.entrySet())
+            builder.append("\n").append(describe(entry.getKey())).append(": ").append(entry.getValue());
+        return builder.toString();
+    }
+}
@@ -0,0 +1,89 @@
+package de.tum.ei.lkn.eces.tenantmanager.placement;
+
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.tenantmanager.Tenant;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+import de.tum.ei.lkn.eces.tenantmanager.VmSpec;
+
+import java.util.*;
+
+/**
+ * Greedy placement of a set of VMs knowing the traffic between them.
+ *
+ * The VMs are placed by decreasing total traffic. Each VM goes on the host minimizing the traffic-weighted number
+ * of hops to the VMs already placed (of the batch and of the tenant) it communicates with, the least loaded host
+ * in case of a tie. Heavily communicating VMs thus end up on the same host if possible, then under the same edge
+ * switch (rack), then in the same pod of a fat tree.
+ *
+ * @author Amaury Van Bemten
+ */
+final class BatchPlacement {
+    private BatchPlacement() {
+    }
+
+    /**
+     * Must be called with the lock of the catalog held. The VMs are not recorded in the catalog. The VMs with a given
+     * host also count towards the maximum number of VMs of their host.
+     * @param tenant tenant of the VMs.
+     * @param specs VMs to place.
+     * @param trafficMatrix traffic between the VMs.
+     * @param hosts the hosts of the network.
+     * @return the host of each VM (same order as the specifications) or null if no host can take one of the VMs.
+     */
+    static List<Host> place(Tenant tenant, List<VmSpec> specs, TrafficMatrix trafficMatrix, HostCatalog hosts) {
+        Map<String, Host> placed = new HashMap<>();
+        for(VirtualMachine vm : tenant.getVirtualMachines())
+            if(vm.getHostMachine() != null)
+                placed.put(vm.getName(), vm.getHostMachine());
+
+        // VMs placed by this batch on each host
+        Map<Host, Integer> added = new IdentityHashMap<>();
+        int maxVirtualMachinesPerHost = hosts.getMaxVirtualMachinesPerHost();
+        for(VmSpec spec : specs)
+            if(spec.getHost() != null) {
+                placed.put(spec.getName(), spec.getHost());
+                int count = added.merge(spec.getHost(), 1, Integer::sum) + hosts.getVirtualMachineCount(spec.getHost());
+                if(maxVirtualMachinesPerHost != 0 && count > maxVirtualMachinesPerHost)
+                    return null;
+            }
+
+        List<VmSpec> order = new ArrayList<>();
+        for(VmSpec spec : specs)
+            if(spec.getHost() == null)
+                order.add(spec);
+        order.sort(Comparator.comparingDouble((VmSpec spec) -> trafficMatrix.getTotal(spec.getName())).reversed());
+
+        for(VmSpec spec : order) {
+            Host chosenHost = null;
+            double chosenCost = Double.POSITIVE_INFINITY;
+            int chosenCount = Integer.MAX_VALUE;
+            for(Host host : hosts.getHosts()) {
+                int count = hosts.getVirtualMachineCount(host) + added.getOrDefault(host, 0);
+                if(maxVirtualMachinesPerHost != 0 && count >= maxVirtualMachinesPerHost)
+                    continue;
+                double cost = 0;
+                for(Map.Entry<String, Double> peer : trafficMatrix.getPeers(spec.getName()).entrySet()) {
+                    Host peerHost = placed.get(peer.getKey());
+                    if(peerHost != null) {
+                        int distance = hosts.getDistance(peerHost, host);
+                        cost += distance == HostCatalog.UNREACHABLE ? Double.POSITIVE_INFINITY : distance * peer.getValue();
+                    }
+                }
+                if(chosenHost == null || cost < chosenCost || (cost == chosenCost && count < chosenCount)) {
+                    chosenHost = host;
+                    chosenCost = cost;
+                    chosenCount = count;
+                }
+            }
+            if(chosenHost == null)
+                return null;
+            placed.put(spec.getName(), chosenHost);
+            added.merge(chosenHost, 1, Integer::sum);
+        }
+
+        List<Host> result = new ArrayList<>(specs.size());
+        for(VmSpec spec : specs)
+            result.add(placed.get(spec.getName()));
+        return result;
+    }
+}
@@ -0,0 +1,18 @@
+package de.tum.ei.lkn.eces.tenantmanager.placement;
+
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+
+/**
+ * Places VMs on the host with the most VMs that can still take one (the first one in case of a tie), so that hosts
+ * are filled one after the other. This only makes sense with a maximum number of VMs per host: without one, all
+ * the VMs end up on the same host.
+ *
+ * @author Amaury Van Bemten
+ */
+public class BinPackingPlacement implements PlacementStrategy {
+    @Override
+    public Host place(VirtualMachine vm, HostCatalog hosts) {
+        return hosts.getLoadIndex().getBestFitHost(hosts.getMaxVirtualMachinesPerHost());
+    }
+}
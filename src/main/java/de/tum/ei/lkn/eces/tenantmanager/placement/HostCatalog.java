@@ -0,0 +1,270 @@
+package de.tum.ei.lkn.eces.tenantmanager.placement;
+
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.Graph;
+import de.tum.ei.lkn.eces.graph.Node;
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.tenantmanager.Tenant;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+import de.tum.ei.lkn.eces.tenantmanager.VmSpec;
+
+import java.util.*;
+
+/**
+ * Hosts of a network, indexed for placement decisions.
+ *
+ * The list of hosts is cached and rebuilt when hosts are added to or removed from the network. The network has no
+ * version or host listener: the hosts of the network are compared (by identity) with the cached ones before each
+ * placement decision, and the load of a host unknown to the catalog triggers the comparison as well. For each host,
+ * the catalog knows its load (see HostLoadIndex) and, on demand, the number of hops to the other hosts in the link
+ * graph (cached until the topology changes).
+ *
+ * @author Amaury Van Bemten
+ */
+public class HostCatalog {
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final Network network;
+    private int maxVirtualMachinesPerHost; // 0 if unlimited
+    private List<Host> hosts;
+    private Map<Host, Integer> indices;
+    private HostLoadIndex loadIndex;
+    // Hop distances between hosts (row computed when first needed) and number of edges they were computed for
+    private int[][] distances;
+    private int nEdges;
+
+    public HostCatalog(Network network) {
+        this.network = network;
+        this.maxVirtualMachinesPerHost = 0;
+        this.hosts = Collections.emptyList();
+        this.indices = new IdentityHashMap<>();
+        this.loadIndex = new HostLoadIndex(hosts, null);
+        this.distances = new int[0][];
+        this.nEdges = -1;
+    }
+
+    /**
+     * Places a VM and records it on the chosen host.
+     * @param strategy strategy choosing the host.
+     * @param vm VM to place.
+     * @return the chosen host or null if no host can take the VM.
+     */
+    public synchronized Host place(PlacementStrategy strategy, VirtualMachine vm) {
+        refresh();
+        Host host = strategy.place(vm, this);
+        if(host != null)
+            addVirtualMachine(host);
+        return host;
+    }
+
+    /**
+     * Places a set of VMs knowing the traffic between them (see BatchPlacement) and records them on the chosen hosts,
+     * so that concurrent placements see them. The VMs that are finally not created must be removed with
+     * removeVirtualMachine().
+     * @param tenant tenant of the VMs.
+     * @param specs VMs to place.
+     * @param trafficMatrix traffic between the VMs.
+     * @return the host of each VM (same order as the specifications) or null if no host can take one of the VMs.
+     */
+    public synchronized List<Host> placeBatch(Tenant tenant, List<VmSpec> specs, TrafficMatrix trafficMatrix) {
+        refresh();
+        List<Host> chosenHosts = BatchPlacement.place(tenant, specs, trafficMatrix, this);
+        if(chosenHosts != null)
+            for(Host host : chosenHosts)
+                loadIndex.addVirtualMachine(host);
+        return chosenHosts;
+    }
+
+    /**
+     * Records a VM on a host.
+     */
+    public synchronized void addVirtualMachine(Host host) {
+        refreshIfUnknown(host, host);
+        loadIndex.addVirtualMachine(host);
+    }
+
+    /**
+     * Records the removal of a VM from a host.
+     */
+    public synchronized void removeVirtualMachine(Host host) {
+        loadIndex.removeVirtualMachine(host);
+    }
+
+    /**
+     * Records a flow between two hosts.
+     * @param rate rate of the flow (bps).
+     * @param burst burst of the flow (bytes).
+     */
+    public synchronized void addFlow(Host source, Host destination, long rate, long burst) {
+        refreshIfUnknown(source, destination);
+        loadIndex.addFlow(source, destination, rate, burst);
+    }
+
+    /**
+     * Records the removal of a flow between two hosts.
+     */
+    public synchronized void removeFlow(Host source, Host destination, long rate, long burst) {
+        loadIndex.removeFlow(source, destination, rate, burst);
+    }
+
+    /**
+     * @return the hosts, each host being at its index.
+     */
+    public synchronized List<Host> getHosts() {
+        refresh();
+        return hosts;
+    }
+
+    /**
+     * @return the index of a host or -1 if it is not in the network.
+     */
+    public synchronized int getIndex(Host host) {
+        refreshIfUnknown(host, host);
+        Integer index = indices.get(host);
+        return index == null ? -1 : index;
+    }
+
+    public synchronized int getVirtualMachineCount(Host host) {
+        refreshIfUnknown(host, host);
+        HostLoadIndex.HostLoad load = loadIndex.getLoad(host);
+        return load == null ? 0 : load.getVirtualMachineCount();
+    }
+
+    /**
+     * @return the load of the hosts. Must only be used with the lock of the catalog held (e.g., by a
+     * PlacementStrategy).
+     */
+    public synchronized HostLoadIndex getLoadIndex() {
+        refresh();
+        return loadIndex;
+    }
+
+    /**
+     * @return true if a host can take one more VM.
+     */
+    public synchronized boolean hasRoom(Host host) {
+        return maxVirtualMachinesPerHost == 0 || getVirtualMachineCount(host) < maxVirtualMachinesPerHost;
+    }
+
+    public synchronized int getMaxVirtualMachinesPerHost() {
+        return maxVirtualMachinesPerHost;
+    }
+
+    /**
+     * @param maxVirtualMachinesPerHost maximum number of VMs on a host (0 if unlimited).
+     */
+    public synchronized void setMaxVirtualMachinesPerHost(int maxVirtualMachinesPerHost) {
+        if(maxVirtualMachinesPerHost < 0)
+            throw new RuntimeException("the maximum number of VMs per host cannot be negative, got " + maxVirtualMachinesPerHost);
+        this.maxVirtualMachinesPerHost = maxVirtualMachinesPerHost;
+    }
+
+    /**
+     * @return the number of links between two hosts in the link graph (0 for the same host) or UNREACHABLE.
+     */
+    public synchronized int getDistance(Host from, Host to) {
+        int fromIndex = getIndex(from);
+        int toIndex = getIndex(to);
+        if(fromIndex < 0 || toIndex < 0)
+            return UNREACHABLE;
+        if(fromIndex == toIndex)
+            return 0;
+
+        Graph linkGraph = network.getLinkGraph();
+        if(linkGraph.getEdges().size() != nEdges) {
+            distances = new int[hosts.size()][];
+            nEdges = linkGraph.getEdges().size();
+        }
+        if(distances[fromIndex] == null)
+            distances[fromIndex] = computeDistances(from, linkGraph);
+        return distances[fromIndex][toIndex];
+    }
+
+    /**
+     * Forgets the distances between hosts (to be called when links are added or removed).
+     */
+    public synchronized void invalidateDistances() {
+        nEdges = -1;
+    }
+
+    private int[] computeDistances(Host from, Graph linkGraph) {
+        int[] hostDistances = new int[hosts.size()];
+        Arrays.fill(hostDistances, UNREACHABLE);
+        Node source = getLinkNode(from);
+        if(source == null)
+            return hostDistances;
+
+        Map<Node, List<Node>> successors = new HashMap<>();
+        for(Edge edge : linkGraph.getEdges())
+            successors.computeIfAbsent(edge.getSource(), node -> new ArrayList<>()).add(edge.getDestination());
+
+        // Breadth-first search from the node of the host
+        Map<Node, Integer> nodeDistances = new HashMap<>();
+        Deque<Node> toVisit = new ArrayDeque<>();
+        nodeDistances.put(source, 0);
+        toVisit.add(source);
+        while(!toVisit.isEmpty()) {
+            Node node = toVisit.poll();
+            for(Node successor : successors.getOrDefault(node, Collections.emptyList())) {
+                if(!nodeDistances.containsKey(successor)) {
+                    nodeDistances.put(successor, nodeDistances.get(node) + 1);
+                    toVisit.add(successor);
+                }
+            }
+        }
+
+        for(int i = 0; i < hosts.size(); i++) {
+            Node node = getLinkNode(hosts.get(i));
+            if(node != null && nodeDistances.containsKey(node))
+                hostDistances[i] = nodeDistances.get(node);
+        }
+        return hostDistances;
+    }
+
+    /**
+     * @return the node of the link graph of a host with a single interface, null otherwise.
+     */
+    private static Node getLinkNode(Host host) {
+        if(host.getInterfaces().size() != 1)
+            return null;
+        return host.getNetworkNode(host.getInterfaces().iterator().next()).getLinkNode();
+    }
+
+    /**
+     * Rebuilds the index if one of two hosts is not in it (e.g., it has just been added to the network).
+     */
+    private void refreshIfUnknown(Host host1, Host host2) {
+        if(!indices.containsKey(host1) || !indices.containsKey(host2))
+            refresh();
+    }
+
+    /**
+     * Rebuilds the index if hosts have been added to or removed from the network, even if their number did not
+     * change.
+     */
+    private void refresh() {
+        Collection<Host> networkHosts = network.getHosts();
+        if(networkHosts.size() == hosts.size()) {
+            boolean unchanged = true;
+            for(Host host : networkHosts) {
+                if(!indices.containsKey(host)) {
+                    unchanged = false;
+                    break;
+                }
+            }
+            if(unchanged)
+                return;
+        }
+
+        List<Host> newHosts = new ArrayList<>(networkHosts);
+        Map<Host, Integer> newIndices = new IdentityHashMap<>();
+        for(int i = 0; i < newHosts.size(); i++)
+            newIndices.put(newHosts.get(i), i);
+        hosts = Collections.unmodifiableList(newHosts);
+        indices = newIndices;
+        loadIndex = new HostLoadIndex(newHosts, loadIndex);
+        distances = new int[newHosts.size()][];
+        nEdges = -1;
+    }
+}
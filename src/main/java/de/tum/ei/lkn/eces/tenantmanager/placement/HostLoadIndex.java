@@ -0,0 +1,183 @@
+package de.tum.ei.lkn.eces.tenantmanager.placement;
+
+import de.tum.ei.lkn.eces.network.Host;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Load of each host: number of VMs and committed rate/burst of the flows from or to the host (a flow between two
+ * VMs of the same host is counted once).
+ *
+ * The hosts are kept sorted by number of VMs and by committed rate, so that the least loaded or best fitting host
+ * is found in O(log n) instead of scanning all the hosts. Ties are broken by the index of the host in the catalog.
+ *
+ * The index is not thread-safe: it is only accessed with the lock of its HostCatalog held.
+ *
+ * @author Amaury Van Bemten
+ */
+public class HostLoadIndex {
+    private static final Comparator<HostLoad> BY_VM_COUNT = Comparator.<HostLoad>comparingInt(load -> load.vmCount).thenComparingInt(load -> load.index);
+    private static final Comparator<HostLoad> BY_COMMITTED_RATE = Comparator.<HostLoad>comparingLong(load -> load.committedRate).thenComparingInt(load -> load.index);
+
+    private final Map<Host, HostLoad> loads;
+    private final TreeSet<HostLoad> byVmCount;
+    private final TreeSet<HostLoad> byCommittedRate;
+
+    /**
+     * @param hosts the hosts, each host being at its index.
+     * @param previous index whose loads are carried over for the hosts it knows (can be null).
+     */
+    HostLoadIndex(List<Host> hosts, HostLoadIndex previous) {
+        this.loads = new IdentityHashMap<>();
+        this.byVmCount = new TreeSet<>(BY_VM_COUNT);
+        this.byCommittedRate = new TreeSet<>(BY_COMMITTED_RATE);
+        for(int i = 0; i < hosts.size(); i++) {
+            HostLoad load = new HostLoad(hosts.get(i), i);
+            HostLoad previousLoad = previous == null ? null : previous.loads.get(hosts.get(i));
+            if(previousLoad != null) {
+                load.vmCount = previousLoad.vmCount;
+                load.committedRate = previousLoad.committedRate;
+                load.committedBurst = previousLoad.committedBurst;
+            }
+            loads.put(load.host, load);
+            byVmCount.add(load);
+            byCommittedRate.add(load);
+        }
+    }
+
+    /**
+     * @return the load of a host or null if the host is not in the index.
+     */
+    public HostLoad getLoad(Host host) {
+        return loads.get(host);
+    }
+
+    /**
+     * @param maxVirtualMachinesPerHost maximum number of VMs on a host (0 if unlimited).
+     * @return the host with the fewest VMs or null if all the hosts are full.
+     */
+    public Host getLeastLoadedHost(int maxVirtualMachinesPerHost) {
+        if(byVmCount.isEmpty())
+            return null;
+        HostLoad load = byVmCount.first();
+        return hasRoom(load, maxVirtualMachinesPerHost) ? load.host : null;
+    }
+
+    /**
+     * @param maxVirtualMachinesPerHost maximum number of VMs on a host (0 if unlimited).
+     * @return the host with the most VMs among the ones that are not full or null if all the hosts are full.
+     */
+    public Host getBestFitHost(int maxVirtualMachinesPerHost) {
+        HostLoad fullest = maxVirtualMachinesPerHost == 0 ? (byVmCount.isEmpty() ? null : byVmCount.last()) : byVmCount.lower(new HostLoad(null, -1, maxVirtualMachinesPerHost));
+        if(fullest == null)
+            return null;
+        // First host with that number of VMs
+        return byVmCount.ceiling(new HostLoad(null, -1, fullest.vmCount)).host;
+    }
+
+    /**
+     * Iterates over the hosts by increasing committed rate until one is not full (immediate if there is no maximum
+     * number of VMs per host).
+     * @param maxVirtualMachinesPerHost maximum number of VMs on a host (0 if unlimited).
+     * @return the host with the lowest committed rate among the ones that are not full or null if all are full.
+     */
+    public Host getLeastCommittedRateHost(int maxVirtualMachinesPerHost) {
+        for(HostLoad load : byCommittedRate)
+            if(hasRoom(load, maxVirtualMachinesPerHost))
+                return load.host;
+        return null;
+    }
+
+    void addVirtualMachine(Host host) {
+        update(host, load -> load.vmCount++);
+    }
+
+    void removeVirtualMachine(Host host) {
+        update(host, load -> load.vmCount = Math.max(0, load.vmCount - 1));
+    }
+
+    void addFlow(Host source, Host destination, long rate, long burst) {
+        update(source, load -> load.commit(rate, burst));
+        if(destination != source)
+            update(destination, load -> load.commit(rate, burst));
+    }
+
+    void removeFlow(Host source, Host destination, long rate, long burst) {
+        update(source, load -> load.commit(-rate, -burst));
+        if(destination != source)
+            update(destination, load -> load.commit(-rate, -burst));
+    }
+
+    /**
+     * Updates the load of a host, taking it out of the sorted sets while it changes.
+     */
+    private void update(Host host, Consumer<HostLoad> change) {
+        HostLoad load = loads.get(host);
+        if(load == null)
+            return;
+        byVmCount.remove(load);
+        byCommittedRate.remove(load);
+        change.accept(load);
+        byVmCount.add(load);
+        byCommittedRate.add(load);
+    }
+
+    private static boolean hasRoom(HostLoad load, int maxVirtualMachinesPerHost) {
+        return maxVirtualMachinesPerHost == 0 || load.vmCount < maxVirtualMachinesPerHost;
+    }
+
+    /**
+     * Load of a host.
+     */
+    public static final class HostLoad {
+        private final Host host;
+        private final int index;
+        private int vmCount;
+        private long committedRate;
+        private long committedBurst;
+
+        private HostLoad(Host host, int index) {
+            this(host, index, 0);
+        }
+
+        // Also used as a search key
+        private HostLoad(Host host, int index, int vmCount) {
+            this.host = host;
+            this.index = index;
+            this.vmCount = vmCount;
+        }
+
+        private void commit(long rate, long burst) {
+            committedRate += rate;
+            committedBurst += burst;
+        }
+
+        public Host getHost() {
+            return host;
+        }
+
+        public int getVirtualMachineCount() {
+            return vmCount;
+        }
+
+        /**
+         * @return the sum of the rates (bps) of the flows from or to the host.
+         */
+        public long getCommittedRate() {
+            return committedRate;
+        }
+
+        /**
+         * @return the sum of the bursts (bytes) of the flows from or to the host.
+         */
+        public long getCommittedBurst() {
+            return committedBurst;
+        }
+
+        @Override
+        public String toString() {
+            return host + "(" + vmCount + " VMs, " + committedRate + " bps, " + committedBurst + " bytes)";
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package de.tum.ei.lkn.eces.tenantmanager.placement;
+
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+
+/**
+ * Places VMs on the host with the lowest committed rate, i.e., the lowest sum of the rates of the flows from or to
+ * the host (the first one in case of a tie).
+ *
+ * @author Amaury Van Bemten
+ */
+public class LeastCommittedRatePlacement implements PlacementStrategy {
+    @Override
+    public Host place(VirtualMachine vm, HostCatalog hosts) {
+        return hosts.getLoadIndex().getLeastCommittedRateHost(hosts.getMaxVirtualMachinesPerHost());
+    }
+}
@@ -0,0 +1,16 @@
+package de.tum.ei.lkn.eces.tenantmanager.placement;
+
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+
+/**
+ * Places VMs on the host with the fewest VMs (the first one in case of a tie).
+ *
+ * @author Amaury Van Bemten
+ */
+public class LeastLoadedPlacement implements PlacementStrategy {
+    @Override
+    public Host place(VirtualMachine vm, HostCatalog hosts) {
+        return hosts.getLoadIndex().getLeastLoadedHost(hosts.getMaxVirtualMachinesPerHost());
+    }
+}
@@ -0,0 +1,60 @@
+package de.tum.ei.lkn.eces.tenantmanager.placement;
+
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Places VMs close to the other VMs of their tenant, so that the flows of a tenant use as few links as possible.
+ *
+ * The host minimizing the total number of hops to the hosts of the other VMs of the tenant is chosen (the least
+ * loaded one in case of a tie). In a fat tree, this means the same host if possible, then the same edge switch,
+ * then the same pod. The first VM of a tenant is placed by a fallback strategy.
+ *
+ * @author Amaury Van Bemten
+ */
+public class LocalityAwarePlacement implements PlacementStrategy {
+    private final PlacementStrategy fallback;
+
+    public LocalityAwarePlacement() {
+        this(new LeastLoadedPlacement());
+    }
+
+    /**
+     * @param fallback strategy placing the first VM of a tenant.
+     */
+    public LocalityAwarePlacement(PlacementStrategy fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Host place(VirtualMachine vm, HostCatalog hosts) {
+        // Number of VMs of the tenant per host
+        Map<Host, Integer> tenantHosts = new HashMap<>();
+        for(VirtualMachine otherVm : vm.getTenant().getVirtualMachines())
+            if(otherVm != vm && otherVm.getHostMachine() != null)
+                tenantHosts.merge(otherVm.getHostMachine(), 1, Integer::sum);
+        if(tenantHosts.isEmpty())
+            return fallback.place(vm, hosts);
+
+        Host chosenHost = null;
+        long chosenDistance = Long.MAX_VALUE;
+        int chosenCount = Integer.MAX_VALUE;
+        for(Host host : hosts.getHosts()) {
+            if(!hosts.hasRoom(host))
+                continue;
+            long distance = 0;
+            for(Map.Entry<Host, Integer> tenantHost : tenantHosts.entrySet())
+                distance += (long) hosts.getDistance(tenantHost.getKey(), host) * tenantHost.getValue();
+            int count = hosts.getVirtualMachineCount(host);
+            if(distance < chosenDistance || (distance == chosenDistance && count < chosenCount)) {
+                chosenHost = host;
+                chosenDistance = distance;
+                chosenCount = count;
+            }
+        }
+        return chosenHost;
+    }
+}
@@ -0,0 +1,21 @@
+package de.tum.ei.lkn.eces.tenantmanager.placement;
+
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+
+/**
+ * Strategy deciding on which host a new VM is placed.
+ *
+ * The strategy is called with the lock of the host catalog held, so that the load of the hosts does not change
+ * while it decides.
+ *
+ * @author Amaury Van Bemten
+ */
+public interface PlacementStrategy {
+    /**
+     * @param vm the VM to place (its tenant does not contain it yet).
+     * @param hosts the hosts of the network.
+     * @return the host where to place the VM or null if no host can take it.
+     */
+    Host place(VirtualMachine vm, HostCatalog hosts);
+}
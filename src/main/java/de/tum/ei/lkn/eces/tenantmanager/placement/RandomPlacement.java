@@ -0,0 +1,28 @@
+package de.tum.ei.lkn.eces.tenantmanager.placement;
+
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Places VMs on a random host (default strategy).
+ *
+ * @author Amaury Van Bemten
+ */
+public class RandomPlacement implements PlacementStrategy {
+    @Override
+    public Host place(VirtualMachine vm, HostCatalog hosts) {
+        List<Host> allHosts = hosts.getHosts();
+        if(hosts.getMaxVirtualMachinesPerHost() == 0)
+            return allHosts.isEmpty() ? null : allHosts.get(ThreadLocalRandom.current().nextInt(allHosts.size()));
+
+        List<Host> candidates = new ArrayList<>();
+        for(Host host : allHosts)
+            if(hosts.hasRoom(host))
+                candidates.add(host);
+        return candidates.isEmpty() ? null : candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+    }
+}
@@ -0,0 +1,61 @@
+package de.tum.ei.lkn.eces.tenantmanager.placement;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Expected traffic between the VMs of a tenant, identified by their names. The matrix is symmetric: the traffic
+ * between two VMs is the sum of the traffic in both directions.
+ *
+ * @author Amaury Van Bemten
+ */
+public class TrafficMatrix {
+    private final Map<String, Map<String, Double>> traffic; // VM -> other VM -> traffic
+    private final Map<String, Double> totals; // VM -> total traffic from/to the VM
+
+    public TrafficMatrix() {
+        this.traffic = new HashMap<>();
+        this.totals = new HashMap<>();
+    }
+
+    /**
+     * Adds traffic from a VM to another.
+     * @param source name of the source VM.
+     * @param destination name of the destination VM.
+     * @param rate traffic (e.g., bps).
+     * @return this matrix.
+     */
+    public TrafficMatrix add(String source, String destination, double rate) {
+        if(rate < 0)
+            throw new RuntimeException("traffic cannot be negative, got " + rate);
+        if(source.equals(destination))
+            return this;
+        traffic.computeIfAbsent(source, vm -> new HashMap<>()).merge(destination, rate, Double::sum);
+        traffic.computeIfAbsent(destination, vm -> new HashMap<>()).merge(source, rate, Double::sum);
+        totals.merge(source, rate, Double::sum);
+        totals.merge(destination, rate, Double::sum);
+        return this;
+    }
+
+    /**
+     * @return the traffic between two VMs (both directions).
+     */
+    public double get(String vm, String otherVm) {
+        return traffic.getOrDefault(vm, Collections.emptyMap()).getOrDefault(otherVm, 0.0);
+    }
+
+    /**
+     * @return the traffic between a VM and each VM it communicates with.
+     */
+    public Map<String, Double> getPeers(String vm) {
+        return Collections.unmodifiableMap(traffic.getOrDefault(vm, Collections.emptyMap()));
+    }
+
+    /**
+     * @return the total traffic from/to a VM.
+     */
+    public double getTotal(String vm) {
+        return totals.getOrDefault(vm, 0.0);
+    }
+}
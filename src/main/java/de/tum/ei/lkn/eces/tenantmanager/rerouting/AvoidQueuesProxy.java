@@ -1,28 +1,47 @@
 package de.tum.ei.lkn.eces.tenantmanager.rerouting;
 
-import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
 import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.routing.proxies.PathProxy;
 import de.tum.ei.lkn.eces.routing.proxies.Proxy;
 import de.tum.ei.lkn.eces.routing.requests.Request;
 import de.tum.ei.lkn.eces.routing.responses.Path;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 /**
  * Proxy that can increase the cost of some edges.
  *
+ * getCost() is called for every edge relaxation of the routing algorithm: the edges with an increased cost are kept
+ * in a bitset indexed by the ID of the edges, so that the check neither hashes nor allocates. The proxy is meant to
+ * be reused: clear() only resets the bits that have been set.
+ *
  * @author Amaury Van Bemten
  */
 public class AvoidQueuesProxy extends PathProxy {
-    private double MULTIPLIER = 30000;
+    public static final double DEFAULT_MULTIPLIER = 30000;
+
+    private double multiplier;
+    private final BitSet highCostEdges;
+    private int[] setIndices; // indices set in highCostEdges (for clear())
+    private int nSetIndices;
+    private PathProxy underlyingProxy;
 
-    private Set<Edge> highCostEdges = new HashSet<>();
-    private DetServProxy underlyingProxy;
+    public AvoidQueuesProxy(PathProxy proxy) {
+        this(proxy, DEFAULT_MULTIPLIER);
+    }
 
-    public AvoidQueuesProxy(DetServProxy proxy) {
+    /**
+     * @param proxy underlying proxy.
+     * @param multiplier factor by which the cost of the edges is increased.
+     */
+    public AvoidQueuesProxy(PathProxy proxy, double multiplier) {
         underlyingProxy = proxy;
+        this.multiplier = multiplier;
+        this.highCostEdges = new BitSet();
+        this.setIndices = new int[64];
+        this.nSetIndices = 0;
     }
 
     /**
@@ -30,7 +49,57 @@ public class AvoidQueuesProxy extends PathProxy {
      * @param edge the Edge of a queue.
      */
     public void addQueue(Edge edge) {
-        highCostEdges.add(edge);
+        int index = getIndex(edge);
+        if(!highCostEdges.get(index)) {
+            highCostEdges.set(index);
+            if(nSetIndices == setIndices.length)
+                setIndices = Arrays.copyOf(setIndices, setIndices.length * 2);
+            setIndices[nSetIndices++] = index;
+        }
+    }
+
+    /**
+     * Increases the cost of several queues.
+     * @param edges Edges of queues.
+     * @param from index of the first edge to add.
+     * @param to index after the last edge to add.
+     */
+    public void addQueues(Edge[] edges, int from, int to) {
+        for(int i = from; i < to; i++)
+            addQueue(edges[i]);
+    }
+
+    public void addQueues(Edge[] edges) {
+        addQueues(edges, 0, edges.length);
+    }
+
+    public void addQueues(List<Edge> edges) {
+        for(int i = 0; i < edges.size(); i++)
+            addQueue(edges.get(i));
+    }
+
+    /**
+     * @return true if the cost of an edge is increased.
+     */
+    public boolean isHighCost(Edge edge) {
+        return highCostEdges.get(getIndex(edge));
+    }
+
+    /**
+     * Resets the cost of all the queues.
+     */
+    public void clear() {
+        for(int i = 0; i < nSetIndices; i++)
+            highCostEdges.clear(setIndices[i]);
+        nSetIndices = 0;
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    public void setMultiplier(double multiplier) {
+        this.multiplier = multiplier;
     }
 
     public Proxy getProxy() {
@@ -49,8 +118,8 @@ public class AvoidQueuesProxy extends PathProxy {
 
     @Override
     public double getCost(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
-        if(highCostEdges.contains(edge))
-            return MULTIPLIER * underlyingProxy.getCost(iterable, edge, doubles, request, b);
+        if(highCostEdges.get(getIndex(edge)))
+            return multiplier * underlyingProxy.getCost(iterable, edge, doubles, request, b);
         else
             return underlyingProxy.getCost(iterable, edge, doubles, request, b);
     }
@@ -99,4 +168,8 @@ public class AvoidQueuesProxy extends PathProxy {
     public double[] getConstraintsBounds(Request request) {
         return underlyingProxy.getConstraintsBounds(request);
     }
+
+    private static int getIndex(Edge edge) {
+        return Math.toIntExact(edge.getId());
+    }
 }
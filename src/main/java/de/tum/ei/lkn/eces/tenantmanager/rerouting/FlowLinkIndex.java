@@ -0,0 +1,92 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.core.Entity;
+import de.tum.ei.lkn.eces.graph.Edge;
+
+import java.util.*;
+
+/**
+ * Index of the flows going through each physical link, used to select the flows to reroute.
+ *
+ * Each flow Entity gets a slot (a small integer, reused after the flow is removed) and each link a BitSet of the slots
+ * of its flows: the flows going through a set of links are the union of their BitSets.
+ *
+ * @author Amaury Van Bemten
+ */
+public class FlowLinkIndex {
+    private final Map<Entity, Integer> slots;
+    private final Map<Entity, Edge[]> linksOfFlows;
+    private final Map<Edge, BitSet> flowsOfLinks;
+    private final Deque<Integer> freeSlots;
+    private Entity[] entities;
+
+    public FlowLinkIndex() {
+        this.slots = new HashMap<>();
+        this.linksOfFlows = new HashMap<>();
+        this.flowsOfLinks = new HashMap<>();
+        this.freeSlots = new ArrayDeque<>();
+        this.entities = new Entity[64];
+    }
+
+    /**
+     * Adds (or moves) a flow.
+     * @param flowEntity Entity holding the path of the flow.
+     * @param linkEdges edges of the link graph used by the flow.
+     */
+    public synchronized void add(Entity flowEntity, Edge[] linkEdges) {
+        remove(flowEntity);
+
+        Integer slot = freeSlots.poll();
+        if(slot == null) {
+            slot = slots.size();
+            if(slot == entities.length)
+                entities = Arrays.copyOf(entities, entities.length * 2);
+        }
+        slots.put(flowEntity, slot);
+        entities[slot] = flowEntity;
+        linksOfFlows.put(flowEntity, linkEdges);
+        for(Edge linkEdge : linkEdges)
+            flowsOfLinks.computeIfAbsent(linkEdge, edge -> new BitSet()).set(slot);
+    }
+
+    /**
+     * Removes a flow (nothing happens if the flow is not in the index).
+     * @param flowEntity Entity holding the path of the flow.
+     */
+    public synchronized void remove(Entity flowEntity) {
+        Integer slot = slots.remove(flowEntity);
+        if(slot == null)
+            return;
+
+        for(Edge linkEdge : linksOfFlows.remove(flowEntity)) {
+            BitSet flows = flowsOfLinks.get(linkEdge);
+            flows.clear(slot);
+            if(flows.isEmpty())
+                flowsOfLinks.remove(linkEdge);
+        }
+        entities[slot] = null;
+        freeSlots.push(slot);
+    }
+
+    /**
+     * @param linkEdges edges of the link graph.
+     * @return the entities of the flows going through at least one of the links.
+     */
+    public synchronized List<Entity> getFlowsOn(Iterable<Edge> linkEdges) {
+        BitSet union = new BitSet();
+        for(Edge linkEdge : linkEdges) {
+            BitSet flows = flowsOfLinks.get(linkEdge);
+            if(flows != null)
+                union.or(flows);
+        }
+
+        List<Entity> flowEntities = new ArrayList<>(union.cardinality());
+        for(int slot = union.nextSetBit(0); slot >= 0; slot = union.nextSetBit(slot + 1))
+            flowEntities.add(entities[slot]);
+        return flowEntities;
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+}
@@ -0,0 +1,92 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.core.Entity;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Orders candidate flows for rerouting by a score computed once per flow (decorate-sort-undecorate): by decreasing
+ * score, ties being broken by increasing entity ID.
+ *
+ * When only the first k flows are needed, top() keeps them in a bounded heap instead of sorting all of them.
+ *
+ * @author Amaury Van Bemten
+ */
+public final class FlowRanking {
+    private static final Comparator<ScoredFlow> ORDER = (a, b) -> {
+        int byScore = Double.compare(b.score, a.score);
+        return byScore != 0 ? byScore : Long.compare(a.id, b.id);
+    };
+
+    private FlowRanking() {
+    }
+
+    /**
+     * Sorts flows in place.
+     * @param flows entities of the flows.
+     * @param scores score of each flow (same index as in flows).
+     */
+    public static void sort(List<Entity> flows, double[] scores) {
+        ScoredFlow[] scoredFlows = decorate(flows, scores);
+        Arrays.sort(scoredFlows, ORDER);
+        for(int i = 0; i < scoredFlows.length; i++)
+            flows.set(i, scoredFlows[i].entity);
+    }
+
+    /**
+     * Selects the first flows in the order of sort(), without sorting all the flows: O(n log k).
+     * @param flows entities of the flows (not modified).
+     * @param scores score of each flow (same index as in flows).
+     * @param k number of flows to select.
+     * @return the first k flows (or all of them if there are less), in order.
+     */
+    public static List<Entity> top(List<Entity> flows, double[] scores, int k) {
+        if(k <= 0)
+            return new ArrayList<>();
+
+        // Head of the heap: worst of the flows kept so far
+        PriorityQueue<ScoredFlow> heap = new PriorityQueue<>(Math.min(k, flows.size()) + 1, ORDER.reversed());
+        for(int i = 0; i < flows.size(); i++) {
+            if(heap.size() < k) {
+                heap.add(new ScoredFlow(flows.get(i), scores[i]));
+            }
+            else {
+                ScoredFlow candidate = new ScoredFlow(flows.get(i), scores[i]);
+                if(ORDER.compare(candidate, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(candidate);
+                }
+            }
+        }
+
+        ScoredFlow[] scoredFlows = heap.toArray(new ScoredFlow[0]);
+        Arrays.sort(scoredFlows, ORDER);
+        List<Entity> topFlows = new ArrayList<>(scoredFlows.length);
+        for(ScoredFlow scoredFlow : scoredFlows)
+            topFlows.add(scoredFlow.entity);
+        return topFlows;
+    }
+
+    private static ScoredFlow[] decorate(List<Entity> flows, double[] scores) {
+        ScoredFlow[] scoredFlows = new ScoredFlow[flows.size()];
+        for(int i = 0; i < scoredFlows.length; i++)
+            scoredFlows[i] = new ScoredFlow(flows.get(i), scores[i]);
+        return scoredFlows;
+    }
+
+    private static final class ScoredFlow {
+        private final Entity entity;
+        private final long id;
+        private final double score;
+
+        ScoredFlow(Entity entity, double score) {
+            this.entity = entity;
+            this.id = entity.getId();
+            this.score = score;
+        }
+    }
+}
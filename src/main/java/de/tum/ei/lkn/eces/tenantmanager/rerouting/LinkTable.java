@@ -0,0 +1,63 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.network.Link;
+import de.tum.ei.lkn.eces.network.mappers.LinkMapper;
+import de.tum.ei.lkn.eces.network.mappers.ToNetworkMapper;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the correspondence between the edges of the link graph (physical links) and the edges of the queue
+ * graph (queues of these links), so that the rerouting does not go through the mappers for every edge it looks at.
+ *
+ * @author Amaury Van Bemten
+ */
+public class LinkTable {
+    private final LinkMapper linkMapper;
+    private final ToNetworkMapper toNetworkMapper;
+    private final ConcurrentMap<Edge, Edge[]> queueEdges; // link edge -> queue edges
+    private final ConcurrentMap<Edge, Edge> linkEdges; // queue edge -> link edge
+
+    public LinkTable(LinkMapper linkMapper, ToNetworkMapper toNetworkMapper) {
+        this.linkMapper = linkMapper;
+        this.toNetworkMapper = toNetworkMapper;
+        this.queueEdges = new ConcurrentHashMap<>();
+        this.linkEdges = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @param linkEdge edge of the link graph.
+     * @return the edges of the queues of the link.
+     */
+    public Edge[] getQueueEdges(Edge linkEdge) {
+        return queueEdges.computeIfAbsent(linkEdge, edge -> getLink(edge).getQueueEdges());
+    }
+
+    /**
+     * @param queueEdge edge of the queue graph.
+     * @return the edge of the link of the queue.
+     */
+    public Edge getLinkEdge(Edge queueEdge) {
+        return linkEdges.computeIfAbsent(queueEdge, edge -> getLink(edge).getLinkEdge());
+    }
+
+    /**
+     * Forgets about links that have been removed.
+     * @param removedLinkEdges edges of the link graph that have been removed.
+     */
+    public void invalidate(Collection<Edge> removedLinkEdges) {
+        for(Edge linkEdge : removedLinkEdges) {
+            Edge[] queues = queueEdges.remove(linkEdge);
+            if(queues != null)
+                for(Edge queueEdge : queues)
+                    linkEdges.remove(queueEdge);
+        }
+    }
+
+    private Link getLink(Edge edge) {
+        return linkMapper.get(toNetworkMapper.get(edge.getEntity()).getNetworkEntity());
+    }
+}
@@ -0,0 +1,99 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.proxies.PathProxy;
+import de.tum.ei.lkn.eces.routing.proxies.Proxy;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+
+import java.util.BitSet;
+
+/**
+ * Proxy only giving access to the edges of a given path, so that a request is routed along this path. Used to route a
+ * flow back onto its previous path when reroutings are undone.
+ *
+ * @author Amaury Van Bemten
+ */
+public class PinnedPathProxy extends PathProxy {
+    private final BitSet pathEdges;
+    private final PathProxy underlyingProxy;
+
+    /**
+     * @param proxy underlying proxy.
+     * @param path the path to which requests are restricted.
+     */
+    public PinnedPathProxy(PathProxy proxy, Path path) {
+        underlyingProxy = proxy;
+        pathEdges = new BitSet();
+        for(Edge edge : path.getPath())
+            pathEdges.set(getIndex(edge));
+    }
+
+    public Proxy getProxy() {
+        return underlyingProxy;
+    }
+
+    @Override
+    public double[] getNewParameters(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        return underlyingProxy.getNewParameters(iterable, edge, doubles, request, b);
+    }
+
+    @Override
+    public boolean hasAccess(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        return pathEdges.get(getIndex(edge)) && underlyingProxy.hasAccess(iterable, edge, doubles, request, b);
+    }
+
+    @Override
+    public double getCost(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        return underlyingProxy.getCost(iterable, edge, doubles, request, b);
+    }
+
+    @Override
+    public double[] getConstraintsValues(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        return underlyingProxy.getConstraintsValues(iterable, edge, doubles, request, b);
+    }
+
+    @Override
+    public boolean register(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request) {
+        return underlyingProxy.register(iterable, edge, doubles, request);
+    }
+
+    @Override
+    public boolean deregister(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request) {
+        return underlyingProxy.deregister(iterable, edge, doubles, request);
+    }
+
+    @Override
+    public boolean register(Path path, Request request) {
+        return underlyingProxy.register(path, request);
+    }
+
+    @Override
+    public boolean deregister(Path path, Request request) {
+        return underlyingProxy.deregister(path, request);
+    }
+
+    @Override
+    public boolean handle(Request request, boolean b) {
+        return underlyingProxy.handle(request, b);
+    }
+
+    @Override
+    public int getNumberOfConstraints(Request request) {
+        return underlyingProxy.getNumberOfConstraints(request);
+    }
+
+    @Override
+    public int getNumberOfParameters(Request request) {
+        return underlyingProxy.getNumberOfParameters(request);
+    }
+
+    @Override
+    public double[] getConstraintsBounds(Request request) {
+        return underlyingProxy.getConstraintsBounds(request);
+    }
+
+    private static int getIndex(Edge edge) {
+        return Math.toIntExact(edge.getId());
+    }
+}
@@ -0,0 +1,126 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.proxies.PathProxy;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Proxy forwarding the calls for some requests to a specific proxy and all the other calls to an underlying proxy.
+ *
+ * It is installed once on the routing algorithm, whose proxy is then never replaced. While the new route of a flow
+ * being rerouted is computed, an override increases the cost of some edges for that request only: concurrent
+ * requests are still routed with the underlying proxy.
+ *
+ * @author Amaury Van Bemten
+ */
+public class RequestScopedProxy extends PathProxy {
+    private final PathProxy underlyingProxy;
+    private final ConcurrentMap<Request, PathProxy> overrides;
+
+    public RequestScopedProxy(PathProxy proxy) {
+        underlyingProxy = proxy;
+        overrides = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Uses a specific proxy for a request, until removeOverride() is called.
+     * @param request the request.
+     * @param proxy the proxy to use for the request.
+     */
+    public void setOverride(Request request, PathProxy proxy) {
+        overrides.put(request, proxy);
+    }
+
+    public void removeOverride(Request request) {
+        overrides.remove(request);
+    }
+
+    public PathProxy getProxy() {
+        return underlyingProxy;
+    }
+
+    /**
+     * @return the proxy to use for a request or null if the underlying proxy should be used.
+     */
+    private PathProxy getOverride(Request request) {
+        if(overrides.isEmpty())
+            return null;
+        return overrides.get(request);
+    }
+
+    @Override
+    public double[] getNewParameters(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.getNewParameters(iterable, edge, doubles, request, b) : underlyingProxy.getNewParameters(iterable, edge, doubles, request, b);
+    }
+
+    @Override
+    public boolean hasAccess(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.hasAccess(iterable, edge, doubles, request, b) : underlyingProxy.hasAccess(iterable, edge, doubles, request, b);
+    }
+
+    @Override
+    public double getCost(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.getCost(iterable, edge, doubles, request, b) : underlyingProxy.getCost(iterable, edge, doubles, request, b);
+    }
+
+    @Override
+    public double[] getConstraintsValues(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.getConstraintsValues(iterable, edge, doubles, request, b) : underlyingProxy.getConstraintsValues(iterable, edge, doubles, request, b);
+    }
+
+    @Override
+    public boolean register(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.register(iterable, edge, doubles, request) : underlyingProxy.register(iterable, edge, doubles, request);
+    }
+
+    @Override
+    public boolean deregister(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.deregister(iterable, edge, doubles, request) : underlyingProxy.deregister(iterable, edge, doubles, request);
+    }
+
+    @Override
+    public boolean register(Path path, Request request) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.register(path, request) : underlyingProxy.register(path, request);
+    }
+
+    @Override
+    public boolean deregister(Path path, Request request) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.deregister(path, request) : underlyingProxy.deregister(path, request);
+    }
+
+    @Override
+    public boolean handle(Request request, boolean b) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.handle(request, b) : underlyingProxy.handle(request, b);
+    }
+
+    @Override
+    public int getNumberOfConstraints(Request request) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.getNumberOfConstraints(request) : underlyingProxy.getNumberOfConstraints(request);
+    }
+
+    @Override
+    public int getNumberOfParameters(Request request) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.getNumberOfParameters(request) : underlyingProxy.getNumberOfParameters(request);
+    }
+
+    @Override
+    public double[] getConstraintsBounds(Request request) {
+        PathProxy override = getOverride(request);
+        return override != null ? override.getConstraintsBounds(request) : underlyingProxy.getConstraintsBounds(request);
+    }
+}
@@ -0,0 +1,85 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.routing.proxies.PathProxy;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registers and deregisters paths directly on a proxy (i.e., on the resource reservations, without going through the
+ * RoutingSystem and its components) and remembers how to undo each of these operations.
+ *
+ * Used for dry runs: the reservations are modified as they would be by the real operations, so that routing sees the
+ * same state, and rollback() then brings them back to their initial state. The caller must make sure nobody else
+ * modifies the reservations until rollback() returns.
+ *
+ * @author Amaury Van Bemten
+ */
+public class ReservationUndoLog {
+    private final PathProxy proxy;
+    private final List<Path> paths;
+    private final List<Request> requests;
+    private final List<Boolean> registered; // true if the path was registered, false if it was deregistered
+
+    public ReservationUndoLog(PathProxy proxy) {
+        this.proxy = proxy;
+        this.paths = new ArrayList<>();
+        this.requests = new ArrayList<>();
+        this.registered = new ArrayList<>();
+    }
+
+    /**
+     * Registers a path.
+     * @param path the path.
+     * @param request request of the path (its entity must hold the data needed by the proxy).
+     * @return true if the path could be registered.
+     */
+    public boolean register(Path path, Request request) {
+        if(!proxy.register(path, request))
+            return false;
+        log(path, request, true);
+        return true;
+    }
+
+    /**
+     * Deregisters a path.
+     * @param path the path.
+     * @param request request with which the path was registered.
+     * @return true if the path could be deregistered.
+     */
+    public boolean deregister(Path path, Request request) {
+        if(!proxy.deregister(path, request))
+            return false;
+        log(path, request, false);
+        return true;
+    }
+
+    /**
+     * @return the number of operations that rollback() would undo.
+     */
+    public int size() {
+        return paths.size();
+    }
+
+    /**
+     * Undoes all the operations, in reverse order.
+     */
+    public void rollback() {
+        for(int i = paths.size() - 1; i >= 0; i--) {
+            boolean undone = registered.get(i) ? proxy.deregister(paths.get(i), requests.get(i)) : proxy.register(paths.get(i), requests.get(i));
+            if(!undone)
+                throw new RuntimeException("could not undo the " + (registered.get(i) ? "registration" : "deregistration") + " of " + paths.get(i));
+        }
+        paths.clear();
+        requests.clear();
+        registered.clear();
+    }
+
+    private void log(Path path, Request request, boolean wasRegistered) {
+        paths.add(path);
+        requests.add(request);
+        registered.add(wasRegistered);
+    }
+}
@@ -0,0 +1,103 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.Node;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the queues whose cost is increased because they are on the shortest paths between two nodes (the "SP"
+ * part of the CostIncreaseTypes).
+ *
+ * For a given pair and scope, these queues only depend on the topology: they are computed once and kept as an
+ * unmodifiable list (shared by all the callers) until the topology changes.
+ *
+ * @author Amaury Van Bemten
+ */
+public class ShortestPathQueueSets {
+    /**
+     * Shortest paths whose queues are selected.
+     */
+    public enum Scope {
+        ONE_SHORTEST_PATH,      // _AND_SP
+        ALL_SHORTEST_PATHS,     // _AND_ALL_SP
+        ALL_TWO_SHORTEST_PATHS, // _AND_ALL_TWO_SP
+    }
+
+    private final ConcurrentMap<Key, List<Edge>> queues;
+
+    public ShortestPathQueueSets() {
+        this.queues = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return the shortest paths a cost increase type selects or null if it does not select any.
+     */
+    public static Scope getScope(CostIncreaseTypes costIncreaseType) {
+        switch (costIncreaseType) {
+            case PHYSICAL_LINK_INCREASE_AND_SP:
+            case QUEUE_LINK_INCREASE_AND_SP:
+                return Scope.ONE_SHORTEST_PATH;
+            case PHYSICAL_LINK_INCREASE_AND_ALL_SP:
+            case QUEUE_LINK_INCREASE_AND_ALL_SP:
+                return Scope.ALL_SHORTEST_PATHS;
+            case PHYSICAL_LINK_INCREASE_AND_ALL_TWO_SP:
+            case QUEUE_LINK_INCREASE_AND_ALL_TWO_SP:
+                return Scope.ALL_TWO_SHORTEST_PATHS;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param linkSource source node in the link graph.
+     * @param linkDestination destination node in the link graph.
+     * @param scope shortest paths to consider.
+     * @param loader computes the queues if they are not cached yet.
+     * @return the queues (unmodifiable).
+     */
+    public List<Edge> get(Node linkSource, Node linkDestination, Scope scope, Supplier<Edge[]> loader) {
+        return queues.computeIfAbsent(new Key(linkSource, linkDestination, scope), key -> Collections.unmodifiableList(Arrays.asList(loader.get().clone())));
+    }
+
+    /**
+     * Forgets all the queues (to be called when the topology changes).
+     */
+    public void clear() {
+        queues.clear();
+    }
+
+    public int size() {
+        return queues.size();
+    }
+
+    private static final class Key {
+        private final Node source;
+        private final Node destination;
+        private final Scope scope;
+
+        Key(Node source, Node destination, Scope scope) {
+            this.source = source;
+            this.destination = destination;
+            this.scope = scope;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if(!(other instanceof Key))
+                return false;
+            Key otherKey = (Key) other;
+            return otherKey.source == source && otherKey.destination == destination && otherKey.scope == scope;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * System.identityHashCode(source) + System.identityHashCode(destination)) + scope.ordinal();
+        }
+    }
+}
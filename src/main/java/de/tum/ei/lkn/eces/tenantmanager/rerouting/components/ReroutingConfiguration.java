@@ -3,6 +3,7 @@ package de.tum.ei.lkn.eces.tenantmanager.rerouting.components;
 import de.tum.ei.lkn.eces.core.Component;
 import de.tum.ei.lkn.eces.core.annotations.ComponentBelongsTo;
 import de.tum.ei.lkn.eces.tenantmanager.TenantManagerSystem;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.AvoidQueuesProxy;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.CostIncreaseTypes;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.FlowSelectionTypes;
 import de.tum.ei.lkn.eces.tenantmanager.rerouting.LimitReroutingTypes;
@@ -21,13 +22,26 @@ public class ReroutingConfiguration extends Component {
 	private final CostIncreaseTypes costIncreaseTypes;
 	private final LimitReroutingTypes limitReroutingTypes;
 	private final int rerouteLimit;
+	private final double costIncreaseMultiplier;
 
 	public ReroutingConfiguration(FlowSelectionTypes flowSelectionTypes, SortFlowTypes sortFlowTypes, CostIncreaseTypes costIncreaseTypes, LimitReroutingTypes limitReroutingTypes, int rerouteLimit) {
+		this(flowSelectionTypes, sortFlowTypes, costIncreaseTypes, limitReroutingTypes, rerouteLimit, AvoidQueuesProxy.DEFAULT_MULTIPLIER);
+	}
+
+	/**
+	 * @param costIncreaseMultiplier factor by which the cost of the edges selected by the cost increase type is
+	 *                               increased.
+	 */
+	public ReroutingConfiguration(FlowSelectionTypes flowSelectionTypes, SortFlowTypes sortFlowTypes, CostIncreaseTypes costIncreaseTypes, LimitReroutingTypes limitReroutingTypes, int rerouteLimit, double costIncreaseMultiplier) {
 		this.flowSelectionTypes = flowSelectionTypes;
 		this.sortFlowTypes = sortFlowTypes;
 		this.costIncreaseTypes = costIncreaseTypes;
 		this.limitReroutingTypes = limitReroutingTypes;
 		this.rerouteLimit = rerouteLimit;
+		this.costIncreaseMultiplier = costIncreaseMultiplier;
+
+		if (costIncreaseMultiplier <= 0)
+			throw new RuntimeException("the cost increase multiplier must be strictly positive, got " + costIncreaseMultiplier);
 
 		if (this.limitReroutingTypes == LimitReroutingTypes.PERCENT) {
 			if (rerouteLimit < 0 || rerouteLimit > 100)
@@ -54,4 +68,8 @@ public class ReroutingConfiguration extends Component {
 	public int getRerouteLimit() {
 		return rerouteLimit;
 	}
+
+	public double getCostIncreaseMultiplier() {
+		return costIncreaseMultiplier;
+	}
 }
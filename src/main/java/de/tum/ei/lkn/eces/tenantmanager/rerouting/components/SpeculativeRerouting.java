@@ -0,0 +1,55 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting.components;
+
+import de.tum.ei.lkn.eces.core.Component;
+import de.tum.ei.lkn.eces.core.annotations.ComponentBelongsTo;
+import de.tum.ei.lkn.eces.routing.algorithms.RoutingAlgorithm;
+import de.tum.ei.lkn.eces.tenantmanager.TenantManagerSystem;
+
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+/**
+ * Component enabling speculative rerouting on a given network.
+ * The component should be attached to the Entity of the Network object, next to its ReroutingConfiguration.
+ *
+ * Instead of rerouting the flows one at a time until the new flow fits, the whole rerouting loop is first simulated
+ * ("what-if"): the new paths of the rerouted flows and of the new flow are only registered through an undo log,
+ * which is rolled back afterwards. The new routes of the next "parallelism" flows are computed concurrently on the
+ * current reservations and computed again once a flow has been rerouted in the what-if (the reservations changed).
+ * The network is then only changed if the new flow fits: the flows the what-if rerouted are rerouted in one step,
+ * followed by the new flow. A rejected flow hence leaves no state behind (no flow is rerouted), while the accepted
+ * ones are the same as without speculative rerouting.
+ *
+ * The what-if routing is done by instances of the routing algorithm created by the given factory (one per concurrent
+ * speculation). They must compute the same routes as the routing algorithm of the TenantManagerSystem and use a
+ * DetServProxy on the same model.
+ *
+ * @author Amaury Van Bemten
+ */
+@ComponentBelongsTo(system = TenantManagerSystem.class)
+public class SpeculativeRerouting extends Component {
+	private final int parallelism;
+	private final ExecutorService executor;
+	private final Supplier<RoutingAlgorithm> routingAlgorithmFactory;
+
+	public SpeculativeRerouting(int parallelism, ExecutorService executor, Supplier<RoutingAlgorithm> routingAlgorithmFactory) {
+		this.parallelism = parallelism;
+		this.executor = executor;
+		this.routingAlgorithmFactory = routingAlgorithmFactory;
+
+		if (parallelism < 1)
+			throw new RuntimeException("the parallelism of speculative rerouting must be strictly positive, got " + parallelism);
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	public Supplier<RoutingAlgorithm> getRoutingAlgorithmFactory() {
+		return routingAlgorithmFactory;
+	}
+}
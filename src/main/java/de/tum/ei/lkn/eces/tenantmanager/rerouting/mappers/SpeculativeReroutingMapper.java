@@ -0,0 +1,11 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting.mappers;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Mapper;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.SpeculativeRerouting;
+
+public class SpeculativeReroutingMapper extends Mapper<SpeculativeRerouting> {
+	public SpeculativeReroutingMapper(Controller controller) {
+		super(controller);
+	}
+}
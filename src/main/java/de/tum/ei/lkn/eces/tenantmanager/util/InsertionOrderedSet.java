@@ -0,0 +1,78 @@
+package de.tum.ei.lkn.eces.tenantmanager.util;
+
+import java.util.*;
+
+/**
+ * Set keeping the insertion order with O(1) add/remove/contains, which can be exposed as an unmodifiable List.
+ *
+ * Elements are keyed by their equals()/hashCode(), i.e., by identity for ECES components.
+ * The List view is backed by the set: size() and contains() are O(1) and iterating does not copy anything. get()
+ * is served from an array snapshot of the set, only rebuilt after a modification.
+ *
+ * @author Amaury Van Bemten
+ */
+public class InsertionOrderedSet<E> {
+    private final Set<E> elements;
+    private final List<E> view;
+    private Object[] snapshot; // null when outdated
+
+    public InsertionOrderedSet() {
+        this.elements = new LinkedHashSet<>();
+        this.view = new UnmodifiableView();
+        this.snapshot = null;
+    }
+
+    public boolean add(E element) {
+        if(!elements.add(element))
+            return false;
+        snapshot = null;
+        return true;
+    }
+
+    public boolean remove(Object element) {
+        if(!elements.remove(element))
+            return false;
+        snapshot = null;
+        return true;
+    }
+
+    public boolean contains(Object element) {
+        return elements.contains(element);
+    }
+
+    public int size() {
+        return elements.size();
+    }
+
+    /**
+     * @return an unmodifiable List view of the set.
+     */
+    public List<E> asUnmodifiableList() {
+        return view;
+    }
+
+    private class UnmodifiableView extends AbstractList<E> {
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            if(snapshot == null)
+                snapshot = elements.toArray();
+            return (E) snapshot[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return elements.contains(o);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return Collections.unmodifiableSet(elements).iterator();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package de.tum.ei.lkn.eces.tenantmanager;
 
 import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Entity;
 import de.tum.ei.lkn.eces.core.util.EventCountTestSystem;
 import de.tum.ei.lkn.eces.dnm.DNMSystem;
 import de.tum.ei.lkn.eces.dnm.ResidualMode;
@@ -16,11 +17,14 @@ import de.tum.ei.lkn.eces.dnm.config.costmodels.values.QueuePriority;
 import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
 import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
 import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.MHM.MHMRateRatiosAllocation;
+import de.tum.ei.lkn.eces.graph.Edge;
 import de.tum.ei.lkn.eces.graph.GraphSystem;
 import de.tum.ei.lkn.eces.network.Host;
 import de.tum.ei.lkn.eces.network.Network;
 import de.tum.ei.lkn.eces.network.NetworkNode;
 import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.network.mappers.LinkMapper;
+import de.tum.ei.lkn.eces.network.mappers.ToNetworkMapper;
 import de.tum.ei.lkn.eces.network.util.NetworkInterface;
 import de.tum.ei.lkn.eces.routing.RoutingSystem;
 import de.tum.ei.lkn.eces.routing.algorithms.RoutingAlgorithm;
@@ -28,7 +32,19 @@ import de.tum.ei.lkn.eces.routing.algorithms.csp.unicast.cbf.CBFAlgorithm;
 import de.tum.ei.lkn.eces.routing.mappers.PathListMapper;
 import de.tum.ei.lkn.eces.routing.mappers.PathMapper;
 import de.tum.ei.lkn.eces.routing.pathlist.PathListSystem;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
 import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+import de.tum.ei.lkn.eces.tenantmanager.matching.FiveTupleMatching;
+import de.tum.ei.lkn.eces.tenantmanager.metrics.AdmissionPhase;
+import de.tum.ei.lkn.eces.tenantmanager.placement.HostCatalog;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.*;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.ReroutingConfiguration;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.ReroutingStats;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.SpeculativeRerouting;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.mappers.ReroutingConfigurationMapper;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.mappers.ReroutingStatsMapper;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.mappers.SpeculativeReroutingMapper;
 import org.apache.log4j.BasicConfigurator;
 import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
@@ -37,6 +53,9 @@ import org.junit.Test;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.*;
 
@@ -55,6 +74,8 @@ public class TenantManagerSystemTest {
     private PathMapper pathMapper;
     private PathListSystem pathListSystem;
     private PathListMapper pathListMapper;
+    private RoutingAlgorithm routingAlgorithm;
+    private NetworkNode[] reroutingSwitches; // switches of createReroutingTopology()
 
     @Before
     public void setUp() {
@@ -87,8 +108,8 @@ public class TenantManagerSystemTest {
 
         // Routing
         new RoutingSystem(controller);
-        RoutingAlgorithm cbf = new CBFAlgorithm(controller);
-        cbf.setProxy(proxy);
+        routingAlgorithm = new CBFAlgorithm(controller);
+        routingAlgorithm.setProxy(proxy);
         modelConfig.initCostModel(controller);
         pathMapper = new PathMapper(controller);
         pathListSystem = new PathListSystem(controller);
@@ -99,7 +120,7 @@ public class TenantManagerSystemTest {
         DetServConfigMapper modelingConfigMapper = new DetServConfigMapper(controller);
         modelingConfigMapper.attachComponent(network.getQueueGraph(), modelConfig);
 
-        tenantManagerSystem = new TenantManagerSystem(network, cbf, controller);
+        tenantManagerSystem = new TenantManagerSystem(network, routingAlgorithm, controller);
         countTestSystem = new EventCountTestSystem(controller);
     }
 
@@ -143,6 +164,8 @@ public class TenantManagerSystemTest {
             tenant = tenantManagerSystem.createTenant("third tenant");
             assertEquals(tenant.getName(), "third tenant");
             assertEquals(tenant.getVirtualMachines().size(), 0);
+            assertSame(tenantManagerSystem.getTenant("third tenant"), tenant);
+            assertNull(tenantManagerSystem.getTenant("fourth tenant"));
         }
         catch(TenantManagerException e) {
             fail();
@@ -293,6 +316,10 @@ public class TenantManagerSystemTest {
             assertTrue(vm2.getFlows().contains(flow));
             assertTrue(pathMapper.isIn(flow));
             assertEquals(pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size(), 1);
+            // Lookup by matching only works from the source VM
+            assertSame(vm1.getFlow(new FiveTupleMatching(InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 15, 10)), flow);
+            assertNull(vm2.getFlow(new FiveTupleMatching(InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 15, 10)));
+            assertNull(vm1.getFlow(new FiveTupleMatching(InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 10)));
         } catch (TenantManagerException e) {
             fail();
         }
@@ -390,6 +417,548 @@ public class TenantManagerSystemTest {
         }
     }
 
+    @Test
+    public void testCreateFlows() throws UnknownHostException {
+        VirtualMachine vm1 = null, vm2 = null;
+        Tenant tenant;
+
+        Host lundi = networkingSystem.createHost(network, "lundi");
+        Host mardi = networkingSystem.createHost(network, "mardi");
+        NetworkNode lundiNode = networkingSystem.addInterface(lundi, new NetworkInterface("1", "00:00:00:00:00:00"));
+        NetworkNode mardiNode = networkingSystem.addInterface(mardi, new NetworkInterface("2", "00:00:00:00:00:00"));
+        NetworkNode node = networkingSystem.createNode(network);
+        networkingSystem.createLinkWithPriorityScheduling(lundiNode, node, 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(node, lundiNode, 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(mardiNode, node, 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(node, mardiNode, 1e9 / 8, 0, new double[]{30000});
+
+        try {
+            tenant = tenantManagerSystem.createTenant("first tenant");
+            // Creating two VMs on the two different hosts
+            vm1 = tenantManagerSystem.createVirtualMachine(tenant, "newVm", lundi);
+            vm2 = tenantManagerSystem.createVirtualMachine(tenant, "newVm2", mardi);
+        }
+        catch(TenantManagerException e) {
+            fail();
+        }
+        countTestSystem.doFullCheck(Tenant.class, 1, 2, 0);
+        countTestSystem.doFullCheck(VirtualMachine.class, 2, 2, 0);
+
+        List<FlowSpec> specs = new ArrayList<>();
+        specs.add(new FlowSpec("f1", vm1, vm2, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 15, 10, 20, 5, 10));
+        // same matching as the first one
+        specs.add(new FlowSpec("f2", vm1, vm2, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 15, 10, 20, 5, 10));
+        // invalid burst
+        specs.add(new FlowSpec("f3", vm1, vm2, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 16, 10, 20, -1, 10));
+        // too large
+        specs.add(new FlowSpec("f4", vm1, vm2, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 17, 10, 1000000000L, 5, 10));
+        specs.add(new FlowSpec("f5", vm2, vm1, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 15, 10, 20, 5, 10));
+        specs.add(null);
+
+        tenantManagerSystem.getMetrics().setEnabled(true);
+        List<FlowCreationResult> results = tenantManagerSystem.createFlows(specs);
+        assertEquals(results.size(), specs.size());
+        assertTrue(results.get(0).isAccepted());
+        assertNotNull(results.get(0).getPath());
+        assertFalse(results.get(1).isAccepted());
+        assertNotNull(results.get(1).getFailureReason());
+        assertFalse(results.get(2).isAccepted());
+        assertFalse(results.get(3).isAccepted());
+        assertTrue(results.get(4).isAccepted());
+        assertFalse(results.get(5).isAccepted());
+
+        assertEquals(vm1.getFlows().size(), 2);
+        assertEquals(vm2.getFlows().size(), 2);
+        assertTrue(vm1.getFlows().contains(results.get(0).getFlow()));
+        assertTrue(vm1.getFlows().contains(results.get(4).getFlow()));
+        assertEquals(pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size(), 2);
+        countTestSystem.doFullCheck(Flow.class, 2, 0, 0);
+
+        // Every flow is counted, including the ones rejected by the validation
+        assertEquals(tenantManagerSystem.getMetrics().getAcceptedFlows(), 2);
+        assertEquals(tenantManagerSystem.getMetrics().getRejectedFlows(), 4);
+        assertEquals(tenantManagerSystem.getMetrics().getHistogram(AdmissionPhase.TOTAL).getCount(), 6);
+    }
+
+    @Test
+    public void testCreateFlowsDryRun() throws UnknownHostException {
+        VirtualMachine vm1 = null, vm2 = null;
+        Tenant tenant;
+
+        Host lundi = networkingSystem.createHost(network, "lundi");
+        Host mardi = networkingSystem.createHost(network, "mardi");
+        NetworkNode lundiNode = networkingSystem.addInterface(lundi, new NetworkInterface("1", "00:00:00:00:00:00"));
+        NetworkNode mardiNode = networkingSystem.addInterface(mardi, new NetworkInterface("2", "00:00:00:00:00:00"));
+        NetworkNode node = networkingSystem.createNode(network);
+        networkingSystem.createLinkWithPriorityScheduling(lundiNode, node, 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(node, lundiNode, 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(mardiNode, node, 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(node, mardiNode, 1e9 / 8, 0, new double[]{30000});
+
+        try {
+            tenant = tenantManagerSystem.createTenant("first tenant");
+            vm1 = tenantManagerSystem.createVirtualMachine(tenant, "newVm", lundi);
+            vm2 = tenantManagerSystem.createVirtualMachine(tenant, "newVm2", mardi);
+        }
+        catch(TenantManagerException e) {
+            fail();
+        }
+        countTestSystem.doFullCheck(Tenant.class, 1, 2, 0);
+        countTestSystem.doFullCheck(VirtualMachine.class, 2, 2, 0);
+
+        List<FlowSpec> specs = new ArrayList<>();
+        specs.add(new FlowSpec("f1", vm1, vm2, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 15, 10, 20, 5, 10));
+        // same matching as the first one
+        specs.add(new FlowSpec("f2", vm1, vm2, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 15, 10, 20, 5, 10));
+        // too large
+        specs.add(new FlowSpec("f3", vm1, vm2, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 17, 10, 1000000000L, 5, 10));
+        specs.add(new FlowSpec("f4", vm2, vm1, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 15, 10, 20, 5, 10));
+        specs.add(null);
+
+        // Twice: the first dry run must not change anything
+        for(int run = 0; run < 2; run++) {
+            List<DryRunResult> results = tenantManagerSystem.createFlowsDryRun(specs);
+            assertEquals(results.size(), specs.size());
+            assertTrue(results.get(0).isAccepted());
+            assertNotNull(results.get(0).getPath());
+            assertFalse(results.get(1).isAccepted());
+            assertNotNull(results.get(1).getFailureReason());
+            assertFalse(results.get(2).isAccepted());
+            assertTrue(results.get(3).isAccepted());
+            assertFalse(results.get(4).isAccepted());
+
+            assertEquals(vm1.getFlows().size(), 0);
+            assertEquals(vm2.getFlows().size(), 0);
+            assertEquals(pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size(), 0);
+            countTestSystem.doFullCheck(Flow.class, 0, 0, 0);
+        }
+
+        // The real creation gives the same outcome
+        List<FlowCreationResult> results = tenantManagerSystem.createFlows(specs);
+        assertTrue(results.get(0).isAccepted());
+        assertFalse(results.get(1).isAccepted());
+        assertFalse(results.get(2).isAccepted());
+        assertTrue(results.get(3).isAccepted());
+        assertFalse(results.get(4).isAccepted());
+        countTestSystem.doFullCheck(Flow.class, 2, 0, 0);
+    }
+
+    /**
+     * @return a tenant manager rerouting flows with the given configuration on the network of the test.
+     */
+    private TenantManagerSystem createReroutingTenantManager(ReroutingConfiguration reroutingConfiguration) {
+        new ReroutingConfigurationMapper(controller).attachComponent(network.getEntity(), reroutingConfiguration);
+        return new TenantManagerSystem(network, routingAlgorithm, controller);
+    }
+
+    /**
+     * Creates two switches linked directly (1 Gbps) and through a third switch (100 Mbps), and two hosts on each
+     * switch. Once a small flow uses the direct link, a large flow between the two other hosts only fits if the small
+     * flow is rerouted through the third switch.
+     * @return the hosts: the two of the first switch and then the two of the second switch.
+     */
+    private Host[] createReroutingTopology() {
+        NetworkNode[] switches = new NetworkNode[3];
+        reroutingSwitches = switches;
+        for(int i = 0; i < switches.length; i++)
+            switches[i] = networkingSystem.createNode(network);
+        createBidirectionalLink(switches[0], switches[1], 1e9 / 8);
+        createBidirectionalLink(switches[0], switches[2], 1e8 / 8);
+        createBidirectionalLink(switches[2], switches[1], 1e8 / 8);
+
+        Host[] hosts = new Host[4];
+        for(int i = 0; i < hosts.length; i++) {
+            hosts[i] = networkingSystem.createHost(network, "host" + i);
+            NetworkNode hostNode = networkingSystem.addInterface(hosts[i], new NetworkInterface("" + i, "00:00:00:00:00:00"));
+            createBidirectionalLink(hostNode, switches[i / 2], 1e9 / 8);
+        }
+        return hosts;
+    }
+
+    private void createBidirectionalLink(NetworkNode a, NetworkNode b, double rate) {
+        networkingSystem.createLinkWithPriorityScheduling(a, b, rate, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(b, a, rate, 0, new double[]{30000});
+    }
+
+    /**
+     * Checks that the flows found by the index of the tenant manager for each link are the flows of the path lists of
+     * the queues of the link (i.e., the selection done before the index existed).
+     */
+    private void assertFlowLinkIndexMatchesPathLists(TenantManagerSystem system) {
+        LinkMapper linkMapper = new LinkMapper(controller);
+        ToNetworkMapper toNetworkMapper = new ToNetworkMapper(controller);
+        Set<Entity> allFromPathLists = new HashSet<>();
+        for(Edge linkEdge : network.getLinkGraph().getEdges()) {
+            Set<Entity> fromPathLists = new HashSet<>();
+            for(Edge queueEdge : linkMapper.get(toNetworkMapper.get(linkEdge.getEntity()).getNetworkEntity()).getQueueEdges())
+                fromPathLists.addAll(pathListMapper.get(queueEdge.getEntity()).getPathList());
+            List<Entity> fromIndex = system.getFlowLinkIndex().getFlowsOn(Collections.singletonList(linkEdge));
+            assertEquals(fromIndex.size(), new HashSet<>(fromIndex).size());
+            assertEquals(new HashSet<>(fromIndex), fromPathLists);
+            allFromPathLists.addAll(fromPathLists);
+        }
+        assertEquals(new HashSet<>(system.getFlowLinkIndex().getFlowsOn(network.getLinkGraph().getEdges())), allFromPathLists);
+        assertEquals(system.getFlowLinkIndex().size(), allFromPathLists.size());
+    }
+
+    @Test
+    public void testFlowLinkIndexMatchesPathLists() throws UnknownHostException, TenantManagerException {
+        Host[] hosts = createReroutingTopology();
+        TenantManagerSystem reroutingTenantManager = createReroutingTenantManager(new ReroutingConfiguration(FlowSelectionTypes.ALL_FLOWS, SortFlowTypes.NO_SORT, CostIncreaseTypes.PHYSICAL_LINK_INCREASE, LimitReroutingTypes.ABSOLUTE, 10));
+        Tenant tenant = reroutingTenantManager.createTenant("first tenant");
+        VirtualMachine[] vms = new VirtualMachine[hosts.length];
+        for(int i = 0; i < hosts.length; i++)
+            vms[i] = reroutingTenantManager.createVirtualMachine(tenant, "vm" + i, hosts[i]);
+        assertFlowLinkIndexMatchesPathLists(reroutingTenantManager);
+
+        // Creation
+        Flow small = reroutingTenantManager.createFlow("small", vms[0], vms[2], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 10000000, 1500, 10);
+        Flow back = reroutingTenantManager.createFlow("back", vms[3], vms[1], InetAddress.getByName("0.0.0.2"), InetAddress.getByName("0.0.0.1"), 10, 15, 17, 10000000, 1500, 10);
+        Entity smallEntityBefore = small.getEntity();
+        int smallHopsBefore = pathMapper.get(smallEntityBefore).getPath().length;
+        assertFlowLinkIndexMatchesPathLists(reroutingTenantManager);
+
+        // Rerouting of the small flow
+        Flow large = reroutingTenantManager.createFlow("large", vms[1], vms[3], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 245000000, 1500, 10);
+        assertNotSame(small.getEntity(), smallEntityBefore);
+        assertTrue(pathMapper.get(small.getEntity()).getPath().length > smallHopsBefore);
+        assertFlowLinkIndexMatchesPathLists(reroutingTenantManager);
+
+        // Deletion
+        reroutingTenantManager.deleteFlow(small);
+        assertFlowLinkIndexMatchesPathLists(reroutingTenantManager);
+        reroutingTenantManager.deleteFlow(large);
+        reroutingTenantManager.deleteFlow(back);
+        assertFlowLinkIndexMatchesPathLists(reroutingTenantManager);
+        assertEquals(reroutingTenantManager.getFlowLinkIndex().size(), 0);
+    }
+
+    @Test
+    public void testReroutingKeepsProxy() throws UnknownHostException, TenantManagerException {
+        Host[] hosts = createReroutingTopology();
+        // Records the proxy of the algorithm each time a cost is computed
+        RoutingAlgorithm algorithm = new CBFAlgorithm(controller);
+        Set<Object> proxiesSeen = Collections.newSetFromMap(new IdentityHashMap<>());
+        algorithm.setProxy(new DetServProxy(controller) {
+            @Override
+            public double getCost(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+                proxiesSeen.add(algorithm.getProxy());
+                return super.getCost(iterable, edge, doubles, request, b);
+            }
+        });
+        new ReroutingConfigurationMapper(controller).attachComponent(network.getEntity(), new ReroutingConfiguration(FlowSelectionTypes.ALL_FLOWS, SortFlowTypes.NO_SORT, CostIncreaseTypes.PHYSICAL_LINK_INCREASE, LimitReroutingTypes.ABSOLUTE, 10));
+        TenantManagerSystem reroutingTenantManager = new TenantManagerSystem(network, algorithm, controller);
+        Object proxy = algorithm.getProxy();
+        assertTrue(proxy instanceof RequestScopedProxy);
+        // A second tenant manager on the same algorithm shares the proxy
+        TenantManagerSystem otherTenantManager = new TenantManagerSystem(network, algorithm, controller);
+        assertSame(algorithm.getProxy(), proxy);
+
+        Tenant tenant = reroutingTenantManager.createTenant("first tenant");
+        VirtualMachine[] vms = new VirtualMachine[hosts.length];
+        for(int i = 0; i < hosts.length; i++)
+            vms[i] = reroutingTenantManager.createVirtualMachine(tenant, "vm" + i, hosts[i]);
+        Flow small = reroutingTenantManager.createFlow("small", vms[0], vms[2], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 10000000, 1500, 10);
+        Entity smallEntityBefore = small.getEntity();
+        reroutingTenantManager.createFlow("large", vms[1], vms[3], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 245000000, 1500, 10);
+        assertNotSame(small.getEntity(), smallEntityBefore);
+
+        // The cost increase only applied to the rerouted flow: the other tenant manager gets the shortest route
+        Tenant otherTenant = otherTenantManager.createTenant("other tenant");
+        VirtualMachine otherVm1 = otherTenantManager.createVirtualMachine(otherTenant, "otherVm1", hosts[0]);
+        VirtualMachine otherVm2 = otherTenantManager.createVirtualMachine(otherTenant, "otherVm2", hosts[2]);
+        Flow other = otherTenantManager.createFlow("other", otherVm1, otherVm2, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 1000000, 1500, 10);
+        assertTrue(pathMapper.get(other.getEntity()).getPath().length < pathMapper.get(small.getEntity()).getPath().length);
+
+        // The proxy of the algorithm was never replaced, not even while rerouting
+        assertSame(algorithm.getProxy(), proxy);
+        assertEquals(proxiesSeen, Collections.singleton(proxy));
+    }
+
+    @Test
+    public void testShortestPathQueueSetsClearedOnTopologyUpdate() throws UnknownHostException, TenantManagerException {
+        Host[] hosts = createReroutingTopology();
+        TenantManagerSystem reroutingTenantManager = createReroutingTenantManager(new ReroutingConfiguration(FlowSelectionTypes.ONE_SHORTEST_PATH, SortFlowTypes.NO_SORT, CostIncreaseTypes.PHYSICAL_LINK_INCREASE_AND_SP, LimitReroutingTypes.ABSOLUTE, 10));
+        Tenant tenant = reroutingTenantManager.createTenant("first tenant");
+        VirtualMachine[] vms = new VirtualMachine[hosts.length];
+        for(int i = 0; i < hosts.length; i++)
+            vms[i] = reroutingTenantManager.createVirtualMachine(tenant, "vm" + i, hosts[i]);
+        assertEquals(reroutingTenantManager.getShortestPathQueueSets().size(), 0);
+
+        // Rerouting the small flow increases the cost of the queues of its shortest path (cached)
+        Flow small = reroutingTenantManager.createFlow("small", vms[0], vms[2], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 10000000, 1500, 10);
+        Entity smallEntityBefore = small.getEntity();
+        reroutingTenantManager.createFlow("large", vms[1], vms[3], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 245000000, 1500, 10);
+        assertNotSame(small.getEntity(), smallEntityBefore);
+        assertEquals(reroutingTenantManager.getShortestPathQueueSets().size(), 1);
+
+        reroutingTenantManager.updateShortestPaths(null, null);
+        assertEquals(reroutingTenantManager.getShortestPathQueueSets().size(), 0);
+    }
+
+    @Test
+    public void testCreateFlowBetweenUnreachableHosts() throws UnknownHostException {
+        // Two hosts in two disconnected parts of the network
+        Host lundi = networkingSystem.createHost(network, "lundi");
+        Host mardi = networkingSystem.createHost(network, "mardi");
+        NetworkNode lundiNode = networkingSystem.addInterface(lundi, new NetworkInterface("1", "00:00:00:00:00:00"));
+        NetworkNode mardiNode = networkingSystem.addInterface(mardi, new NetworkInterface("2", "00:00:00:00:00:00"));
+        NetworkNode lundiSwitch = networkingSystem.createNode(network);
+        NetworkNode mardiSwitch = networkingSystem.createNode(network);
+        networkingSystem.createLinkWithPriorityScheduling(lundiNode, lundiSwitch, 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(lundiSwitch, lundiNode, 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(mardiNode, mardiSwitch, 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(mardiSwitch, mardiNode, 1e9 / 8, 0, new double[]{30000});
+
+        TenantManagerSystem reroutingTenantManager = createReroutingTenantManager(new ReroutingConfiguration(FlowSelectionTypes.ONE_SHORTEST_PATH, SortFlowTypes.NO_SORT, CostIncreaseTypes.PHYSICAL_LINK_INCREASE, LimitReroutingTypes.ABSOLUTE, 10));
+        VirtualMachine vm1 = null, vm2 = null;
+        try {
+            Tenant tenant = reroutingTenantManager.createTenant("first tenant");
+            vm1 = reroutingTenantManager.createVirtualMachine(tenant, "newVm", lundi);
+            vm2 = reroutingTenantManager.createVirtualMachine(tenant, "newVm2", mardi);
+        }
+        catch(TenantManagerException e) {
+            fail();
+        }
+
+        // The kSPs of the pair are unreachable: the flow is rejected, not failing
+        try {
+            reroutingTenantManager.createFlow("f1", vm1, vm2, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 15, 10, 20, 5, 10);
+            fail();
+        }
+        catch(TenantManagerException e) {
+            assertNotNull(e.getMessage());
+        }
+        List<FlowSpec> specs = new ArrayList<>();
+        specs.add(new FlowSpec("f1", vm1, vm2, InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.1"), 10, 15, 10, 20, 5, 10));
+        assertFalse(reroutingTenantManager.createFlowsDryRun(specs).get(0).isAccepted());
+        assertEquals(vm1.getFlows().size(), 0);
+        assertEquals(vm2.getFlows().size(), 0);
+    }
+
+    @Test
+    public void testCreateFlowDryRunWithRerouting() throws UnknownHostException, TenantManagerException {
+        Host[] hosts = createReroutingTopology();
+        TenantManagerSystem reroutingTenantManager = createReroutingTenantManager(new ReroutingConfiguration(FlowSelectionTypes.ALL_FLOWS, SortFlowTypes.NO_SORT, CostIncreaseTypes.PHYSICAL_LINK_INCREASE, LimitReroutingTypes.ABSOLUTE, 10));
+        Tenant tenant = reroutingTenantManager.createTenant("first tenant");
+        VirtualMachine[] vms = new VirtualMachine[hosts.length];
+        for(int i = 0; i < hosts.length; i++)
+            vms[i] = reroutingTenantManager.createVirtualMachine(tenant, "vm" + i, hosts[i]);
+
+        Flow small = reroutingTenantManager.createFlow("small", vms[0], vms[2], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 10000000, 1500, 10);
+        Entity smallEntity = small.getEntity();
+        Path smallPath = pathMapper.get(smallEntity);
+        int nPaths = pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size();
+
+        // Only fits if the small flow is rerouted
+        FlowSpec large = new FlowSpec("large", vms[1], vms[3], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 245000000, 1500, 10);
+        // Does not fit, even with rerouting
+        FlowSpec tooLarge = new FlowSpec("tooLarge", vms[1], vms[3], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 16, 17, 300000000, 1500, 10);
+
+        // Twice: the first dry runs must not change anything
+        Path dryRunReroutedPath = null;
+        for(int run = 0; run < 2; run++) {
+            DryRunResult largeResult = reroutingTenantManager.createFlowDryRun(large);
+            assertTrue(largeResult.isAccepted());
+            assertEquals(largeResult.getReroutingStats().getFlowsReconfigured(), Collections.singletonList(small));
+            assertEquals(largeResult.getReroutingStats().getReconfigurationSuccess(), Collections.singletonList(small));
+            dryRunReroutedPath = largeResult.getReroutedPaths().get(small);
+            assertTrue(dryRunReroutedPath.getPath().length > smallPath.getPath().length);
+
+            DryRunResult tooLargeResult = reroutingTenantManager.createFlowDryRun(tooLarge);
+            assertFalse(tooLargeResult.isAccepted());
+            assertEquals(tooLargeResult.getReroutingStats().getReconfigurationSuccess().size(), 0);
+
+            assertSame(small.getEntity(), smallEntity);
+            assertSame(pathMapper.get(smallEntity), smallPath);
+            assertEquals(pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size(), nPaths);
+            assertEquals(reroutingTenantManager.getFlowLinkIndex().size(), 1);
+            assertEquals(vms[1].getFlows().size(), 0);
+        }
+
+        // The real creations give the same outcome
+        Flow largeFlow = reroutingTenantManager.createFlow(large);
+        ReroutingStats reroutingStats = new ReroutingStatsMapper(controller).get(largeFlow.getEntity());
+        assertEquals(reroutingStats.getFlowsReconfigured(), Collections.singletonList(small));
+        assertArrayEquals(pathMapper.get(small.getEntity()).getPath(), dryRunReroutedPath.getPath());
+        assertFalse(reroutingTenantManager.createFlowDryRun(tooLarge).isAccepted());
+        try {
+            reroutingTenantManager.createFlow(tooLarge);
+            fail();
+        }
+        catch(TenantManagerException e) {
+        }
+    }
+
+    @Test
+    public void testSpeculativeRerouting() throws UnknownHostException, TenantManagerException {
+        Host[] hosts = createReroutingTopology();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            new SpeculativeReroutingMapper(controller).attachComponent(network.getEntity(), new SpeculativeRerouting(2, executor, () -> {
+                RoutingAlgorithm algorithm = new CBFAlgorithm(controller);
+                algorithm.setProxy(new DetServProxy(controller));
+                return algorithm;
+            }));
+            TenantManagerSystem reroutingTenantManager = createReroutingTenantManager(new ReroutingConfiguration(FlowSelectionTypes.ALL_FLOWS, SortFlowTypes.NO_SORT, CostIncreaseTypes.PHYSICAL_LINK_INCREASE, LimitReroutingTypes.ABSOLUTE, 10));
+            Tenant tenant = reroutingTenantManager.createTenant("first tenant");
+            VirtualMachine[] vms = new VirtualMachine[hosts.length];
+            for(int i = 0; i < hosts.length; i++)
+                vms[i] = reroutingTenantManager.createVirtualMachine(tenant, "vm" + i, hosts[i]);
+
+            Flow small = reroutingTenantManager.createFlow("small", vms[0], vms[2], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 10000000, 1500, 10);
+            Entity smallEntity = small.getEntity();
+            Path smallPath = pathMapper.get(smallEntity);
+            int nPaths = pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size();
+
+            // The dry run follows the sequential rerouting (see testCreateFlowDryRunWithRerouting)
+            FlowSpec large = new FlowSpec("large", vms[1], vms[3], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 245000000, 1500, 10);
+            FlowSpec tooLarge = new FlowSpec("tooLarge", vms[1], vms[3], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 16, 17, 300000000, 1500, 10);
+            DryRunResult sequentialLarge = reroutingTenantManager.createFlowDryRun(large);
+            assertTrue(sequentialLarge.isAccepted());
+            assertFalse(reroutingTenantManager.createFlowDryRun(tooLarge).isAccepted());
+
+            // Rejected: the small flow, which the sequential rerouting would move, is left untouched
+            try {
+                reroutingTenantManager.createFlow(tooLarge);
+                fail();
+            }
+            catch(TenantManagerException e) {
+            }
+            assertSame(small.getEntity(), smallEntity);
+            assertSame(pathMapper.get(smallEntity), smallPath);
+            assertEquals(pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size(), nPaths);
+            assertEquals(reroutingTenantManager.getFlowLinkIndex().size(), 1);
+            assertEquals(vms[1].getFlows().size(), 0);
+            assertFlowLinkIndexMatchesPathLists(reroutingTenantManager);
+
+            // Accepted, with the same reroutings as the sequential rerouting
+            Flow largeFlow = reroutingTenantManager.createFlow(large);
+            ReroutingStats reroutingStats = new ReroutingStatsMapper(controller).get(largeFlow.getEntity());
+            assertEquals(reroutingStats.getReconfigurationAttempts(), sequentialLarge.getReroutingStats().getReconfigurationAttempts());
+            assertEquals(reroutingStats.getFlowsReconfigured(), Collections.singletonList(small));
+            assertEquals(reroutingStats.getReconfigurationSuccess(), Collections.singletonList(small));
+            assertArrayEquals(pathMapper.get(small.getEntity()).getPath(), sequentialLarge.getReroutedPaths().get(small).getPath());
+            assertEquals(pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size(), nPaths + 1);
+            assertFlowLinkIndexMatchesPathLists(reroutingTenantManager);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSpeculativeReroutingRolledBack() throws UnknownHostException, TenantManagerException {
+        Host[] hosts = createReroutingTopology();
+        // Second detour between the two first switches, which the shared algorithm may be forbidden to use
+        Set<Edge> queuesBefore = new HashSet<>(network.getQueueGraph().getEdges());
+        NetworkNode detour = networkingSystem.createNode(network);
+        createBidirectionalLink(reroutingSwitches[0], detour, 1e8 / 8);
+        createBidirectionalLink(detour, reroutingSwitches[1], 1e8 / 8);
+        Set<Edge> forbiddenQueues = new HashSet<>(network.getQueueGraph().getEdges());
+        forbiddenQueues.removeAll(queuesBefore);
+
+        RoutingAlgorithm algorithm = new CBFAlgorithm(controller);
+        algorithm.setProxy(new DetServProxy(controller) {
+            @Override
+            public boolean hasAccess(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+                return !forbiddenQueues.contains(edge) && super.hasAccess(iterable, edge, doubles, request, b);
+            }
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // The speculative algorithms can use the second detour
+            new SpeculativeReroutingMapper(controller).attachComponent(network.getEntity(), new SpeculativeRerouting(2, executor, () -> {
+                RoutingAlgorithm speculativeAlgorithm = new CBFAlgorithm(controller);
+                speculativeAlgorithm.setProxy(new DetServProxy(controller));
+                return speculativeAlgorithm;
+            }));
+            new ReroutingConfigurationMapper(controller).attachComponent(network.getEntity(), new ReroutingConfiguration(FlowSelectionTypes.ALL_FLOWS, SortFlowTypes.NO_SORT, CostIncreaseTypes.PHYSICAL_LINK_INCREASE, LimitReroutingTypes.ABSOLUTE, 10));
+            TenantManagerSystem reroutingTenantManager = new TenantManagerSystem(network, algorithm, controller);
+            Tenant tenant = reroutingTenantManager.createTenant("first tenant");
+            VirtualMachine[] vms = new VirtualMachine[hosts.length];
+            for(int i = 0; i < hosts.length; i++)
+                vms[i] = reroutingTenantManager.createVirtualMachine(tenant, "vm" + i, hosts[i]);
+
+            // Both small flows must leave the direct link for the large flow to fit, but they do not fit on one detour
+            Flow small = reroutingTenantManager.createFlow("small", vms[0], vms[2], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 10000000, 1500, 10);
+            Flow medium = reroutingTenantManager.createFlow("medium", vms[0], vms[2], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 11, 15, 17, 20000000, 1500, 10);
+            Entity smallEntity = small.getEntity();
+            Entity mediumEntity = medium.getEntity();
+            Edge[] smallPath = pathMapper.get(smallEntity).getPath();
+            Edge[] mediumPath = pathMapper.get(mediumEntity).getPath();
+            int nPaths = pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size();
+            FlowSpec large = new FlowSpec("large", vms[1], vms[3], InetAddress.getByName("0.0.0.1"), InetAddress.getByName("0.0.0.2"), 10, 15, 17, 245000000, 1500, 10);
+            assertFalse(reroutingTenantManager.createFlowDryRun(large).isAccepted());
+
+            // Speculatively accepted (with the second detour) but the committed reroutings do not make room
+            try {
+                reroutingTenantManager.createFlow(large);
+                fail();
+            }
+            catch(TenantManagerException e) {
+            }
+
+            // The committed reroutings were undone
+            assertNotSame(small.getEntity(), smallEntity);
+            assertNotSame(medium.getEntity(), mediumEntity);
+            assertArrayEquals(pathMapper.get(small.getEntity()).getPath(), smallPath);
+            assertArrayEquals(pathMapper.get(medium.getEntity()).getPath(), mediumPath);
+            assertEquals(pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size(), nPaths);
+            assertEquals(reroutingTenantManager.getFlowLinkIndex().size(), 2);
+            assertEquals(vms[1].getFlows().size(), 0);
+            assertFlowLinkIndexMatchesPathLists(reroutingTenantManager);
+
+            // Same routes for the shared algorithm: accepted
+            forbiddenQueues.clear();
+            Flow largeFlow = reroutingTenantManager.createFlow(large);
+            assertEquals(new ReroutingStatsMapper(controller).get(largeFlow.getEntity()).getFlowsReconfigured().size(), 2);
+            assertEquals(pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size(), nPaths + 1);
+            assertFlowLinkIndexMatchesPathLists(reroutingTenantManager);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCreateVirtualMachinesRollback() throws TenantManagerException {
+        Host[] hosts = createReroutingTopology();
+        // Fails when creating the third VM of a batch
+        TenantManagerSystem failingTenantManager = new TenantManagerSystem(network, routingAlgorithm, controller) {
+            private int nCreated = 0;
+
+            @Override
+            VirtualMachine createVirtualMachine(Tenant tenant, String name, Host host, boolean hostReserved) throws TenantManagerException {
+                if(nCreated++ == 2)
+                    throw new TenantManagerException("failure injected by the test");
+                return super.createVirtualMachine(tenant, name, host, hostReserved);
+            }
+        };
+        failingTenantManager.setMaxVirtualMachinesPerHost(1);
+        HostCatalog catalog = failingTenantManager.getHostCatalog();
+        Tenant tenant = failingTenantManager.createTenant("tenant");
+        List<VmSpec> specs = Arrays.asList(new VmSpec("a"), new VmSpec("b"), new VmSpec("c"), new VmSpec("d"));
+
+        try {
+            failingTenantManager.createVirtualMachines(tenant, specs, null);
+            fail();
+        }
+        catch(TenantManagerException e) {
+            // The two VMs created are deleted and the hosts reserved for the others released
+            assertEquals(tenant.getVirtualMachines().size(), 0);
+            for(Host host : hosts)
+                assertEquals(catalog.getVirtualMachineCount(host), 0);
+        }
+
+        // All the hosts are free again
+        List<VirtualMachine> vms = failingTenantManager.createVirtualMachines(tenant, specs, null);
+        assertEquals(vms.size(), 4);
+        assertEquals(tenant.getVirtualMachines().size(), 4);
+        for(Host host : hosts)
+            assertEquals(catalog.getVirtualMachineCount(host), 1);
+    }
+
     @Test
     public void testDeleteFlow() throws UnknownHostException {
         VirtualMachine vm1 = null, vm2 = null, vm3 = null;
@@ -600,6 +1169,11 @@ public class TenantManagerSystemTest {
             countTestSystem.doFullCheck(Flow.class, 0, 0, 2);
             assertFalse(pathMapper.isIn(flow));
             assertEquals(pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size(), 0);
+
+            // The name can be used again
+            assertNull(tenantManagerSystem.getTenant("first tenant"));
+            tenant = tenantManagerSystem.createTenant("first tenant");
+            assertSame(tenantManagerSystem.getTenant("first tenant"), tenant);
         }
         catch(TenantManagerException e) {
             fail();
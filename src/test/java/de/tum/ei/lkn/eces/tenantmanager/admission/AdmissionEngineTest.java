@@ -0,0 +1,321 @@
+package de.tum.ei.lkn.eces.tenantmanager.admission;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.dnm.DNMSystem;
+import de.tum.ei.lkn.eces.dnm.ResidualMode;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.Division;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.LowerLimit;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.Summation;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.UpperLimit;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.Constant;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.QueuePriority;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.MHM.MHMRateRatiosAllocation;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.network.util.NetworkInterface;
+import de.tum.ei.lkn.eces.routing.RoutingSystem;
+import de.tum.ei.lkn.eces.routing.algorithms.RoutingAlgorithm;
+import de.tum.ei.lkn.eces.routing.algorithms.csp.unicast.cbf.CBFAlgorithm;
+import de.tum.ei.lkn.eces.routing.mappers.PathListMapper;
+import de.tum.ei.lkn.eces.routing.mappers.PathMapper;
+import de.tum.ei.lkn.eces.routing.pathlist.PathListSystem;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import de.tum.ei.lkn.eces.tenantmanager.*;
+import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+import de.tum.ei.lkn.eces.tenantmanager.matching.FiveTupleMatching;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the admission engine: many tenants admitting flows concurrently.
+ *
+ * Most flows are between VMs of the same host (only metadata, runs in parallel) and a few are routed (serialized
+ * network reservation). The throughput is measured by the AdmissionEngineBenchmark.
+ *
+ * @author Amaury Van Bemten
+ */
+public class AdmissionEngineTest {
+    private static final int N_TENANTS = 16;
+    private static final int N_LOCAL_FLOWS = 50;
+    private static final int N_ROUTED_FLOWS = 2;
+
+    private TenantManagerSystem tenantManagerSystem;
+    private Network network;
+    private Host[] hosts;
+    private PathMapper pathMapper;
+    private PathListMapper pathListMapper;
+
+    @Before
+    public void setUp() {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.ERROR);
+    }
+
+    private void createSystem() {
+        Controller controller = new Controller();
+        GraphSystem graphSystem = new GraphSystem(controller);
+        NetworkingSystem networkingSystem = new NetworkingSystem(controller, graphSystem);
+
+        DetServConfig modelConfig = new DetServConfig(
+                ACModel.MHM,
+                ResidualMode.LEAST_LATENCY,
+                BurstIncreaseModel.NO,
+                false,
+                new LowerLimit(new UpperLimit(
+                        new Division(new Constant(), new Summation(new Constant(), new QueuePriority())),
+                        1), 0),
+                (controller1, scheduler) -> new MHMRateRatiosAllocation(controller1, new double[]{1.0/4, 1.0/5, 1.0/6, 1.0/8}));
+
+        new DNMSystem(controller);
+        DetServProxy proxy = new DetServProxy(controller);
+        new RoutingSystem(controller);
+        RoutingAlgorithm cbf = new CBFAlgorithm(controller);
+        cbf.setProxy(proxy);
+        modelConfig.initCostModel(controller);
+        new PathListSystem(controller);
+        pathMapper = new PathMapper(controller);
+        pathListMapper = new PathListMapper(controller);
+
+        // Star: four hosts around a switch
+        network = networkingSystem.createNetwork();
+        new DetServConfigMapper(controller).attachComponent(network.getQueueGraph(), modelConfig);
+        NetworkNode switchNode = networkingSystem.createNode(network);
+        hosts = new Host[4];
+        for(int i = 0; i < hosts.length; i++) {
+            hosts[i] = networkingSystem.createHost(network, "host" + i);
+            NetworkNode hostNode = networkingSystem.addInterface(hosts[i], new NetworkInterface("" + i, "00:00:00:00:00:00"));
+            networkingSystem.createLinkWithPriorityScheduling(hostNode, switchNode, 1e9 / 8, 0, new double[]{30000});
+            networkingSystem.createLinkWithPriorityScheduling(switchNode, hostNode, 1e9 / 8, 0, new double[]{30000});
+        }
+
+        tenantManagerSystem = new TenantManagerSystem(network, cbf, controller);
+    }
+
+    /**
+     * Runs the whole workload with a given number of workers.
+     * @return the final state of the tenant manager (see getState()).
+     */
+    private SortedMap<String, String> runWorkload(int nWorkers) throws Exception {
+        createSystem();
+        try(AdmissionEngine engine = new AdmissionEngine(tenantManagerSystem, nWorkers)) {
+            List<CompletableFuture<Tenant>> tenants = new ArrayList<>();
+            for(int t = 0; t < N_TENANTS; t++)
+                tenants.add(engine.createTenant("tenant" + t));
+
+            List<CompletableFuture<?>> operations = new ArrayList<>();
+            for(int t = 0; t < N_TENANTS; t++) {
+                int tenantIndex = t;
+                // Each tenant: two VMs on one host and one VM on another host
+                CompletableFuture<Void> tenantOperations = tenants.get(t).thenCompose(tenant -> {
+                    Host host = hosts[tenantIndex % hosts.length];
+                    Host otherHost = hosts[(tenantIndex + 1) % hosts.length];
+                    CompletableFuture<VirtualMachine> vm1 = engine.createVirtualMachine(tenant, "vm1", host);
+                    CompletableFuture<VirtualMachine> vm2 = engine.createVirtualMachine(tenant, "vm2", host);
+                    CompletableFuture<VirtualMachine> vm3 = engine.createVirtualMachine(tenant, "vm3", otherHost);
+                    return CompletableFuture.allOf(vm1, vm2, vm3).thenCompose(ignored -> {
+                        List<CompletableFuture<Flow>> flows = new ArrayList<>();
+                        for(int f = 0; f < N_LOCAL_FLOWS; f++)
+                            flows.add(engine.createFlow(spec("local" + f, vm1.join(), vm2.join(), f)));
+                        for(int f = 0; f < N_ROUTED_FLOWS; f++)
+                            flows.add(engine.createFlow(spec("routed" + f, vm1.join(), vm3.join(), N_LOCAL_FLOWS + f)));
+                        return CompletableFuture.allOf(flows.toArray(new CompletableFuture[0]));
+                    });
+                });
+                operations.add(tenantOperations);
+            }
+            CompletableFuture.allOf(operations.toArray(new CompletableFuture[0])).join();
+        }
+
+        // Everything admitted exactly once
+        for(int t = 0; t < N_TENANTS; t++) {
+            Tenant tenant = tenantManagerSystem.getTenant("tenant" + t);
+            assertNotNull(tenant);
+            assertEquals(tenant.getVirtualMachines().size(), 3);
+            int nFlows = 0;
+            for(VirtualMachine vm : tenant.getVirtualMachines())
+                nFlows += vm.getFlows().size();
+            // Each flow is counted at its source and destination
+            assertEquals(nFlows, 2 * (N_LOCAL_FLOWS + N_ROUTED_FLOWS));
+        }
+
+        // One reservation per routed flow, no lost or duplicate one
+        assertEquals(pathListMapper.get(network.getQueueGraph().getEntity()).getPathList().size(), N_TENANTS * N_ROUTED_FLOWS);
+        return getState();
+    }
+
+    /**
+     * @return for each VM (tenant/VM name), its host and, sorted, the matching of each of its flows with the
+     * destination VM and the number of hops of the path (0 if not routed). Independent of the order of the operations.
+     */
+    private SortedMap<String, String> getState() {
+        SortedMap<String, String> state = new TreeMap<>();
+        Set<Flow> allFlows = new HashSet<>();
+        for(int t = 0; t < N_TENANTS; t++) {
+            for(VirtualMachine vm : tenantManagerSystem.getTenant("tenant" + t).getVirtualMachines()) {
+                List<String> flows = new ArrayList<>();
+                for(Flow flow : vm.getFlows()) {
+                    FiveTupleMatching matching = (FiveTupleMatching) flow.getMatching();
+                    Path path = pathMapper.get(flow.getEntity());
+                    flows.add(matching.getSourcePort() + ":" + flow.getSource().getName() + "->" + flow.getDestination().getName() + "/" + (path == null ? 0 : path.getPath().length));
+                    allFlows.add(flow);
+                }
+                Collections.sort(flows);
+                String vmName = "tenant" + t + "/" + vm.getName();
+                assertNull(state.put(vmName, Arrays.asList(hosts).indexOf(vm.getHostMachine()) + " " + flows));
+            }
+        }
+        assertEquals(allFlows.size(), N_TENANTS * (N_LOCAL_FLOWS + N_ROUTED_FLOWS));
+        return state;
+    }
+
+    private static FlowSpec spec(String name, VirtualMachine source, VirtualMachine destination, int port) {
+        try {
+            return new FlowSpec(name, source, destination, InetAddress.getByName("10.0.0.1"), InetAddress.getByName("10.0.0.2"), port, 80, 6, 1000, 100, 10);
+        } catch (UnknownHostException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    public void testConcurrentWorkloadMatchesSerialRun() throws Exception {
+        SortedMap<String, String> serialState = runWorkload(1);
+        assertEquals(serialState.size(), N_TENANTS * 3);
+        assertEquals(runWorkload(4), serialState);
+    }
+
+    @Test
+    public void testRejectionsAreReported() throws Exception {
+        createSystem();
+        try(AdmissionEngine engine = new AdmissionEngine(tenantManagerSystem, 2)) {
+            Tenant tenant = engine.createTenant("tenant").join();
+            assertTrue(failsEventually(engine.createTenant("tenant")));
+            VirtualMachine vm1 = engine.createVirtualMachine(tenant, "vm1", hosts[0]).join();
+            VirtualMachine vm2 = engine.createVirtualMachine(tenant, "vm2", hosts[0]).join();
+            engine.createFlow(spec("f", vm1, vm2, 1)).join();
+            // Same matching
+            assertTrue(failsEventually(engine.createFlow(spec("g", vm1, vm2, 1))));
+        }
+    }
+
+    @Test
+    public void testCreateFlowAsync() throws Exception {
+        createSystem();
+        tenantManagerSystem.setMaxOutstandingAsyncRequests(64);
+        Tenant tenant = tenantManagerSystem.createTenant("tenant");
+        VirtualMachine vm1 = tenantManagerSystem.createVirtualMachine(tenant, "vm1", hosts[0]);
+        VirtualMachine vm2 = tenantManagerSystem.createVirtualMachine(tenant, "vm2", hosts[0]);
+        VirtualMachine vm3 = tenantManagerSystem.createVirtualMachine(tenant, "vm3", hosts[1]);
+
+        // Many more requests than the bound on outstanding requests: the ones over the bound are rejected
+        List<CompletableFuture<Flow>> flows = new ArrayList<>();
+        for(int f = 0; f < 2000; f++)
+            flows.add(tenantManagerSystem.createFlowAsync(spec("local" + f, vm1, vm2, f)));
+        int nAccepted = 0;
+        for(CompletableFuture<Flow> flow : flows) {
+            try {
+                flow.get();
+                nAccepted++;
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TenantManagerException);
+            }
+        }
+        assertTrue(nAccepted >= 64); // the first requests are always accepted
+        assertEquals(vm1.getFlows().size(), nAccepted);
+        tenantManagerSystem.createFlowAsync(spec("routed", vm1, vm3, 2000)).get();
+        assertEquals(vm1.getFlows().size(), nAccepted + 1);
+        assertEquals(vm3.getFlows().size(), 1);
+
+        // Rejections complete the future with a TenantManagerException
+        CompletableFuture<Flow> duplicate = tenantManagerSystem.createFlowAsync(spec("duplicate", vm1, vm2, 0));
+        try {
+            duplicate.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TenantManagerException);
+        }
+        assertEquals(vm1.getFlows().size(), nAccepted + 1);
+
+        try {
+            tenantManagerSystem.setMaxOutstandingAsyncRequests(128);
+            fail();
+        } catch (RuntimeException e) {
+            // Already started
+        }
+
+        // Shutdown: the synchronous admission still works, not the asynchronous one
+        tenantManagerSystem.shutdown();
+        tenantManagerSystem.shutdown();
+        tenantManagerSystem.createFlow(spec("afterShutdown", vm1, vm2, 2001));
+        assertEquals(vm1.getFlows().size(), nAccepted + 2);
+        try {
+            tenantManagerSystem.createFlowAsync(spec("async", vm1, vm2, 2002));
+            fail();
+        } catch (RuntimeException e) {
+            assertEquals(vm1.getFlows().size(), nAccepted + 2);
+        }
+    }
+
+    @Test
+    public void testMaxOutstandingOperations() throws Exception {
+        createSystem();
+        CountDownLatch release = new CountDownLatch(1);
+        try (AdmissionEngine engine = new AdmissionEngine(tenantManagerSystem, 1, 2)) {
+            // One running and one queued operation, blocked until released
+            List<CompletableFuture<Void>> blocked = new ArrayList<>();
+            for(int i = 0; i < 2; i++) {
+                blocked.add(engine.submit(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return null;
+                }));
+            }
+            assertEquals(engine.getOutstandingCount(), 2);
+
+            // Over the bound: rejected without blocking the caller
+            CompletableFuture<Tenant> rejected = engine.createTenant("rejected");
+            assertTrue(rejected.isDone());
+            try {
+                rejected.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TenantManagerException);
+            }
+
+            release.countDown();
+            CompletableFuture.allOf(blocked.toArray(new CompletableFuture[0])).join();
+            assertEquals(engine.createTenant("accepted").get().getName(), "accepted");
+        }
+    }
+
+    private static boolean failsEventually(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return false;
+        } catch (RuntimeException e) {
+            return true;
+        }
+    }
+}
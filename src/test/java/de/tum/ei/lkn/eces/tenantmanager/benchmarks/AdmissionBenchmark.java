@@ -0,0 +1,93 @@
+package de.tum.ei.lkn.eces.tenantmanager.benchmarks;
+
+import de.tum.ei.lkn.eces.tenantmanager.Flow;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the admission of a flow (routing and registration) in a network loaded to a given utilization.
+ *
+ * Each invocation creates a flow between two VMs on different hosts. The flow is deleted after the invocation (not
+ * measured), so that the load of the network does not drift during the measurement. The numbers of accepted and
+ * rejected flows are reported next to the latency (which includes the rejected admissions).
+ *
+ * @author Amaury Van Bemten
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AdmissionBenchmark {
+    @Param({"fattree-4", "fattree-8", "random-32"})
+    public String topology;
+
+    @Param({"0.1", "0.5"})
+    public double utilization;
+
+    private BenchmarkNetworks networks;
+    private InetAddress sourceIP;
+    private InetAddress destinationIP;
+    private int next;
+    private Flow flow; // flow created by the last invocation (null if rejected)
+
+    /**
+     * Outcome of the admissions, reported as secondary results.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Admissions {
+        public long accepted;
+        public long rejected;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            accepted = 0;
+            rejected = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws TenantManagerException, UnknownHostException {
+        networks = new BenchmarkNetworks(topology, 42);
+        networks.createTenantManager(null);
+        networks.load(utilization);
+        sourceIP = InetAddress.getByName("10.1.0.1");
+        destinationIP = InetAddress.getByName("10.1.0.2");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteFlow() {
+        if(flow != null) {
+            networks.tenantManagerSystem.deleteFlow(flow);
+            flow = null;
+        }
+    }
+
+    @Benchmark
+    public Flow createFlow(Admissions admissions) {
+        int n = next++;
+        VirtualMachine source = networks.vms.get(n % networks.vms.size());
+        VirtualMachine destination = networks.vms.get((n + 1 + networks.vms.size() / 2) % networks.vms.size());
+        try {
+            flow = networks.tenantManagerSystem.createFlow("admission", source, destination, sourceIP, destinationIP, n % 65536, 0, 17, BenchmarkNetworks.FLOW_RATE, BenchmarkNetworks.FLOW_BURST, BenchmarkNetworks.FLOW_LATENCY);
+            admissions.accepted++;
+        } catch (TenantManagerException e) {
+            admissions.rejected++;
+        }
+        return flow;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AdmissionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,89 @@
+package de.tum.ei.lkn.eces.tenantmanager.benchmarks;
+
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.tenantmanager.Flow;
+import de.tum.ei.lkn.eces.tenantmanager.FlowSpec;
+import de.tum.ei.lkn.eces.tenantmanager.Tenant;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+import de.tum.ei.lkn.eces.tenantmanager.admission.AdmissionEngine;
+import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission throughput of the admission engine for a given number of workers: many tenants admitting flows
+ * concurrently.
+ *
+ * Most flows are between VMs of the same host (only metadata, runs in parallel) and a few are routed (serialized
+ * network reservation). The score is the average time per flow admission.
+ *
+ * @author Amaury Van Bemten
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@OperationsPerInvocation(AdmissionEngineBenchmark.N_TENANTS * (AdmissionEngineBenchmark.N_LOCAL_FLOWS + AdmissionEngineBenchmark.N_ROUTED_FLOWS))
+public class AdmissionEngineBenchmark {
+    static final int N_TENANTS = 16;
+    static final int N_LOCAL_FLOWS = 200;
+    static final int N_ROUTED_FLOWS = 2;
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    private AdmissionEngine engine;
+    private List<FlowSpec> specs;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws TenantManagerException, UnknownHostException {
+        BenchmarkNetworks networks = new BenchmarkNetworks("fattree-4", 42);
+        networks.createTenantManager(null);
+        List<Host> hosts = new ArrayList<>(networks.network.getHosts());
+        InetAddress sourceIP = InetAddress.getByName("10.0.0.1");
+        InetAddress destinationIP = InetAddress.getByName("10.0.0.2");
+
+        // Each tenant: two VMs on one host and one VM on another host
+        specs = new ArrayList<>();
+        for(int t = 0; t < N_TENANTS; t++) {
+            Tenant tenant = networks.tenantManagerSystem.createTenant("tenant" + t);
+            VirtualMachine vm1 = networks.tenantManagerSystem.createVirtualMachine(tenant, "vm1", hosts.get(t % hosts.size()));
+            VirtualMachine vm2 = networks.tenantManagerSystem.createVirtualMachine(tenant, "vm2", hosts.get(t % hosts.size()));
+            VirtualMachine vm3 = networks.tenantManagerSystem.createVirtualMachine(tenant, "vm3", hosts.get((t + 1) % hosts.size()));
+            for(int f = 0; f < N_LOCAL_FLOWS; f++)
+                specs.add(new FlowSpec("local" + f, vm1, vm2, sourceIP, destinationIP, f, 80, 6, 1000, 100, 10));
+            for(int f = 0; f < N_ROUTED_FLOWS; f++)
+                specs.add(new FlowSpec("routed" + f, vm1, vm3, sourceIP, destinationIP, N_LOCAL_FLOWS + f, 80, 6, 1000, 100, 10));
+        }
+
+        engine = new AdmissionEngine(networks.tenantManagerSystem, workers);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws InterruptedException {
+        engine.close();
+    }
+
+    @Benchmark
+    public void createFlows() {
+        List<CompletableFuture<Flow>> flows = new ArrayList<>();
+        for(FlowSpec spec : specs)
+            flows.add(engine.createFlow(spec));
+        CompletableFuture.allOf(flows.toArray(new CompletableFuture[0])).join();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AdmissionEngineBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,206 @@
+package de.tum.ei.lkn.eces.tenantmanager.benchmarks;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.dnm.DNMSystem;
+import de.tum.ei.lkn.eces.dnm.ResidualMode;
+import de.tum.ei.lkn.eces.dnm.config.ACModel;
+import de.tum.ei.lkn.eces.dnm.config.BurstIncreaseModel;
+import de.tum.ei.lkn.eces.dnm.config.DetServConfig;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.Division;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.LowerLimit;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.Summation;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.functions.UpperLimit;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.Constant;
+import de.tum.ei.lkn.eces.dnm.config.costmodels.values.QueuePriority;
+import de.tum.ei.lkn.eces.dnm.mappers.DetServConfigMapper;
+import de.tum.ei.lkn.eces.dnm.proxies.DetServProxy;
+import de.tum.ei.lkn.eces.dnm.resourcemanagement.resourceallocation.MHM.MHMRateRatiosAllocation;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.network.util.NetworkInterface;
+import de.tum.ei.lkn.eces.routing.RoutingSystem;
+import de.tum.ei.lkn.eces.routing.algorithms.RoutingAlgorithm;
+import de.tum.ei.lkn.eces.routing.algorithms.csp.unicast.cbf.CBFAlgorithm;
+import de.tum.ei.lkn.eces.routing.pathlist.PathListSystem;
+import de.tum.ei.lkn.eces.tenantmanager.Tenant;
+import de.tum.ei.lkn.eces.tenantmanager.TenantManagerSystem;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.ReroutingConfiguration;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.mappers.ReroutingConfigurationMapper;
+import de.tum.ei.lkn.eces.topologies.networktopologies.FatTree;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Networks used by the benchmarks: the ECES systems (DNM with the MHM model, CBF routing), a topology and a tenant
+ * manager on top of it, and a tenant with one VM per host that can be loaded with flows.
+ *
+ * Topologies are named "fattree-K" (fat tree with parameter K) or "random-N" (N switches on a ring with random
+ * chords and one host per switch, generated from a fixed seed).
+ *
+ * @author Amaury Van Bemten
+ */
+class BenchmarkNetworks {
+    static final double LINK_RATE = 1e9 / 8; // bytes/s
+    static final long FLOW_RATE = 10_000_000; // bps
+    static final long FLOW_BURST = 1500; // bytes
+    static final double FLOW_LATENCY = 10; // ms
+
+    final Controller controller;
+    final NetworkingSystem networkingSystem;
+    final RoutingAlgorithm routingAlgorithm;
+    final Network network;
+    final FatTree fatTree; // null if not a fat tree
+    TenantManagerSystem tenantManagerSystem;
+    Tenant tenant;
+    List<VirtualMachine> vms;
+    private final Random random;
+    private final InetAddress sourceIP;
+    private final InetAddress destinationIP;
+    private int nFlows;
+
+    /**
+     * Creates the systems and the topology (the tenant manager is created by createTenantManager()).
+     * @param topology name of the topology.
+     * @param seed seed for the random topologies and flows.
+     */
+    BenchmarkNetworks(String topology, long seed) throws UnknownHostException {
+        Logger.getRootLogger().setLevel(Level.ERROR);
+
+        controller = new Controller();
+        GraphSystem graphSystem = new GraphSystem(controller);
+        networkingSystem = new NetworkingSystem(controller, graphSystem);
+
+        DetServConfig modelConfig = new DetServConfig(
+                ACModel.MHM,
+                ResidualMode.LEAST_LATENCY,
+                BurstIncreaseModel.NO,
+                false,
+                new LowerLimit(new UpperLimit(
+                        new Division(new Constant(), new Summation(new Constant(), new QueuePriority())),
+                        1), 0),
+                (controller1, scheduler) -> new MHMRateRatiosAllocation(controller1, new double[]{1.0/4, 1.0/5, 1.0/6, 1.0/8}));
+
+        new DNMSystem(controller);
+        DetServProxy proxy = new DetServProxy(controller);
+        new RoutingSystem(controller);
+        routingAlgorithm = new CBFAlgorithm(controller);
+        routingAlgorithm.setProxy(proxy);
+        modelConfig.initCostModel(controller);
+        new PathListSystem(controller);
+
+        random = new Random(seed);
+        String[] parts = topology.split("-");
+        int size = Integer.parseInt(parts[1]);
+        switch (parts[0]) {
+            case "fattree":
+                fatTree = new FatTree(networkingSystem, size, LINK_RATE, 0, new double[]{30000, 30000, 30000, 30000});
+                network = fatTree.getNetwork();
+                new DetServConfigMapper(controller).attachComponent(network.getQueueGraph(), modelConfig);
+                break;
+            case "random":
+                fatTree = null;
+                network = networkingSystem.createNetwork();
+                new DetServConfigMapper(controller).attachComponent(network.getQueueGraph(), modelConfig);
+                createRandomTopology(size);
+                break;
+            default:
+                throw new RuntimeException("unknown topology " + topology);
+        }
+
+        sourceIP = InetAddress.getByName("10.0.0.1");
+        destinationIP = InetAddress.getByName("10.0.0.2");
+    }
+
+    private void createRandomTopology(int nSwitches) {
+        NetworkNode[] switches = new NetworkNode[nSwitches];
+        for(int i = 0; i < nSwitches; i++) {
+            switches[i] = networkingSystem.createNode(network);
+            Host host = networkingSystem.createHost(network, "host" + i);
+            NetworkNode hostNode = networkingSystem.addInterface(host, new NetworkInterface("" + i, "00:00:00:00:00:00"));
+            link(hostNode, switches[i]);
+        }
+        for(int i = 0; i < nSwitches; i++)
+            link(switches[i], switches[(i + 1) % nSwitches]);
+        for(int i = 0; i < nSwitches / 2; i++) {
+            int a = random.nextInt(nSwitches);
+            int b = random.nextInt(nSwitches);
+            if(Math.abs(a - b) > 1 && Math.abs(a - b) < nSwitches - 1)
+                link(switches[a], switches[b]);
+        }
+    }
+
+    private void link(NetworkNode a, NetworkNode b) {
+        networkingSystem.createLinkWithPriorityScheduling(a, b, LINK_RATE, 0, new double[]{30000, 30000, 30000, 30000});
+        networkingSystem.createLinkWithPriorityScheduling(b, a, LINK_RATE, 0, new double[]{30000, 30000, 30000, 30000});
+    }
+
+    /**
+     * Creates the tenant manager and a tenant with one VM per host.
+     * @param reroutingConfiguration rerouting configuration of the network (null for no rerouting).
+     */
+    void createTenantManager(ReroutingConfiguration reroutingConfiguration) throws TenantManagerException {
+        if(reroutingConfiguration != null)
+            new ReroutingConfigurationMapper(controller).attachComponent(network.getEntity(), reroutingConfiguration);
+        tenantManagerSystem = fatTree != null ? new TenantManagerSystem(fatTree, routingAlgorithm, controller) : new TenantManagerSystem(network, routingAlgorithm, controller);
+
+        tenant = tenantManagerSystem.createTenant("tenant");
+        vms = new ArrayList<>();
+        for(Host host : network.getHosts())
+            vms.add(tenantManagerSystem.createVirtualMachine(tenant, "vm" + vms.size(), host));
+    }
+
+    /**
+     * Creates flows between random VMs until the total rate of the admitted flows reaches a fraction of the
+     * capacity of the host links or until flows are consistently rejected.
+     * @param utilization target utilization of the host links.
+     * @return the number of admitted flows.
+     */
+    int load(double utilization) {
+        double targetRate = utilization * vms.size() * LINK_RATE * 8;
+        double admittedRate = 0;
+        int admitted = 0;
+        int consecutiveRejections = 0;
+        while(admittedRate < targetRate && consecutiveRejections < 100) {
+            if(createRandomFlow()) {
+                admittedRate += FLOW_RATE;
+                admitted++;
+                consecutiveRejections = 0;
+            }
+            else {
+                consecutiveRejections++;
+            }
+        }
+        return admitted;
+    }
+
+    /**
+     * @return true if a new flow between two random (different) VMs is admitted.
+     */
+    boolean createRandomFlow() {
+        VirtualMachine source = vms.get(random.nextInt(vms.size()));
+        VirtualMachine destination;
+        do {
+            destination = vms.get(random.nextInt(vms.size()));
+        } while(destination == source);
+
+        try {
+            tenantManagerSystem.createFlow("f" + nFlows, source, destination, sourceIP, destinationIP, nFlows % 65536, nFlows / 65536, 17, FLOW_RATE, FLOW_BURST, FLOW_LATENCY);
+            return true;
+        } catch (TenantManagerException e) {
+            return false;
+        } finally {
+            nFlows++;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package de.tum.ei.lkn.eces.tenantmanager.benchmarks;
+
+import de.tum.ei.lkn.eces.tenantmanager.kspsystem.KSPConfiguration;
+import de.tum.ei.lkn.eces.tenantmanager.kspsystem.KSPSystem;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to precompute the kSPs (two levels, as for the ALL_TWO_SHORTEST_PATHS flow selection) of all the pairs of a
+ * topology.
+ *
+ * @author Amaury Van Bemten
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class KSPBenchmark {
+    @Param({"fattree-4", "fattree-8", "random-32", "random-128"})
+    public String topology;
+
+    @Param({"false", "true"})
+    public boolean compactStorage;
+
+    private BenchmarkNetworks networks;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws UnknownHostException {
+        networks = new BenchmarkNetworks(topology, 42);
+    }
+
+    @Benchmark
+    public KSPSystem precompute() {
+        KSPConfiguration configuration = new KSPConfiguration();
+        configuration.setCompactStorage(compactStorage);
+        KSPSystem kspSystem = new KSPSystem(networks.controller, 2, configuration);
+        kspSystem.update(networks.network.getLinkGraph());
+        return kspSystem;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(KSPBenchmark.class.getSimpleName()).build()).run();
+    }
+}
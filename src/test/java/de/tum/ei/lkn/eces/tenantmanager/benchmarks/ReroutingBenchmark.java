@@ -0,0 +1,70 @@
+package de.tum.ei.lkn.eces.tenantmanager.benchmarks;
+
+import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.CostIncreaseTypes;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.FlowSelectionTypes;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.LimitReroutingTypes;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.SortFlowTypes;
+import de.tum.ei.lkn.eces.tenantmanager.rerouting.components.ReroutingConfiguration;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to admit flows in a saturated network, where admission requires rerouting (or fails after trying), for each
+ * combination of flow selection, flow sorting and cost increase (all the values of the enums by default).
+ *
+ * The network is rebuilt and loaded before each invocation, which then tries to admit a fixed number of flows.
+ *
+ * @author Amaury Van Bemten
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+public class ReroutingBenchmark {
+    private static final int N_FLOWS = 20;
+
+    @Param({"fattree-4"})
+    public String topology;
+
+    @Param
+    public FlowSelectionTypes flowSelection;
+
+    @Param
+    public SortFlowTypes sortFlow;
+
+    @Param
+    public CostIncreaseTypes costIncrease;
+
+    private BenchmarkNetworks networks;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws TenantManagerException, UnknownHostException {
+        networks = new BenchmarkNetworks(topology, 42);
+        networks.createTenantManager(new ReroutingConfiguration(flowSelection, sortFlow, costIncrease, LimitReroutingTypes.ABSOLUTE, 10));
+        networks.load(1);
+    }
+
+    /**
+     * @return the number of admitted flows.
+     */
+    @Benchmark
+    public int admitWithRerouting() {
+        int admitted = 0;
+        for(int i = 0; i < N_FLOWS; i++)
+            if(networks.createRandomFlow())
+                admitted++;
+        return admitted;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ReroutingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,48 @@
+package de.tum.ei.lkn.eces.tenantmanager.benchmarks;
+
+import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to delete a tenant whose flows are routed through the network (release of the reserved resources included),
+ * as opposed to TenantTeardownBenchmark which only measures the bookkeeping.
+ *
+ * @author Amaury Van Bemten
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+public class RoutedTeardownBenchmark {
+    @Param({"fattree-4", "fattree-8"})
+    public String topology;
+
+    @Param({"0.5"})
+    public double utilization;
+
+    private BenchmarkNetworks networks;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws TenantManagerException, UnknownHostException {
+        networks = new BenchmarkNetworks(topology, 42);
+        networks.createTenantManager(null);
+        networks.load(utilization);
+    }
+
+    @Benchmark
+    public void deleteTenant() {
+        networks.tenantManagerSystem.deleteTenant(networks.tenant);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RoutedTeardownBenchmark.class.getSimpleName()).build()).run();
+    }
+}
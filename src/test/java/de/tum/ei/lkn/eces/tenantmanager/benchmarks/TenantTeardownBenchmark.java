@@ -0,0 +1,75 @@
+package de.tum.ei.lkn.eces.tenantmanager.benchmarks;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.network.util.NetworkInterface;
+import de.tum.ei.lkn.eces.tenantmanager.Tenant;
+import de.tum.ei.lkn.eces.tenantmanager.TenantManagerSystem;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to delete a tenant whose two VMs share a large number of flows.
+ *
+ * Both VMs are on the same host so that creating the flows does not involve any routing: only the bookkeeping of
+ * the tenant manager is measured.
+ *
+ * @author Amaury Van Bemten
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class TenantTeardownBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int flows;
+
+    private TenantManagerSystem tenantManagerSystem;
+    private Tenant tenant;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws TenantManagerException, UnknownHostException {
+        Logger.getRootLogger().setLevel(Level.ERROR);
+
+        Controller controller = new Controller();
+        GraphSystem graphSystem = new GraphSystem(controller);
+        NetworkingSystem networkingSystem = new NetworkingSystem(controller, graphSystem);
+        Network network = networkingSystem.createNetwork();
+        Host host = networkingSystem.createHost(network, "host");
+        networkingSystem.addInterface(host, new NetworkInterface("1", "00:00:00:00:00:00"));
+
+        tenantManagerSystem = new TenantManagerSystem(network, null, controller);
+        tenant = tenantManagerSystem.createTenant("tenant");
+        VirtualMachine vm1 = tenantManagerSystem.createVirtualMachine(tenant, "vm1", host);
+        VirtualMachine vm2 = tenantManagerSystem.createVirtualMachine(tenant, "vm2", host);
+
+        InetAddress srcIP = InetAddress.getByName("10.0.0.1");
+        InetAddress dstIP = InetAddress.getByName("10.0.0.2");
+        for(int i = 0; i < flows; i++)
+            tenantManagerSystem.createFlow("f" + i, vm1, vm2, srcIP, dstIP, i % 65536, i / 65536, 17, 1000, 100, 10);
+    }
+
+    @Benchmark
+    public void deleteTenant() {
+        tenantManagerSystem.deleteTenant(tenant);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TenantTeardownBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,337 @@
+package de.tum.ei.lkn.eces.tenantmanager.kspsystem;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.graph.Node;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+import de.tum.ei.lkn.eces.tenantmanager.kspsystem.mappers.KShortestPathsMapper;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the kSP system.
+ *
+ * @author Amaury Van Bemten
+ */
+public class KSPSystemTest {
+    private static final int MAX_LEVEL = 2;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Controller controller;
+    private NetworkingSystem networkingSystem;
+    private Network network;
+    private KShortestPathsMapper kShortestPathsMapper;
+    private NetworkNode[] nodes;
+
+    @Before
+    public void setUp() {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.ERROR);
+
+        controller = new Controller();
+        GraphSystem graphSystem = new GraphSystem(controller);
+        networkingSystem = new NetworkingSystem(controller, graphSystem);
+        kShortestPathsMapper = new KShortestPathsMapper(controller);
+        network = networkingSystem.createNetwork();
+
+        // Ring of 6 nodes with two chords
+        nodes = new NetworkNode[6];
+        for(int i = 0; i < nodes.length; i++)
+            nodes[i] = networkingSystem.createNode(network);
+        for(int i = 0; i < nodes.length; i++)
+            createBidirectionalLink(nodes[i], nodes[(i + 1) % nodes.length]);
+        createBidirectionalLink(nodes[0], nodes[3]);
+        createBidirectionalLink(nodes[1], nodes[4]);
+    }
+
+    private void createBidirectionalLink(NetworkNode a, NetworkNode b) {
+        networkingSystem.createLinkWithPriorityScheduling(a, b, 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(b, a, 1e9 / 8, 0, new double[]{30000});
+    }
+
+    /**
+     * @return for each source and destination, the kSPs (as lists of edges) of each level.
+     */
+    private Map<Node, Map<Node, List<List<List<Edge>>>>> getKSPs() {
+        Map<Node, Map<Node, List<List<List<Edge>>>>> result = new HashMap<>();
+        for(Node source : network.getLinkGraph().getNodes()) {
+            Map<Node, List<List<List<Edge>>>> fromSource = new HashMap<>();
+            KShortestPaths kShortestPaths = kShortestPathsMapper.get(source.getEntity());
+            for(Node destination : network.getLinkGraph().getNodes()) {
+                if(source == destination || !kShortestPaths.hasShortestPathsTo(destination))
+                    continue;
+                List<List<List<Edge>>> levels = new ArrayList<>();
+                for(int level = 0; level < MAX_LEVEL; level++) {
+                    List<List<Edge>> paths = new ArrayList<>();
+                    for(Edge[] path : kShortestPaths.getShortestPathEdges(destination, level))
+                        paths.add(Arrays.asList(path));
+                    levels.add(paths);
+                }
+                fromSource.put(destination, levels);
+            }
+            result.put(source, fromSource);
+        }
+        return result;
+    }
+
+    @Test
+    public void testSequentialKSPs() {
+        new KSPSystem(controller, MAX_LEVEL).update(network.getLinkGraph());
+
+        Node source = nodes[0].getLinkNode();
+        Node destination = nodes[3].getLinkNode();
+        KShortestPaths kShortestPaths = kShortestPathsMapper.get(source.getEntity());
+        assertTrue(kShortestPaths.hasShortestPathsTo(destination));
+        // Direct chord
+        assertEquals(kShortestPaths.getShortestPaths(destination, 0).size(), 1);
+        assertEquals(kShortestPaths.getShortestPaths(destination, 0).get(0).getPath().length, 1);
+        // 0-1-4-3 and 0-5-4-3 are not shorter than 0-1-2-3, all have three hops
+        for(Path path : kShortestPaths.getShortestPaths(destination, 1))
+            assertEquals(path.getPath().length, 3);
+    }
+
+    @Test
+    public void testParallelKSPsAreIdentical() {
+        new KSPSystem(controller, MAX_LEVEL).update(network.getLinkGraph());
+        Map<Node, Map<Node, List<List<List<Edge>>>>> sequential = getKSPs();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        AtomicInteger lastProgress = new AtomicInteger();
+        KSPConfiguration configuration = new KSPConfiguration();
+        configuration.setExecutor(pool);
+        configuration.setProgressListener((done, total) -> lastProgress.accumulateAndGet(done, Math::max));
+        try {
+            new KSPSystem(controller, MAX_LEVEL, configuration).update(network.getLinkGraph());
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        assertEquals(lastProgress.get(), network.getLinkGraph().getNodes().size());
+        assertEquals(getKSPs(), sequential);
+    }
+
+    @Test
+    public void testIncrementalUpdate() {
+        // Isolated node
+        NetworkNode isolated = networkingSystem.createNode(network);
+        KSPSystem kspSystem = new KSPSystem(controller, MAX_LEVEL);
+        kspSystem.update(network.getLinkGraph());
+
+        // Unreachable pairs are recorded and do not stop the computation of the other pairs
+        KShortestPaths fromZero = kShortestPathsMapper.get(nodes[0].getLinkNode().getEntity());
+        assertTrue(fromZero.isUnreachable(isolated.getLinkNode()));
+        assertFalse(fromZero.hasShortestPathsTo(isolated.getLinkNode()));
+        for(NetworkNode node : nodes) {
+            if(node != nodes[0]) {
+                assertTrue(fromZero.hasShortestPathsTo(node.getLinkNode()));
+                assertFalse(fromZero.isUnreachable(node.getLinkNode()));
+            }
+        }
+
+        // Connect the isolated node and add a shortcut
+        Set<Edge> edgesBefore = new HashSet<>(network.getLinkGraph().getEdges());
+        createBidirectionalLink(isolated, nodes[2]);
+        createBidirectionalLink(nodes[2], nodes[5]);
+        List<Edge> addedEdges = new ArrayList<>();
+        for(Edge edge : network.getLinkGraph().getEdges())
+            if(!edgesBefore.contains(edge))
+                addedEdges.add(edge);
+
+        kspSystem.update(network.getLinkGraph(), addedEdges, null);
+        assertFalse(fromZero.isUnreachable(isolated.getLinkNode()));
+        assertTrue(fromZero.hasShortestPathsTo(isolated.getLinkNode()));
+        Map<Node, Map<Node, List<List<List<Edge>>>>> incremental = getKSPs();
+
+        kspSystem.update(network.getLinkGraph());
+        assertEquals(incremental, getKSPs());
+    }
+
+    @Test
+    public void testLazyKSPs() {
+        new KSPSystem(controller, MAX_LEVEL).update(network.getLinkGraph());
+        Map<Node, Map<Node, List<List<List<Edge>>>>> eager = getKSPs();
+
+        // Much less than the 30 pairs of the graph
+        KSPConfiguration configuration = new KSPConfiguration();
+        configuration.setCacheSize(4);
+        KSPSystem kspSystem = new KSPSystem(controller, MAX_LEVEL, configuration);
+        kspSystem.update(network.getLinkGraph());
+        KSPCache cache = kspSystem.getCache();
+        assertEquals(cache.size(), 0);
+
+        assertEquals(getKSPs(), eager);
+        assertTrue(cache.size() <= 4);
+        assertTrue(cache.getMisses() >= 30);
+        assertTrue(cache.getEvictions() > 0);
+
+        // Same pair twice in a row: the second one is served from the cache
+        KShortestPaths fromZero = kShortestPathsMapper.get(nodes[0].getLinkNode().getEntity());
+        fromZero.getShortestPaths(nodes[3].getLinkNode(), 0);
+        long hits = cache.getHits();
+        fromZero.getShortestPaths(nodes[3].getLinkNode(), 1);
+        assertEquals(cache.getHits(), hits + 1);
+    }
+
+    @Test
+    public void testLazyKSPsInvalidatedDuringComputation() {
+        KSPCache cache = new KSPCache(4);
+        Node source = nodes[0].getLinkNode();
+        Node destination = nodes[3].getLinkNode();
+        AtomicInteger computations = new AtomicInteger();
+
+        // The topology changes while the kSPs are computed: the result is returned but not cached
+        assertSame(cache.get(source, destination, (s, d) -> {
+            computations.incrementAndGet();
+            cache.clear();
+            return KSPCache.UNREACHABLE;
+        }), KSPCache.UNREACHABLE);
+        assertEquals(cache.size(), 0);
+
+        cache.get(source, destination, (s, d) -> {
+            computations.incrementAndGet();
+            cache.invalidateIf(levels -> true);
+            return KSPCache.UNREACHABLE;
+        });
+        assertEquals(cache.size(), 0);
+
+        // Without invalidation, the kSPs are cached
+        cache.get(source, destination, (s, d) -> {
+            computations.incrementAndGet();
+            return KSPCache.UNREACHABLE;
+        });
+        cache.get(source, destination, (s, d) -> {
+            computations.incrementAndGet();
+            return KSPCache.UNREACHABLE;
+        });
+        assertEquals(cache.size(), 1);
+        assertEquals(computations.get(), 3);
+        assertEquals(cache.getHits(), 1);
+    }
+
+    @Test
+    public void testCompactKSPs() {
+        new KSPSystem(controller, MAX_LEVEL).update(network.getLinkGraph());
+        Map<Node, Map<Node, List<List<List<Edge>>>>> objects = getKSPs();
+
+        KSPConfiguration configuration = new KSPConfiguration();
+        configuration.setCompactStorage(true);
+        KSPSystem kspSystem = new KSPSystem(controller, MAX_LEVEL, configuration);
+        kspSystem.update(network.getLinkGraph());
+        assertEquals(getKSPs(), objects);
+        assertEquals(kspSystem.getCompactPathStore().getEdgeCount(), network.getLinkGraph().getEdges().size());
+
+        // Paths are decoded from the store
+        KShortestPaths fromZero = kShortestPathsMapper.get(nodes[0].getLinkNode().getEntity());
+        for(int level = 0; level < MAX_LEVEL; level++) {
+            List<Path> paths = fromZero.getShortestPaths(nodes[3].getLinkNode(), level);
+            assertEquals(paths.size(), objects.get(nodes[0].getLinkNode()).get(nodes[3].getLinkNode()).get(level).size());
+            for(int i = 0; i < paths.size(); i++) {
+                assertEquals(Arrays.asList(paths.get(i).getPath()), objects.get(nodes[0].getLinkNode()).get(nodes[3].getLinkNode()).get(level).get(i));
+                assertEquals(paths.get(i).getCost(), paths.get(i).getPath().length, 0);
+            }
+        }
+        assertTrue(fromZero.hasShortestPathsTo(nodes[3].getLinkNode()));
+        assertFalse(fromZero.isUnreachable(nodes[3].getLinkNode()));
+
+        // Incremental update in compact mode
+        Set<Edge> edgesBefore = new HashSet<>(network.getLinkGraph().getEdges());
+        createBidirectionalLink(nodes[2], nodes[5]);
+        List<Edge> addedEdges = new ArrayList<>();
+        for(Edge edge : network.getLinkGraph().getEdges())
+            if(!edgesBefore.contains(edge))
+                addedEdges.add(edge);
+        kspSystem.update(network.getLinkGraph(), addedEdges, null);
+        Map<Node, Map<Node, List<List<List<Edge>>>>> incremental = getKSPs();
+        kspSystem.update(network.getLinkGraph());
+        assertEquals(incremental, getKSPs());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        new KSPSystem(controller, MAX_LEVEL).update(network.getLinkGraph());
+        Map<Node, Map<Node, List<List<List<Edge>>>>> computed = getKSPs();
+
+        File directory = temporaryFolder.newFolder();
+        AtomicInteger computedSources = new AtomicInteger();
+        KSPConfiguration configuration = new KSPConfiguration();
+        configuration.setSnapshotDirectory(directory);
+        configuration.setProgressListener((done, total) -> computedSources.incrementAndGet());
+
+        // First start: computed and written
+        new KSPSystem(controller, MAX_LEVEL, configuration).update(network.getLinkGraph());
+        assertEquals(computedSources.get(), network.getLinkGraph().getNodes().size());
+        assertEquals(directory.listFiles().length, 1);
+        assertEquals(getKSPs(), computed);
+
+        // Restart: read from the snapshot
+        computedSources.set(0);
+        new KSPSystem(controller, MAX_LEVEL, configuration).update(network.getLinkGraph());
+        assertEquals(computedSources.get(), 0);
+        assertEquals(getKSPs(), computed);
+
+        // Another number of levels is another topology
+        new KSPSystem(controller, 1, configuration).update(network.getLinkGraph());
+        assertEquals(computedSources.get(), network.getLinkGraph().getNodes().size());
+        assertEquals(directory.listFiles().length, 2);
+    }
+
+    @Test
+    public void testSnapshotFingerprintIgnoresOrder() {
+        List<Node> graphNodes = new ArrayList<>(network.getLinkGraph().getNodes());
+        List<Edge> graphEdges = new ArrayList<>(network.getLinkGraph().getEdges());
+        long fingerprint = KSPSnapshot.fingerprint(graphNodes, graphEdges, MAX_LEVEL);
+        Collections.reverse(graphNodes);
+        Collections.shuffle(graphEdges, new Random(42));
+        assertEquals(KSPSnapshot.fingerprint(graphNodes, graphEdges, MAX_LEVEL), fingerprint);
+
+        // Same number of nodes and edges, other topology
+        graphEdges.remove(0);
+        assertNotEquals(KSPSnapshot.fingerprint(graphNodes, graphEdges, MAX_LEVEL), fingerprint);
+    }
+
+    @Test
+    public void testCorruptedSnapshotIsRecomputed() throws Exception {
+        new KSPSystem(controller, MAX_LEVEL).update(network.getLinkGraph());
+        Map<Node, Map<Node, List<List<List<Edge>>>>> computed = getKSPs();
+
+        File directory = temporaryFolder.newFolder();
+        AtomicInteger computedSources = new AtomicInteger();
+        KSPConfiguration configuration = new KSPConfiguration();
+        configuration.setSnapshotDirectory(directory);
+        configuration.setProgressListener((done, total) -> computedSources.incrementAndGet());
+        new KSPSystem(controller, MAX_LEVEL, configuration).update(network.getLinkGraph());
+
+        // Handle of the first pair out of the arena
+        File snapshot = directory.listFiles()[0];
+        long firstHandle = 36 + 8L * network.getLinkGraph().getNodes().size() + 24L * network.getLinkGraph().getEdges().size() + 8;
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw")) {
+            file.seek(firstHandle);
+            file.writeInt(Integer.MAX_VALUE);
+        }
+
+        computedSources.set(0);
+        new KSPSystem(controller, MAX_LEVEL, configuration).update(network.getLinkGraph());
+        assertEquals(computedSources.get(), network.getLinkGraph().getNodes().size());
+        assertEquals(getKSPs(), computed);
+    }
+}
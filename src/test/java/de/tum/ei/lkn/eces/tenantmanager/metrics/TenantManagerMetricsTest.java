@@ -0,0 +1,66 @@
+package de.tum.ei.lkn.eces.tenantmanager.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Amaury Van Bemten
+ */
+public class TenantManagerMetricsTest {
+    @Test
+    public void testBuckets() {
+        // Buckets are contiguous and cover all the values
+        long previousUpperBound = -1;
+        for(int bucket = 0; bucket < 128 * 57; bucket++) {
+            long upperBound = LatencyHistogram.getUpperBound(bucket);
+            assertTrue(upperBound > previousUpperBound);
+            assertEquals(bucket, LatencyHistogram.getBucket(previousUpperBound + 1));
+            assertEquals(bucket, LatencyHistogram.getBucket(upperBound));
+            previousUpperBound = upperBound;
+        }
+        assertEquals(Long.MAX_VALUE, previousUpperBound);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+
+        for(long value = 1; value <= 100000; value++)
+            histogram.record(value * 1000);
+
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000000, histogram.getMax());
+        assertEquals(50000500, histogram.getMean(), 1);
+        for(double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+            double expected = percentile * 1000000;
+            assertEquals(expected, histogram.getValueAtPercentile(percentile), expected / 128);
+        }
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void testDisabledMetrics() {
+        TenantManagerMetrics metrics = new TenantManagerMetrics();
+        long start = metrics.start();
+        assertEquals(TenantManagerMetrics.NOT_STARTED, start);
+        assertEquals(TenantManagerMetrics.NOT_STARTED, metrics.record(AdmissionPhase.TOTAL, start));
+        metrics.flowAccepted();
+        assertEquals(0, metrics.getHistogram(AdmissionPhase.TOTAL).getCount());
+        assertEquals(0, metrics.getAcceptedFlows());
+
+        metrics.setEnabled(true);
+        start = metrics.start();
+        assertTrue(start != TenantManagerMetrics.NOT_STARTED);
+        metrics.record(AdmissionPhase.TOTAL, start);
+        metrics.flowAccepted();
+        metrics.flowRejected();
+        assertEquals(1, metrics.getHistogram(AdmissionPhase.TOTAL).getCount());
+        assertEquals(1, metrics.getAcceptedFlows());
+        assertEquals(1, metrics.getRejectedFlows());
+    }
+}
@@ -0,0 +1,278 @@
+package de.tum.ei.lkn.eces.tenantmanager.placement;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Host;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.network.util.NetworkInterface;
+import de.tum.ei.lkn.eces.tenantmanager.Flow;
+import de.tum.ei.lkn.eces.tenantmanager.Tenant;
+import de.tum.ei.lkn.eces.tenantmanager.TenantManagerSystem;
+import de.tum.ei.lkn.eces.tenantmanager.VirtualMachine;
+import de.tum.ei.lkn.eces.tenantmanager.VmSpec;
+import de.tum.ei.lkn.eces.tenantmanager.exceptions.TenantManagerException;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the placement strategies on a two-level tree: a core switch, two edge switches and two hosts per edge
+ * switch.
+ *
+ * @author Amaury Van Bemten
+ */
+public class PlacementStrategyTest {
+    private TenantManagerSystem tenantManagerSystem;
+    private Host[] hosts;
+
+    @Before
+    public void setUp() {
+        BasicConfigurator.configure();
+        Logger.getRootLogger().setLevel(Level.ERROR);
+
+        Controller controller = new Controller();
+        GraphSystem graphSystem = new GraphSystem(controller);
+        NetworkingSystem networkingSystem = new NetworkingSystem(controller, graphSystem);
+        Network network = networkingSystem.createNetwork();
+
+        NetworkNode core = networkingSystem.createNode(network);
+        hosts = new Host[4];
+        for(int edge = 0; edge < 2; edge++) {
+            NetworkNode edgeNode = networkingSystem.createNode(network);
+            link(networkingSystem, edgeNode, core);
+            for(int i = 0; i < 2; i++) {
+                int index = 2 * edge + i;
+                hosts[index] = networkingSystem.createHost(network, "host" + index);
+                NetworkNode hostNode = networkingSystem.addInterface(hosts[index], new NetworkInterface("" + index, "00:00:00:00:00:00"));
+                link(networkingSystem, hostNode, edgeNode);
+            }
+        }
+
+        tenantManagerSystem = new TenantManagerSystem(network, null, controller);
+    }
+
+    private static void link(NetworkingSystem networkingSystem, NetworkNode a, NetworkNode b) {
+        networkingSystem.createLinkWithPriorityScheduling(a, b, 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(b, a, 1e9 / 8, 0, new double[]{30000});
+    }
+
+    @Test
+    public void testDistances() {
+        HostCatalog catalog = tenantManagerSystem.getHostCatalog();
+        assertEquals(catalog.getHosts().size(), 4);
+        assertEquals(catalog.getDistance(hosts[0], hosts[0]), 0);
+        assertEquals(catalog.getDistance(hosts[0], hosts[1]), 2);
+        assertEquals(catalog.getDistance(hosts[0], hosts[2]), 4);
+        assertEquals(catalog.getDistance(hosts[3], hosts[1]), 4);
+    }
+
+    @Test
+    public void testLeastLoaded() throws TenantManagerException {
+        tenantManagerSystem.setPlacementStrategy(new LeastLoadedPlacement());
+        Tenant tenant = tenantManagerSystem.createTenant("tenant");
+        for(int i = 0; i < 8; i++)
+            tenantManagerSystem.createVirtualMachine(tenant, "vm" + i);
+        for(Host host : hosts)
+            assertEquals(tenantManagerSystem.getHostCatalog().getVirtualMachineCount(host), 2);
+
+        tenantManagerSystem.deleteVM(tenant.getVirtualMachines().get(0));
+        Host freedHost = null;
+        for(Host host : hosts)
+            if(tenantManagerSystem.getHostCatalog().getVirtualMachineCount(host) == 1)
+                freedHost = host;
+        assertNotNull(freedHost);
+        assertSame(tenantManagerSystem.createVirtualMachine(tenant, "again").getHostMachine(), freedHost);
+    }
+
+    @Test
+    public void testBinPacking() throws TenantManagerException {
+        tenantManagerSystem.setPlacementStrategy(new BinPackingPlacement());
+        tenantManagerSystem.setMaxVirtualMachinesPerHost(3);
+        Tenant tenant = tenantManagerSystem.createTenant("tenant");
+        for(int i = 0; i < 12; i++) {
+            VirtualMachine vm = tenantManagerSystem.createVirtualMachine(tenant, "vm" + i);
+            // Hosts are filled one after the other
+            assertSame(vm.getHostMachine(), tenantManagerSystem.getHostCatalog().getHosts().get(i / 3));
+        }
+
+        try {
+            tenantManagerSystem.createVirtualMachine(tenant, "one too many");
+            fail();
+        } catch (TenantManagerException e) {
+            // All hosts are full
+        }
+    }
+
+    @Test
+    public void testLocalityAware() throws TenantManagerException {
+        tenantManagerSystem.setPlacementStrategy(new LocalityAwarePlacement());
+
+        // Without limit, all the VMs of a tenant end up on the same host
+        Tenant first = tenantManagerSystem.createTenant("first");
+        VirtualMachine first1 = tenantManagerSystem.createVirtualMachine(first, "vm1");
+        for(int i = 2; i < 5; i++)
+            assertSame(tenantManagerSystem.createVirtualMachine(first, "vm" + i).getHostMachine(), first1.getHostMachine());
+
+        // With one VM per host, the next VM goes under the same edge switch
+        tenantManagerSystem.deleteTenant(first);
+        tenantManagerSystem.setMaxVirtualMachinesPerHost(1);
+        Tenant second = tenantManagerSystem.createTenant("second");
+        tenantManagerSystem.createVirtualMachine(second, "vm1", hosts[3]);
+        assertSame(tenantManagerSystem.createVirtualMachine(second, "vm2").getHostMachine(), hosts[2]);
+        // Then in the other part of the tree
+        Host third = tenantManagerSystem.createVirtualMachine(second, "vm3").getHostMachine();
+        assertTrue(third == hosts[0] || third == hosts[1]);
+    }
+
+    @Test
+    public void testLoadIndex() throws TenantManagerException, UnknownHostException {
+        Tenant tenant = tenantManagerSystem.createTenant("tenant");
+        VirtualMachine vm0 = tenantManagerSystem.createVirtualMachine(tenant, "vm0", hosts[0]);
+        VirtualMachine vm1 = tenantManagerSystem.createVirtualMachine(tenant, "vm1", hosts[0]);
+        tenantManagerSystem.createVirtualMachine(tenant, "vm2", hosts[1]);
+
+        HostLoadIndex loadIndex = tenantManagerSystem.getHostCatalog().getLoadIndex();
+        assertEquals(loadIndex.getLoad(hosts[0]).getVirtualMachineCount(), 2);
+        assertEquals(loadIndex.getLoad(hosts[1]).getVirtualMachineCount(), 1);
+        assertSame(loadIndex.getLeastLoadedHost(0), hosts[2]);
+        assertSame(loadIndex.getBestFitHost(0), hosts[0]);
+        assertSame(loadIndex.getBestFitHost(2), hosts[1]);
+
+        // Flow between two VMs of the same host: counted once
+        Flow flow = tenantManagerSystem.createFlow("f", vm0, vm1, InetAddress.getByName("10.0.0.1"), InetAddress.getByName("10.0.0.2"), 1, 2, 6, 1000, 100, 10);
+        assertEquals(loadIndex.getLoad(hosts[0]).getCommittedRate(), 1000);
+        assertEquals(loadIndex.getLoad(hosts[0]).getCommittedBurst(), 100);
+        assertNotSame(loadIndex.getLeastCommittedRateHost(0), hosts[0]);
+        tenantManagerSystem.deleteFlow(flow);
+        assertEquals(loadIndex.getLoad(hosts[0]).getCommittedRate(), 0);
+        assertEquals(loadIndex.getLoad(hosts[0]).getCommittedBurst(), 0);
+
+        tenantManagerSystem.deleteTenant(tenant);
+        for(Host host : hosts)
+            assertEquals(loadIndex.getLoad(host).getVirtualMachineCount(), 0);
+        assertSame(loadIndex.getLeastLoadedHost(0), hosts[0]);
+    }
+
+    @Test
+    public void testBatchPlacement() throws TenantManagerException {
+        tenantManagerSystem.setMaxVirtualMachinesPerHost(1);
+        Tenant tenant = tenantManagerSystem.createTenant("tenant");
+        TrafficMatrix trafficMatrix = new TrafficMatrix()
+                .add("a", "b", 1e6)
+                .add("c", "d", 1e6)
+                .add("d", "c", 1e6)
+                .add("a", "c", 1e3);
+        List<VirtualMachine> vms = tenantManagerSystem.createVirtualMachines(tenant, Arrays.asList(new VmSpec("a"), new VmSpec("c"), new VmSpec("b"), new VmSpec("d")), trafficMatrix);
+        assertEquals(vms.size(), 4);
+        assertEquals(tenant.getVirtualMachines().size(), 4);
+        assertEquals(vms.get(0).getName(), "a");
+
+        // Heavily communicating VMs under the same edge switch
+        HostCatalog catalog = tenantManagerSystem.getHostCatalog();
+        assertEquals(catalog.getDistance(vms.get(0).getHostMachine(), vms.get(2).getHostMachine()), 2);
+        assertEquals(catalog.getDistance(vms.get(1).getHostMachine(), vms.get(3).getHostMachine()), 2);
+        for(Host host : hosts)
+            assertEquals(catalog.getVirtualMachineCount(host), 1);
+
+        // All or nothing
+        try {
+            tenantManagerSystem.createVirtualMachines(tenant, Arrays.asList(new VmSpec("e"), new VmSpec("a")), trafficMatrix);
+            fail();
+        } catch (TenantManagerException e) {
+            assertEquals(tenant.getVirtualMachines().size(), 4);
+        }
+        try {
+            tenantManagerSystem.createVirtualMachines(tenant, Collections.singletonList(new VmSpec("e")), trafficMatrix);
+            fail();
+        } catch (TenantManagerException e) {
+            // No room left
+            assertEquals(tenant.getVirtualMachines().size(), 4);
+        }
+    }
+
+    @Test
+    public void testBatchPlacementForcedHosts() throws TenantManagerException {
+        tenantManagerSystem.setMaxVirtualMachinesPerHost(2);
+        Tenant tenant = tenantManagerSystem.createTenant("tenant");
+        tenantManagerSystem.createVirtualMachine(tenant, "existing", hosts[0]);
+        HostCatalog catalog = tenantManagerSystem.getHostCatalog();
+
+        // Two more VMs forced on a host with room for one
+        try {
+            tenantManagerSystem.createVirtualMachines(tenant, Arrays.asList(new VmSpec("a", hosts[0]), new VmSpec("b"), new VmSpec("c", hosts[0])), new TrafficMatrix());
+            fail();
+        } catch (TenantManagerException e) {
+            assertEquals(tenant.getVirtualMachines().size(), 1);
+            assertEquals(catalog.getVirtualMachineCount(hosts[0]), 1);
+            for(int i = 1; i < hosts.length; i++)
+                assertEquals(catalog.getVirtualMachineCount(hosts[i]), 0);
+        }
+
+        // The forced VMs count when placing the other ones
+        List<VirtualMachine> vms = tenantManagerSystem.createVirtualMachines(tenant, Arrays.asList(new VmSpec("a", hosts[0]), new VmSpec("b"), new VmSpec("c", hosts[1])), new TrafficMatrix().add("b", "a", 1e6));
+        assertSame(vms.get(0).getHostMachine(), hosts[0]);
+        assertNotSame(vms.get(1).getHostMachine(), hosts[0]);
+        assertEquals(catalog.getVirtualMachineCount(hosts[0]), 2);
+    }
+
+    @Test
+    public void testConcurrentBatchPlacements() throws Exception {
+        tenantManagerSystem.setMaxVirtualMachinesPerHost(1);
+        int nTenants = 4;
+        List<Tenant> tenants = new ArrayList<>();
+        for(int t = 0; t < nTenants; t++)
+            tenants.add(tenantManagerSystem.createTenant("tenant" + t));
+
+        // Room for one batch of three VMs only (four hosts with room for one VM each)
+        ExecutorService executor = Executors.newFixedThreadPool(nTenants);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for(Tenant tenant : tenants) {
+                results.add(executor.submit(() -> {
+                    try {
+                        tenantManagerSystem.createVirtualMachines(tenant, Arrays.asList(new VmSpec("a"), new VmSpec("b"), new VmSpec("c")), new TrafficMatrix());
+                        return true;
+                    } catch (TenantManagerException e) {
+                        return false;
+                    }
+                }));
+            }
+            int nSuccesses = 0;
+            for(Future<Boolean> result : results)
+                if(result.get())
+                    nSuccesses++;
+            assertEquals(nSuccesses, 1);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        int nVms = 0;
+        for(Tenant tenant : tenants)
+            nVms += tenant.getVirtualMachines().size();
+        assertEquals(nVms, 3);
+        HostCatalog catalog = tenantManagerSystem.getHostCatalog();
+        int nRecorded = 0;
+        for(Host host : hosts) {
+            assertTrue(catalog.getVirtualMachineCount(host) <= 1);
+            nRecorded += catalog.getVirtualMachineCount(host);
+        }
+        assertEquals(nRecorded, 3);
+    }
+}
@@ -0,0 +1,106 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the cost increase proxy.
+ *
+ * @author Amaury Van Bemten
+ */
+public class AvoidQueuesProxyTest {
+    private Edge[] edges;
+    private AvoidQueuesProxy proxy;
+
+    @Before
+    public void setUp() {
+        Controller controller = new Controller();
+        NetworkingSystem networkingSystem = new NetworkingSystem(controller, new GraphSystem(controller));
+        Network network = networkingSystem.createNetwork();
+
+        // Chain of nodes: more queues than the initial capacity of the list of set indices of the proxy
+        NetworkNode previous = networkingSystem.createNode(network);
+        for(int i = 0; i < 80; i++) {
+            NetworkNode next = networkingSystem.createNode(network);
+            networkingSystem.createLinkWithPriorityScheduling(previous, next, 1e9 / 8, 0, new double[]{30000});
+            previous = next;
+        }
+        edges = network.getQueueGraph().getEdges().toArray(new Edge[0]);
+        assertTrue(edges.length >= 80);
+
+        proxy = new AvoidQueuesProxy(new ConstantCostProxy(2));
+    }
+
+    private double getCost(Edge edge) {
+        return proxy.getCost(null, edge, new double[0], null, false);
+    }
+
+    @Test
+    public void testAddQueues() {
+        for(Edge edge : edges) {
+            assertFalse(proxy.isHighCost(edge));
+            assertEquals(getCost(edge), 2, 0);
+        }
+
+        proxy.addQueue(edges[0]);
+        proxy.addQueue(edges[0]);
+        proxy.addQueues(edges, 10, 20);
+        for(int i = 0; i < edges.length; i++) {
+            boolean highCost = i == 0 || (i >= 10 && i < 20);
+            assertEquals(proxy.isHighCost(edges[i]), highCost);
+            assertEquals(getCost(edges[i]), highCost ? 2 * AvoidQueuesProxy.DEFAULT_MULTIPLIER : 2, 0);
+        }
+    }
+
+    @Test
+    public void testClear() {
+        proxy.addQueues(edges);
+        for(Edge edge : edges)
+            assertTrue(proxy.isHighCost(edge));
+
+        proxy.clear();
+        for(Edge edge : edges) {
+            assertFalse(proxy.isHighCost(edge));
+            assertEquals(getCost(edge), 2, 0);
+        }
+
+        // Reused after clear(): only the new queues have an increased cost
+        List<Edge> highCostEdges = new ArrayList<>();
+        for(int i = 0; i < edges.length; i += 3) {
+            proxy.addQueue(edges[i]);
+            highCostEdges.add(edges[i]);
+        }
+        for(Edge edge : edges)
+            assertEquals(proxy.isHighCost(edge), highCostEdges.contains(edge));
+        proxy.clear();
+        for(Edge edge : edges)
+            assertFalse(proxy.isHighCost(edge));
+    }
+
+    @Test
+    public void testSetMultiplier() {
+        assertEquals(proxy.getMultiplier(), AvoidQueuesProxy.DEFAULT_MULTIPLIER, 0);
+        proxy.addQueue(edges[5]);
+        proxy.setMultiplier(7);
+        assertEquals(proxy.getMultiplier(), 7, 0);
+        assertEquals(getCost(edges[5]), 14, 0);
+        assertEquals(getCost(edges[6]), 2, 0);
+
+        // The multiplier is kept by clear()
+        proxy.clear();
+        proxy.addQueue(edges[6]);
+        assertEquals(getCost(edges[6]), 14, 0);
+        assertEquals(new AvoidQueuesProxy(new ConstantCostProxy(1), 3).getMultiplier(), 3, 0);
+    }
+}
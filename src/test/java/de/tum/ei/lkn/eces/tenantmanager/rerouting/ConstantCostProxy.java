@@ -0,0 +1,80 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.routing.proxies.PathProxy;
+import de.tum.ei.lkn.eces.routing.requests.Request;
+import de.tum.ei.lkn.eces.routing.responses.Path;
+
+/**
+ * Proxy giving the same cost to all the edges and accepting everything, used to test the proxies of the rerouting.
+ *
+ * @author Amaury Van Bemten
+ */
+class ConstantCostProxy extends PathProxy {
+    private final double cost;
+
+    ConstantCostProxy(double cost) {
+        this.cost = cost;
+    }
+
+    @Override
+    public double[] getNewParameters(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        return new double[0];
+    }
+
+    @Override
+    public boolean hasAccess(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        return true;
+    }
+
+    @Override
+    public double getCost(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        return cost;
+    }
+
+    @Override
+    public double[] getConstraintsValues(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request, boolean b) {
+        return new double[0];
+    }
+
+    @Override
+    public boolean register(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request) {
+        return true;
+    }
+
+    @Override
+    public boolean deregister(Iterable<Edge> iterable, Edge edge, double[] doubles, Request request) {
+        return true;
+    }
+
+    @Override
+    public boolean register(Path path, Request request) {
+        return true;
+    }
+
+    @Override
+    public boolean deregister(Path path, Request request) {
+        return true;
+    }
+
+    @Override
+    public boolean handle(Request request, boolean b) {
+        return true;
+    }
+
+    @Override
+    public int getNumberOfConstraints(Request request) {
+        return 0;
+    }
+
+    @Override
+    public int getNumberOfParameters(Request request) {
+        return 0;
+    }
+
+    @Override
+    public double[] getConstraintsBounds(Request request) {
+        return new double[0];
+    }
+}
+}
@@ -0,0 +1,68 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.core.Entity;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the ranking of the flows to reroute.
+ *
+ * @author Amaury Van Bemten
+ */
+public class FlowRankingTest {
+    private List<Entity> flows;
+    private double[] scores;
+
+    @Before
+    public void setUp() {
+        Controller controller = new Controller();
+        List<Entity> entities = new ArrayList<>();
+        for(int i = 0; i < 50; i++)
+            entities.add(controller.createEntity());
+
+        // Few distinct scores so that there are many ties, in an order unrelated to the entity IDs
+        Random random = new Random(42);
+        Collections.shuffle(entities, random);
+        flows = entities;
+        scores = new double[flows.size()];
+        for(int i = 0; i < scores.length; i++)
+            scores[i] = random.nextInt(5);
+    }
+
+    @Test
+    public void testTopIsPrefixOfSort() {
+        List<Entity> sorted = new ArrayList<>(flows);
+        FlowRanking.sort(sorted, scores);
+
+        for(int k = 0; k <= flows.size() + 2; k++) {
+            List<Entity> flowsBefore = new ArrayList<>(flows);
+            List<Entity> top = FlowRanking.top(flows, scores, k);
+            assertEquals(top, sorted.subList(0, Math.min(k, flows.size())));
+            assertEquals(flows, flowsBefore);
+        }
+    }
+
+    @Test
+    public void testOrder() {
+        List<Entity> sorted = new ArrayList<>(flows);
+        FlowRanking.sort(sorted, scores);
+
+        Map<Entity, Double> scoreOfFlows = new HashMap<>();
+        for(int i = 0; i < flows.size(); i++)
+            scoreOfFlows.put(flows.get(i), scores[i]);
+
+        // Decreasing score, then increasing entity ID
+        for(int i = 1; i < sorted.size(); i++) {
+            double previousScore = scoreOfFlows.get(sorted.get(i - 1));
+            double score = scoreOfFlows.get(sorted.get(i));
+            assertTrue(previousScore >= score);
+            if(previousScore == score)
+                assertTrue(sorted.get(i - 1).getId() < sorted.get(i).getId());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import de.tum.ei.lkn.eces.routing.requests.UnicastRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the per-request proxy.
+ *
+ * @author Amaury Van Bemten
+ */
+public class RequestScopedProxyTest {
+    private static final int N_THREADS = 4;
+
+    private List<UnicastRequest> requests;
+
+    @Before
+    public void setUp() {
+        Controller controller = new Controller();
+        NetworkingSystem networkingSystem = new NetworkingSystem(controller, new GraphSystem(controller));
+        Network network = networkingSystem.createNetwork();
+        NetworkNode[] nodes = new NetworkNode[N_THREADS + 2];
+        for(int i = 0; i < nodes.length; i++)
+            nodes[i] = networkingSystem.createNode(network);
+        requests = new ArrayList<>();
+        for(int i = 0; i < nodes.length - 1; i++)
+            requests.add(new UnicastRequest(nodes[i].getQueueNode(), nodes[i + 1].getQueueNode()));
+    }
+
+    @Test
+    public void testConcurrentOverrides() throws Exception {
+        RequestScopedProxy proxy = new RequestScopedProxy(new ConstantCostProxy(1));
+        // Request without override
+        UnicastRequest otherRequest = requests.get(N_THREADS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(N_THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(int t = 0; t < N_THREADS; t++) {
+                UnicastRequest request = requests.get(t);
+                double cost = t + 2;
+                futures.add(executor.submit(() -> {
+                    for(int i = 0; i < 1000; i++) {
+                        proxy.setOverride(request, new ConstantCostProxy(cost));
+                        try {
+                            assertEquals(proxy.getCost(null, null, new double[0], request, false), cost, 0);
+                            assertEquals(proxy.getCost(null, null, new double[0], otherRequest, false), 1, 0);
+                        }
+                        finally {
+                            proxy.removeOverride(request);
+                        }
+                        assertEquals(proxy.getCost(null, null, new double[0], request, false), 1, 0);
+                    }
+                }));
+            }
+            for(Future<?> future : futures)
+                future.get();
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package de.tum.ei.lkn.eces.tenantmanager.rerouting;
+
+import de.tum.ei.lkn.eces.core.Controller;
+import de.tum.ei.lkn.eces.graph.Edge;
+import de.tum.ei.lkn.eces.graph.GraphSystem;
+import de.tum.ei.lkn.eces.graph.Node;
+import de.tum.ei.lkn.eces.network.Network;
+import de.tum.ei.lkn.eces.network.NetworkNode;
+import de.tum.ei.lkn.eces.network.NetworkingSystem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test class for the cache of the queues on the shortest paths.
+ *
+ * @author Amaury Van Bemten
+ */
+public class ShortestPathQueueSetsTest {
+    private Node[] nodes;
+    private Edge[] edges;
+    private ShortestPathQueueSets queueSets;
+    private AtomicInteger nLoads;
+
+    @Before
+    public void setUp() {
+        Controller controller = new Controller();
+        NetworkingSystem networkingSystem = new NetworkingSystem(controller, new GraphSystem(controller));
+        Network network = networkingSystem.createNetwork();
+        NetworkNode[] networkNodes = new NetworkNode[3];
+        for(int i = 0; i < networkNodes.length; i++)
+            networkNodes[i] = networkingSystem.createNode(network);
+        networkingSystem.createLinkWithPriorityScheduling(networkNodes[0], networkNodes[1], 1e9 / 8, 0, new double[]{30000});
+        networkingSystem.createLinkWithPriorityScheduling(networkNodes[1], networkNodes[2], 1e9 / 8, 0, new double[]{30000});
+
+        nodes = new Node[networkNodes.length];
+        for(int i = 0; i < nodes.length; i++)
+            nodes[i] = networkNodes[i].getLinkNode();
+        edges = network.getQueueGraph().getEdges().toArray(new Edge[0]);
+        queueSets = new ShortestPathQueueSets();
+        nLoads = new AtomicInteger();
+    }
+
+    private Supplier<Edge[]> loader(Edge... queues) {
+        return () -> {
+            nLoads.incrementAndGet();
+            return queues;
+        };
+    }
+
+    @Test
+    public void testCacheHits() {
+        List<Edge> queues = queueSets.get(nodes[0], nodes[2], ShortestPathQueueSets.Scope.ONE_SHORTEST_PATH, loader(edges));
+        assertEquals(queues, Arrays.asList(edges));
+        assertEquals(nLoads.get(), 1);
+
+        // Same pair and scope: not loaded again
+        assertSame(queueSets.get(nodes[0], nodes[2], ShortestPathQueueSets.Scope.ONE_SHORTEST_PATH, loader()), queues);
+        assertEquals(nLoads.get(), 1);
+        assertEquals(queueSets.size(), 1);
+
+        // Other scope, other pair, other direction
+        assertEquals(queueSets.get(nodes[0], nodes[2], ShortestPathQueueSets.Scope.ALL_SHORTEST_PATHS, loader(edges[0])), Arrays.asList(edges[0]));
+        assertEquals(queueSets.get(nodes[0], nodes[1], ShortestPathQueueSets.Scope.ONE_SHORTEST_PATH, loader(edges[1])), Arrays.asList(edges[1]));
+        assertEquals(queueSets.get(nodes[2], nodes[0], ShortestPathQueueSets.Scope.ONE_SHORTEST_PATH, loader()).size(), 0);
+        assertEquals(nLoads.get(), 4);
+        assertEquals(queueSets.size(), 4);
+    }
+
+    @Test
+    public void testUnmodifiable() {
+        Edge[] loaded = edges.clone();
+        List<Edge> queues = queueSets.get(nodes[0], nodes[2], ShortestPathQueueSets.Scope.ONE_SHORTEST_PATH, loader(loaded));
+        try {
+            queues.set(0, edges[1]);
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        try {
+            queues.clear();
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+
+        // Changing the loaded array does not change the cached queues
+        loaded[0] = null;
+        assertEquals(queueSets.get(nodes[0], nodes[2], ShortestPathQueueSets.Scope.ONE_SHORTEST_PATH, loader()), Arrays.asList(edges));
+    }
+
+    @Test
+    public void testClear() {
+        queueSets.get(nodes[0], nodes[2], ShortestPathQueueSets.Scope.ONE_SHORTEST_PATH, loader(edges));
+        queueSets.get(nodes[0], nodes[1], ShortestPathQueueSets.Scope.ONE_SHORTEST_PATH, loader(edges[0]));
+        queueSets.clear();
+        assertEquals(queueSets.size(), 0);
+
+        // Loaded again (e.g., with the queues of the new topology)
+        assertEquals(queueSets.get(nodes[0], nodes[2], ShortestPathQueueSets.Scope.ONE_SHORTEST_PATH, loader(edges[1])), Arrays.asList(edges[1]));
+        assertEquals(nLoads.get(), 3);
+    }
+}